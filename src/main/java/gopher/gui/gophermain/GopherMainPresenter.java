@@ -149,6 +149,10 @@ public class GopherMainPresenter implements Initializable {
     private CheckBox unbalancedMarginCheckbox;
     @FXML
     private CheckBox patchedViewpointCheckbox;
+    @FXML
+    private CheckMenuItem compressOutputFilesMenuItem;
+    @FXML
+    private CheckMenuItem useTwoBitGenomeMenuItem;
 
     @FXML
     RadioMenuItem loggingLevelOFF;
@@ -515,6 +519,8 @@ public class GopherMainPresenter implements Initializable {
         }
         this.unbalancedMarginCheckbox.setSelected(model.getAllowUnbalancedMargins());
         this.patchedViewpointCheckbox.setSelected(model.getAllowPatching());
+        this.compressOutputFilesMenuItem.setSelected(model.getCompressOutputFiles());
+        this.useTwoBitGenomeMenuItem.setSelected(model.getUseTwoBitGenome());
 
         this.targetGeneLabel.setText("");
         this.allGenesLabel.setText("");
@@ -956,6 +962,7 @@ public class GopherMainPresenter implements Initializable {
            // indexGenomeLabel.setText(message);
             logger.debug(message);
             model.setIndexedGenomeFastaIndexFile(manager.getGenomeFastaIndexPath());
+            model.setContigIndex(new ContigIndex(manager.getContigLengths(), model.getGenome()));
            model.setGenomeIndexed();
         } );
         manager.setOnFailed(event-> {
@@ -1255,7 +1262,7 @@ public class GopherMainPresenter implements Initializable {
         try {
             logger.trace(model.getGenomeFastaFile());
             logger.trace(model.getIndexedGenomeFastaIndexFile());
-            exporter.printProbeFileInAgilentFormat(this.model.getProbeLength(), this.model.getViewPointList(),this.model.getGenomeBuild(), model.getGenomeFastaFile());
+            exporter.printProbeFileInAgilentFormat(this.model.getProbeLength(), this.model.getViewPointList(),this.model.getGenomeBuild(), model.getGenomeFastaFile(), model.getUseTwoBitGenome());
         } catch (Exception exc) {
             PopupFactory.displayException("Could not save probes.", exc.getMessage(),exc);
         }
@@ -1484,7 +1491,7 @@ public class GopherMainPresenter implements Initializable {
             return;
         }
         String prefix=model.getProjectName();
-        BEDFileExporter exporter = new BEDFileExporter(file.getAbsolutePath(),prefix);
+        BEDFileExporter exporter = new BEDFileExporter(file.getAbsolutePath(),prefix,model.getCompressOutputFiles());
         try {
             exporter.printRestFragsToBed(this.model.getViewPointList(),this.model.getGenomeBuild());
         } catch (Exception exc) {
@@ -1720,6 +1727,18 @@ public class GopherMainPresenter implements Initializable {
         e.consume();
     }
 
+    /** Export the digest and BED files compressed with bgzip and indexed with tabix (or as plain text files). */
+    @FXML private void setCompressOutputFiles(ActionEvent e) {
+        this.model.setCompressOutputFiles(compressOutputFilesMenuItem.isSelected());
+        e.consume();
+    }
+
+    /** Read the genome sequences from the 2bit file next to the genome FASTA file (if it matches the FASTA index). */
+    @FXML private void setUseTwoBitGenome(ActionEvent e) {
+        this.model.setUseTwoBitGenome(useTwoBitGenomeMenuItem.isSelected());
+        e.consume();
+    }
+
 
 }
 
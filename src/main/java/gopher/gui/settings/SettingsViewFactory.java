@@ -64,6 +64,8 @@ public class SettingsViewFactory {
         orderedmap.put("Max. k-mer alignability", String.valueOf(model.getMaxMeanKmerAlignability()));
         orderedmap.put("Allow unbalanced margins?", model.getAllowUnbalancedMargins()? "yes":"no");
         orderedmap.put("Restriction enzymes", model.getAllSelectedEnzymeString());
+        orderedmap.put("Read genome from 2bit file?", model.getUseTwoBitGenome()? "yes":"no");
+        orderedmap.put("Compress and index exported files?", model.getCompressOutputFiles()? "yes":"no");
         return orderedmap;
     }
 
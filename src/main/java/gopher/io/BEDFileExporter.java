@@ -1,18 +1,16 @@
 package gopher.io;
 
 import gopher.model.viewpoint.Bait;
+import htsjdk.tribble.index.tabix.TabixFormat;
 import org.apache.log4j.Logger;
 import gopher.model.viewpoint.Segment;
 import gopher.model.viewpoint.ViewPoint;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
-import java.util.HashSet;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 /**
  * This class exports BEDfiles that can be used to check the results and for ordering probes. We export three files
@@ -23,6 +21,8 @@ import java.util.Set;
  * such as UCSC links, scores, number of selected fragments, etc..</li>
  * </ol>
  * The target regions file is intended to be used to generate probes, .e.g., by use of a Wizard of a probe manufacturer.
+ * The unique target fragments can optionally be written compressed with bgzip and indexed with tabix (the other files
+ * are uploaded to the UCSC browser or a probe design wizard, or contain several tracks, and are kept as plain text).
  * @author Peter Hansen, Peter Robinson
  * @version 0.0.3 (2017-10-14)
  */
@@ -36,6 +36,8 @@ public class BEDFileExporter {
     private final String vpvUniqueTargetFragmentsFile;
     /** Path to directory where the BED files will be stored. The path is guaranteed to have no trailing slash. */
     private final String directoryPath;
+    /** If true, the unique target fragments are written to a BGZF compressed file with a tabix index. */
+    private final boolean compress;
 
     /**
      *
@@ -43,12 +45,24 @@ public class BEDFileExporter {
      * @param outPrefix The prefix (name) of the files.
      */
     public BEDFileExporter(String dirpath, String outPrefix){
+        this(dirpath,outPrefix,false);
+    }
+
+    /**
+     *
+     * @param dirpath The directory where we will write the BED and TSV files to
+     * @param outPrefix The prefix (name) of the files.
+     * @param compress If true, the unique target fragments are written compressed (BGZF) with a tabix index.
+     */
+    public BEDFileExporter(String dirpath, String outPrefix, boolean compress){
         // initialize the file  names
         this.allTracksBEDfile =String.format("%s_allTracks.bed",outPrefix);
         this.targetRegionBEDfile =String.format("%s_uniqueTargetDigestMargins.txt",outPrefix);
         this.vpvSummaryTSVfile=String.format("%s_viewPoints.tsv",outPrefix);
         //this.vpvSummaryRfile=String.format("%s_vpvSummary.r",outPrefix);
-        this.vpvUniqueTargetFragmentsFile=String.format("%s_uniqueTargetDigests.bed",outPrefix);
+        this.vpvUniqueTargetFragmentsFile=String.format("%s_uniqueTargetDigests.bed%s",outPrefix,
+                compress ? TabixIndexingOutputStream.SUFFIX : "");
+        this.compress=compress;
         /* remove trailing slash if necessary. */
         if (dirpath.endsWith(File.separator)) {
             dirpath=dirpath.substring(0,dirpath.length()-1);
@@ -67,9 +81,9 @@ public class BEDFileExporter {
      * other data on each viewpoint. Users can viewthe chosen fragments by uploading them to the UCSCbrowser.
      * @param viewpointlist List of the viewpoints we will output to BED file
      * @param genomeBuild build of genome we used to generate the viewpoints
-     * @throws FileNotFoundException
+     * @throws IOException if one of the files cannot be written
      */
-    public void printRestFragsToBed(List<ViewPoint> viewpointlist, String genomeBuild) throws FileNotFoundException {
+    public void printRestFragsToBed(List<ViewPoint> viewpointlist, String genomeBuild) throws IOException {
 
         PrintStream out_targetRegions = new PrintStream(new FileOutputStream(getFullPath(targetRegionBEDfile)));
         out_targetRegions.println("track name='" + targetRegionBEDfile + "' description='" + targetRegionBEDfile + "'");
@@ -207,10 +221,22 @@ public class BEDFileExporter {
         // print out unique set of target fragments to a separate file that can be used as input for diachromatic
         // ------------------------------------------------------------------------------------------------------
 
-        PrintStream out_uniqueTargetFragments = new PrintStream(new FileOutputStream(getFullPath(vpvUniqueTargetFragmentsFile)));
-        for (String s : uniqueFragments) {
+        // the lines are sorted by position, which is required for the tabix index
+        List<String> sortedFragments = new ArrayList<>(uniqueFragments);
+        sortedFragments.sort(Comparator.comparing((String s) -> s.split("\t")[0])
+                .thenComparingInt(s -> Integer.parseInt(s.split("\t")[1]))
+                .thenComparing(Comparator.naturalOrder()));
+        File uniqueTargetFragmentsFile = new File(getFullPath(vpvUniqueTargetFragmentsFile));
+        PrintStream out_uniqueTargetFragments = compress
+                ? new PrintStream(new TabixIndexingOutputStream(uniqueTargetFragmentsFile, TabixFormat.BED))
+                : new PrintStream(new FileOutputStream(uniqueTargetFragmentsFile));
+        for (String s : sortedFragments) {
             out_uniqueTargetFragments.println(s);
         }
+        out_uniqueTargetFragments.close();
+        if (out_uniqueTargetFragments.checkError()) {
+            throw new IOException("Could not write " + uniqueTargetFragmentsFile.getAbsolutePath());
+        }
     }
 
 
@@ -44,30 +44,26 @@ public class BedFileParser {
 
     /** Parse */
     private void parse(String path) throws GopherException {
-        try {
-            FileReader fr = new FileReader(path);
-            BufferedReader br = new BufferedReader(fr);
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.isEmpty()) {
+        try (TabTokenizer tokens = new TabTokenizer(new FileInputStream(path))) {
+            while (tokens.nextLine()) {
+                if (tokens.isEmptyLine()) {
                     continue; // skip empty lines that might be at the end of the file
                 }
-                String A[] = line.split("\t");
-                if (A.length < MINIMUM_NUMBER_OF_BED_FIELDS) {
+                if (tokens.getFieldCount() < MINIMUM_NUMBER_OF_BED_FIELDS) {
                     throw new GopherException(String.format("Malformed BED6 file line : %s (at least %d fields required but we got %d",
-                            line,MINIMUM_NUMBER_OF_BED_FIELDS,A.length));
+                            tokens.getLine(),MINIMUM_NUMBER_OF_BED_FIELDS,tokens.getFieldCount()));
                 }
-                String chrom=A[0];
+                String chrom=tokens.getString(0);
                 int pos;
                 try {
-                    pos=Integer.parseInt(A[1])+1; // convert to one-based
+                    pos=tokens.getInt(1)+1; // convert to one-based
                 } catch(NumberFormatException n) {
-                    throw new GopherException(String.format("Malformed BED6 line. Could not parse start pos (%s): %s",A[1],line));
+                    throw new GopherException(String.format("Malformed BED6 line. Could not parse start pos (%s): %s",tokens.getString(1),tokens.getLine()));
                 }
-                String accession=A[3]; // something like rs123456 or custom name
-                String strand=A[5];
+                String accession=tokens.getString(3); // something like rs123456 or custom name
+                String strand=tokens.getString(5);
                 if (! strand.equals("+") && ! strand.equals("-")) {
-                    throw new GopherException(String.format("Malformed BED6 line. Strand was %s. Line=%s",strand,line));
+                    throw new GopherException(String.format("Malformed BED6 line. Strand was %s. Line=%s",strand,tokens.getLine()));
                 }
                 boolean isNoncoding=false; // needed for interface but not used
                 GopherGene gene= new GopherGene(accession, accession, isNoncoding, chrom, strand);
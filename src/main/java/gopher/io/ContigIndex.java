@@ -0,0 +1,107 @@
+package gopher.io;
+
+import gopher.exception.GopherException;
+import gopher.model.genome.Genome;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Names and lengths of the contigs (chromosomes and scaffolds) of the genome, as recorded in the FASTA index
+ * ({@code .fai}) file that is written by {@link Faidx}. This allows us to look up the length of a chromosome
+ * without reading its sequence. Objects of this class are immutable and are shared by all tasks via the
+ * {@link gopher.model.Model}.
+ */
+public class ContigIndex {
+    private static Logger logger = Logger.getLogger(ContigIndex.class.getName());
+    /** Key: Name of a contig, e.g., chr1; value: length in nucleotides (in the order of the FASTA file). */
+    private final Map<String, Integer> contigLengths;
+    /** Names of the canonical chromosomes, e.g., chr1 but not chr1_gl000191_random. */
+    private final Set<String> canonicalContigs;
+
+    /**
+     * @param contigLengths Key: Name of a contig; value: length in nucleotides
+     * @param genome the genome build (used to decide which contigs are canonical chromosomes), may be null
+     */
+    public ContigIndex(Map<String, Integer> contigLengths, Genome genome) {
+        this.contigLengths = Collections.unmodifiableMap(new LinkedHashMap<>(contigLengths));
+        Set<String> canonical = new HashSet<>();
+        for (String name : contigLengths.keySet()) {
+            // without information about the genome build, treat everything but random and unplaced scaffolds as canonical
+            if (genome != null ? genome.isCanonical(name) : !name.contains("_")) {
+                canonical.add(name);
+            }
+        }
+        this.canonicalContigs = Collections.unmodifiableSet(canonical);
+    }
+
+    /**
+     * Read the names and lengths of the contigs from a FASTA index file (the first two columns of each line).
+     * @param faiPath path to the FASTA index file, e.g., hg19.fa.fai
+     * @param genome the genome build, may be null
+     * @return new index of the contigs
+     * @throws GopherException if the file cannot be read or is malformed
+     */
+    public static ContigIndex fromFaiFile(String faiPath, Genome genome) throws GopherException {
+        if (faiPath == null) {
+            throw new GopherException("Path to FASTA index (fai) file not initialized");
+        }
+        Map<String, Integer> lengths = new LinkedHashMap<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(faiPath))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                String[] fields = line.split("\t");
+                if (fields.length < 2) {
+                    throw new GopherException(String.format("Malformed line in FASTA index %s: %s", faiPath, line));
+                }
+                lengths.put(fields[0], Integer.parseInt(fields[1]));
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new GopherException(String.format("Could not read FASTA index %s [%s]", faiPath, e.getMessage()));
+        }
+        logger.trace(String.format("Read lengths of %d contigs from %s", lengths.size(), faiPath));
+        return new ContigIndex(lengths, genome);
+    }
+
+    /** @return true if the genome has a contig with this name. */
+    public boolean contains(String contig) {
+        return contigLengths.containsKey(contig);
+    }
+
+    /**
+     * @param contig name of a contig, e.g., chr1
+     * @return the length of the contig in nucleotides
+     * @throws IllegalArgumentException if there is no such contig
+     */
+    public int getLength(String contig) {
+        Integer len = contigLengths.get(contig);
+        if (len == null) {
+            throw new IllegalArgumentException("Contig " + contig + " not found in FASTA index");
+        }
+        return len;
+    }
+
+    /** @return the names of all contigs, in the order of the FASTA file. */
+    public List<String> getContigNames() {
+        return new ArrayList<>(contigLengths.keySet());
+    }
+
+    /** @return Key: Name of a contig; value: length in nucleotides (unmodifiable). */
+    public Map<String, Integer> getContigLengths() {
+        return contigLengths;
+    }
+
+    /** @return true if the contig is a canonical chromosome such as chr1 (and not, e.g., chr1_gl000191_random). */
+    public boolean isCanonical(String contig) {
+        return canonicalContigs.contains(contig);
+    }
+
+    /** @return number of contigs in the genome. */
+    public int size() {
+        return contigLengths.size();
+    }
+}
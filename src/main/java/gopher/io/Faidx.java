@@ -32,7 +32,7 @@ public class Faidx extends Task<Void> {
     private final String genomeFastaIndexBaseName;
     /** Number of canonical chromosomes, e.g., chr1 and not chr3random123. */
     private final int n_canonical_chromosomes;
-    /** Key: Name of a chromosome (or in general, of a contig). Value: length in nucleotides. */
+    /** Key: Name of a chromosome (or in general, of a contig). Value: length in nucleotides (in the order of the FASTA file). */
     private Map<String, Integer> contigLengths;
     /** The progress indicator on the GUI that will show progress of indexing. */
     private final ProgressIndicator progress;
@@ -44,7 +44,7 @@ public class Faidx extends Task<Void> {
         logger.trace("Initializing fasta indexing at directory " + this.genomeDirectoryPath);
         this.progress = pi;
         this.n_canonical_chromosomes = model.getGenome().getNumberOfCanonicalChromosomes();
-        this.contigLengths = new HashMap<>();
+        this.contigLengths = new LinkedHashMap<>();
     }
     public Faidx(String genomeDirPath, String basename, int n_chroms) {
         this.genomeDirectoryPath=genomeDirPath;
@@ -53,7 +53,7 @@ public class Faidx extends Task<Void> {
         logger.trace("Initializing fasta indexing at directory " + this.genomeDirectoryPath);
         this.n_canonical_chromosomes=n_chroms;
         this.progress=null; // signal not to use the Progress Indicator
-        this.contigLengths=new HashMap<>();
+        this.contigLengths=new LinkedHashMap<>();
     }
 
 
@@ -77,6 +77,7 @@ public class Faidx extends Task<Void> {
         String path = genomeDirectoryPath + File.separator + genomeFastaBaseName;
         if (alreadyIndexed(path)) {
             logger.trace("We found index for " + path +" and are skipping the FAI indexing step");
+            this.contigLengths = ContigIndex.fromFaiFile(getGenomeFastaIndexPath(), null).getContigLengths();
             updateProgress(1.00);
             return null;
         }
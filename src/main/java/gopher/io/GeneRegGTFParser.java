@@ -4,7 +4,6 @@ import org.apache.log4j.Logger;
 import gopher.model.regulatoryexome.RegulatoryElement;
 
 import java.io.*;
-import java.util.zip.GZIPInputStream;
 
 /** This class is responsible for parsing the Ensembl regulatory build GTF file. This can be used to
  * create a separate "exome" like panel that contains not only coding sequences but also the regulatory
@@ -29,8 +28,9 @@ public class GeneRegGTFParser {
     private String pathToGTFfile=null;
 
 
-    private BufferedReader reader=null;
-    private String currentLine=null;
+    private TabTokenizer tokenizer=null;
+    /** True if the tokenizer is positioned on a line that has not been returned by {@link #next()} yet. */
+    private boolean hasCurrentLine=false;
 
 
 
@@ -39,44 +39,49 @@ public class GeneRegGTFParser {
     }
 
     public void close() throws IOException {
-        reader.close();
+        tokenizer.close();
     }
 
 
 
 
     public void initGzipReader() throws IOException {
-        String encoding="UTF-8";
         if (this.pathToGTFfile==null) {
             throw new IOException("Regulatory build GTF file not initialized");
         }
-        InputStream fileStream = new FileInputStream(this.pathToGTFfile);
-        InputStream gzipStream = new GZIPInputStream(fileStream);
-        Reader decoder = new InputStreamReader(gzipStream, encoding);
-        this.reader = new BufferedReader(decoder);
-        this.currentLine=reader.readLine();
+        InputStream gzipStream = new PipelinedGzipInputStream(this.pathToGTFfile);
+        this.tokenizer = new TabTokenizer(gzipStream);
+        this.hasCurrentLine=tokenizer.nextLine();
     }
 
     public boolean hasNext() {
-        return this.currentLine !=null;
+        return this.hasCurrentLine;
     }
 
     public RegulatoryElement next() throws IOException {
-        String A[]=this.currentLine.split("\t");
-        this.currentLine=this.reader.readLine(); // advance iterator
+        try {
+            return parseCurrentLine();
+        } finally {
+            // advance the iterator even if the line is malformed, so that callers cannot loop on the same line
+            this.hasCurrentLine=tokenizer.nextLine();
+        }
+    }
+
+    /** Parse the line on which the {@link #tokenizer} is positioned (the fields are only valid until it advances). */
+    private RegulatoryElement parseCurrentLine() {
         RegulatoryElement elem=null;
-        String chrom=A[0];
-        if (! A[1].equals("Regulatory_Build")){
+        String chrom=tokenizer.getString(0);
+        if (! tokenizer.fieldEquals(1,"Regulatory_Build")){
             System.exit(1);
         }
-        if (! A[2].equals("regulatory_region")) {
-            logger.error(String.format("Unexpected element type %s",A[2]));
+        if (! tokenizer.fieldEquals(2,"regulatory_region")) {
+            logger.error(String.format("Unexpected element type %s",tokenizer.getString(2)));
         }
-        Integer from,to;
+        int from,to;
         try {
-            from=Integer.parseInt(A[3]);
-            to=Integer.parseInt(A[4]);
-            String annot = A[8];
+            from=tokenizer.getInt(3);
+            to=tokenizer.getInt(4);
+            String annot = tokenizer.getString(8);
              elem = parseAnnot(chrom,from,to,annot);
         } catch (NumberFormatException ne) {
             ne.printStackTrace();
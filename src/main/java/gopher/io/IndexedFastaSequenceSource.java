@@ -0,0 +1,71 @@
+package gopher.io;
+
+import htsjdk.samtools.reference.FastaSequenceIndexEntry;
+import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link SequenceSource} for an indexed FASTA file that uses the HTSJDK {@link IndexedFastaSequenceFile}. The
+ * HTSJDK reader is not thread safe, and so each thread should open its own source.
+ */
+public class IndexedFastaSequenceSource implements SequenceSource {
+    private final IndexedFastaSequenceFile fastaReader;
+    /** Key: name of a sequence; value: its length (in the order of the FASTA file). */
+    private final Map<String, Integer> lengths = new LinkedHashMap<>();
+
+    /**
+     * @param fasta the genome FASTA file (the index must be in the same directory, e.g., hg19.fa.fai)
+     * @throws FileNotFoundException if the FASTA file or its index cannot be found
+     */
+    public IndexedFastaSequenceSource(File fasta) throws FileNotFoundException {
+        this.fastaReader = new IndexedFastaSequenceFile(fasta);
+        for (FastaSequenceIndexEntry entry : fastaReader.getIndex()) {
+            lengths.put(entry.getContig(), (int) entry.getSize());
+        }
+    }
+
+    @Override
+    public List<String> getSequenceNames() {
+        return new ArrayList<>(lengths.keySet());
+    }
+
+    @Override
+    public int getSequenceLength(String name) {
+        Integer len = lengths.get(name);
+        if (len == null) {
+            throw new IllegalArgumentException("Sequence " + name + " not found in FASTA index");
+        }
+        return len;
+    }
+
+    @Override
+    public byte[] getSubsequence(String name, int start, int end) {
+        if (start < 1 || end > getSequenceLength(name) || end < start - 1) {
+            throw new IllegalArgumentException(String.format("Invalid interval %s:%d-%d", name, start, end));
+        }
+        return fastaReader.getSubsequenceAt(name, start, end).getBases();
+    }
+
+    @Override
+    public byte[] getSequence(String name) {
+        getSequenceLength(name); // check that the sequence exists
+        return fastaReader.getSequence(name).getBases();
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        fastaReader.close();
+    }
+}
@@ -0,0 +1,146 @@
+package gopher.io;
+
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link SequenceSource} for an indexed FASTA file that memory maps the file. The FASTA index ({@code .fai}, see
+ * {@link Faidx}) records for each sequence the offset of its first base and the number of bases and bytes per line,
+ * and so the position of any base in the file can be calculated. Requested intervals are copied line by line
+ * from the mapped file into the result, i.e., the line terminators are skipped without scanning the bytes.
+ * <p>
+ * Each sequence is mapped separately when it is first accessed (the genome file may be larger than the 2 GB that
+ * can be mapped at once). Every request works on its own view of the mapped buffer, and so, unlike the HTSJDK
+ * reader, a source can be shared by several threads.</p>
+ */
+public class MappedFastaSequenceSource implements SequenceSource {
+    private static final Logger logger = Logger.getLogger(MappedFastaSequenceSource.class.getName());
+    private final File fasta;
+    private final FileChannel channel;
+    /** Key: name of a sequence; value: its line geometry from the FASTA index (in the order of the FASTA file). */
+    private final Map<String, IndexEntry> entries = new LinkedHashMap<>();
+    /** Key: name of a sequence; value: the mapped bytes of the sequence, which are mapped on first access. */
+    private final Map<String, MappedByteBuffer> buffers = new ConcurrentHashMap<>();
+
+    /** One line of the FASTA index. */
+    private static final class IndexEntry {
+        private final int length;
+        /** Byte position of the first base of the sequence in the FASTA file. */
+        private final long offset;
+        /** Number of bases per line. */
+        private final int lineBases;
+        /** Number of bytes per line, including the line terminator. */
+        private final int lineBytes;
+
+        private IndexEntry(int length, long offset, int lineBases, int lineBytes) {
+            this.length = length;
+            this.offset = offset;
+            this.lineBases = lineBases;
+            this.lineBytes = lineBytes;
+        }
+
+        /** @return position of the zero-based base {@code i} relative to {@link #offset}. */
+        private long position(int i) {
+            return (long) (i / lineBases) * lineBytes + i % lineBases;
+        }
+    }
+
+    /**
+     * @param fasta the genome FASTA file (the index must be in the same directory, e.g., hg19.fa.fai)
+     * @throws IOException if the FASTA file or its index cannot be read
+     */
+    public MappedFastaSequenceSource(File fasta) throws IOException {
+        this.fasta = fasta;
+        File fai = new File(fasta.getPath() + ".fai");
+        try (BufferedReader br = new BufferedReader(new FileReader(fai))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                String[] fields = line.split("\t");
+                if (fields.length < 5) {
+                    throw new IOException(String.format("Malformed line in FASTA index %s: %s", fai.getAbsolutePath(), line));
+                }
+                try {
+                    entries.put(fields[0], new IndexEntry(Integer.parseInt(fields[1]), Long.parseLong(fields[2]),
+                            Integer.parseInt(fields[3]), Integer.parseInt(fields[4])));
+                } catch (NumberFormatException e) {
+                    throw new IOException(String.format("Malformed line in FASTA index %s: %s", fai.getAbsolutePath(), line));
+                }
+            }
+        }
+        this.channel = new RandomAccessFile(fasta, "r").getChannel();
+        logger.trace(String.format("Opened %s with %d sequences", fasta.getAbsolutePath(), entries.size()));
+    }
+
+    private IndexEntry getEntry(String name) {
+        IndexEntry entry = entries.get(name);
+        if (entry == null) {
+            throw new IllegalArgumentException("Sequence " + name + " not found in FASTA index");
+        }
+        return entry;
+    }
+
+    /** @return the mapped bytes of the sequence (from the first to the last base). */
+    private MappedByteBuffer getBuffer(String name, IndexEntry entry) {
+        return buffers.computeIfAbsent(name, n -> {
+            long size = entry.length == 0 ? 0 : entry.position(entry.length - 1) + 1;
+            try {
+                return channel.map(FileChannel.MapMode.READ_ONLY, entry.offset, size);
+            } catch (IOException e) {
+                throw new IllegalStateException(String.format("Could not map %s in %s [%s]",
+                        name, fasta.getAbsolutePath(), e.getMessage()));
+            }
+        });
+    }
+
+    @Override
+    public List<String> getSequenceNames() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    @Override
+    public int getSequenceLength(String name) {
+        return getEntry(name).length;
+    }
+
+    @Override
+    public byte[] getSubsequence(String name, int start, int end) {
+        IndexEntry entry = getEntry(name);
+        if (start < 1 || end > entry.length || end < start - 1) {
+            throw new IllegalArgumentException(String.format("Invalid interval %s:%d-%d", name, start, end));
+        }
+        byte[] bases = new byte[end - start + 1];
+        // a view with its own position, so that concurrent requests do not interfere
+        ByteBuffer view = getBuffer(name, entry).duplicate();
+        int i = start - 1; // zero-based position of the next base
+        int k = 0; // next index in bases
+        while (k < bases.length) {
+            int n = Math.min(entry.lineBases - i % entry.lineBases, bases.length - k); // rest of the current line
+            view.position((int) entry.position(i));
+            view.get(bases, k, n);
+            i += n;
+            k += n;
+        }
+        return bases;
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the mapped buffers remain valid until they are garbage collected
+        channel.close();
+    }
+}
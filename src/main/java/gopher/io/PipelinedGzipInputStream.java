@@ -0,0 +1,290 @@
+package gopher.io;
+
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * An input stream for a gzipped file (e.g., the alignability map or the refGene file) that decompresses the file
+ * on a separate thread, so that decompression and parsing overlap instead of running one after the other.
+ * <p>
+ * For ordinary gzip files, a background thread inflates the file into large buffers that are handed to the reader
+ * through a bounded queue; the reader returns the buffers when it has consumed them, so that they can be reused.
+ * Files that were compressed with {@code bgzip} (BGZF, a series of independent gzip blocks of at most 64 kB) are
+ * inflated by several threads: the background thread only reads the compressed blocks and submits them to a pool of
+ * inflaters, and the reader consumes the inflated blocks in the order of the file.</p>
+ * <p>
+ * At most {@link #MAX_PENDING_CHUNKS} buffers (or {@link #MAX_PENDING_BLOCKS} BGZF blocks) are held in memory. The
+ * threads are daemon threads that end when the whole file has been inflated or the stream is closed.</p>
+ */
+public class PipelinedGzipInputStream extends InputStream {
+    private static final Logger logger = Logger.getLogger(PipelinedGzipInputStream.class.getName());
+    /** Size of the buffers into which ordinary gzip files are inflated. */
+    static final int CHUNK_SIZE = 1 << 20;
+    /** Maximum number of inflated buffers that have not been consumed by the reader yet. */
+    private static final int MAX_PENDING_CHUNKS = 4;
+    /** Maximum number of BGZF blocks that are being inflated or have not been consumed by the reader yet. */
+    private static final int MAX_PENDING_BLOCKS = 256;
+    /** Maximum size of the inflated data of a BGZF block. */
+    private static final int BGZF_MAX_BLOCK_SIZE = 1 << 16;
+    /** Size of the header of a BGZF block (the header of gzip with the extra field that holds the block size). */
+    private static final int BGZF_HEADER_SIZE = 18;
+    /** Marks the end of the file in the queue of chunks. */
+    private static final Chunk END = new Chunk(new byte[0], 0);
+
+    private final File file;
+    /** Inflated chunks in the order of the file (futures, because BGZF blocks are inflated concurrently). */
+    private final BlockingQueue<Future<Chunk>> pending;
+    /** Buffers of size {@link #CHUNK_SIZE} that have been consumed by the reader and can be reused. */
+    private final BlockingQueue<byte[]> freeBuffers = new LinkedBlockingQueue<>();
+    /** Inflates the BGZF blocks; null for ordinary gzip files. */
+    private final ExecutorService inflaters;
+    private final Thread producer;
+    /** The chunk that is being read. */
+    private Chunk current = null;
+    /** Position of the next byte in {@link #current}. */
+    private int pos = 0;
+    private boolean finished = false;
+
+    /** A buffer with inflated bytes. */
+    private static final class Chunk {
+        final byte[] bytes;
+        final int length;
+
+        Chunk(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Start decompressing the file.
+     * @param file a gzip or BGZF compressed file
+     * @throws IOException if the file cannot be read
+     */
+    public PipelinedGzipInputStream(File file) throws IOException {
+        this.file = file;
+        if (isBgzf(file)) {
+            int threadCount = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+            this.inflaters = Executors.newFixedThreadPool(threadCount, r -> {
+                Thread t = new Thread(r, "bgzf-inflater");
+                t.setDaemon(true);
+                return t;
+            });
+            this.pending = new ArrayBlockingQueue<>(MAX_PENDING_BLOCKS);
+            this.producer = new Thread(this::readBlocks, "bgzf-reader");
+            logger.trace(String.format("Inflating BGZF file %s with %d threads", file.getAbsolutePath(), threadCount));
+        } else {
+            this.inflaters = null;
+            this.pending = new ArrayBlockingQueue<>(MAX_PENDING_CHUNKS);
+            this.producer = new Thread(this::inflate, "gzip-inflater");
+        }
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    /** @param path path to a gzip or BGZF compressed file */
+    public PipelinedGzipInputStream(String path) throws IOException {
+        this(new File(path));
+    }
+
+    /** @return true if the file starts with a BGZF block (a gzip header with a BC extra field). */
+    static boolean isBgzf(File file) throws IOException {
+        byte[] header = new byte[BGZF_HEADER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            return readFully(in, header, 0, header.length) == header.length && isBgzfHeader(header);
+        }
+    }
+
+    private static boolean isBgzfHeader(byte[] header) {
+        return (header[0] & 0xFF) == 31 && (header[1] & 0xFF) == 139 && header[2] == 8 && (header[3] & 4) != 0 &&
+                readUnsignedShort(header, 10) == 6 && header[12] == 'B' && header[13] == 'C' &&
+                readUnsignedShort(header, 14) == 2;
+    }
+
+    private static int readUnsignedShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return readUnsignedShort(bytes, offset) | readUnsignedShort(bytes, offset + 2) << 16;
+    }
+
+    /** @return the number of bytes read, which is less than {@code length} only at the end of the stream. */
+    private static int readFully(InputStream in, byte[] bytes, int offset, int length) throws IOException {
+        int n = 0;
+        while (n < length) {
+            int r = in.read(bytes, offset + n, length - n);
+            if (r < 0) break;
+            n += r;
+        }
+        return n;
+    }
+
+    /** Runs on the producer thread: inflate an ordinary gzip file into buffers of size {@link #CHUNK_SIZE}. */
+    private void inflate() {
+        try (InputStream in = new GZIPInputStream(new FileInputStream(file), 1 << 16)) {
+            int n;
+            do {
+                byte[] buffer = freeBuffers.poll();
+                if (buffer == null) {
+                    buffer = new byte[CHUNK_SIZE];
+                }
+                n = readFully(in, buffer, 0, buffer.length);
+                if (n > 0) {
+                    pending.put(CompletableFuture.completedFuture(new Chunk(buffer, n)));
+                }
+            } while (n == CHUNK_SIZE);
+            pending.put(CompletableFuture.completedFuture(END));
+        } catch (InterruptedException e) {
+            // the stream has been closed
+        } catch (Throwable e) { // e.g., an IOException, or an OutOfMemoryError, which must not leave the reader waiting
+            fail(e);
+        }
+    }
+
+    /** Runs on the producer thread: read the compressed BGZF blocks and submit them to the inflaters. */
+    private void readBlocks() {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+            byte[] header = new byte[BGZF_HEADER_SIZE];
+            int n;
+            while ((n = readFully(in, header, 0, header.length)) > 0) {
+                if (n < header.length || !isBgzfHeader(header)) {
+                    throw new IOException("Invalid BGZF block in " + file.getAbsolutePath());
+                }
+                int blockSize = readUnsignedShort(header, 16) + 1;
+                byte[] block = Arrays.copyOf(header, blockSize);
+                if (readFully(in, block, header.length, blockSize - header.length) < blockSize - header.length) {
+                    throw new EOFException("Truncated BGZF block in " + file.getAbsolutePath());
+                }
+                pending.put(inflaters.submit(() -> inflateBlock(block)));
+            }
+            pending.put(CompletableFuture.completedFuture(END));
+        } catch (InterruptedException | RejectedExecutionException e) {
+            // the stream has been closed
+        } catch (Throwable e) { // e.g., an IOException, or an OutOfMemoryError, which must not leave the reader waiting
+            fail(e);
+        }
+    }
+
+    /** Runs on one of the inflaters: inflate one BGZF block and check its CRC. */
+    private Chunk inflateBlock(byte[] block) throws IOException {
+        int cdataStart = 12 + readUnsignedShort(block, 10);
+        int crc = readInt(block, block.length - 8);
+        int inflatedSize = readInt(block, block.length - 4);
+        if (inflatedSize < 0 || inflatedSize > BGZF_MAX_BLOCK_SIZE) {
+            throw new IOException("Invalid size of BGZF block in " + file.getAbsolutePath());
+        }
+        byte[] bytes = new byte[inflatedSize];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(block, cdataStart, block.length - 8 - cdataStart);
+            int n = 0;
+            while (n < inflatedSize) {
+                int r = inflater.inflate(bytes, n, inflatedSize - n);
+                if (r == 0) break; // finished, or the block is incomplete
+                n += r;
+            }
+            if (n != inflatedSize) {
+                throw new IOException("Invalid size of BGZF block in " + file.getAbsolutePath());
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid BGZF block in " + file.getAbsolutePath() + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes, 0, inflatedSize);
+        if ((int) crc32.getValue() != crc) {
+            throw new IOException("CRC error in BGZF block in " + file.getAbsolutePath());
+        }
+        return new Chunk(bytes, inflatedSize);
+    }
+
+    /** Hand an error of the producer thread to the reader. */
+    private void fail(Throwable e) {
+        CompletableFuture<Chunk> failure = new CompletableFuture<>();
+        failure.completeExceptionally(e);
+        try {
+            pending.put(failure);
+        } catch (InterruptedException ie) {
+            // the stream has been closed
+        }
+    }
+
+    /** @return false if the end of the file has been reached. */
+    private boolean nextChunk() throws IOException {
+        if (finished) return false;
+        if (current != null && current.bytes.length == CHUNK_SIZE && inflaters == null) {
+            freeBuffers.offer(current.bytes);
+        }
+        current = null;
+        try {
+            Chunk chunk = pending.take().get();
+            if (chunk == END) {
+                finished = true;
+                shutdown();
+                return false;
+            }
+            current = chunk;
+            pos = 0;
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while inflating " + file.getAbsolutePath());
+        } catch (ExecutionException e) {
+            finished = true;
+            shutdown();
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (current == null || pos == current.length) {
+            if (!nextChunk()) return -1;
+        }
+        return current.bytes[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        while (current == null || pos == current.length) {
+            if (!nextChunk()) return -1;
+        }
+        int n = Math.min(len, current.length - pos);
+        System.arraycopy(current.bytes, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.length - pos;
+    }
+
+    private void shutdown() {
+        producer.interrupt();
+        if (inflaters != null) {
+            inflaters.shutdownNow();
+        }
+    }
+
+    @Override
+    public void close() {
+        finished = true;
+        current = null;
+        shutdown();
+        pending.clear(); // unblock the producer if it is waiting for space in the queue
+    }
+}
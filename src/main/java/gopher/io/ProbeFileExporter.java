@@ -3,11 +3,10 @@ package gopher.io;
 import gopher.model.viewpoint.Bait;
 import gopher.model.viewpoint.Segment;
 import gopher.model.viewpoint.ViewPoint;
-import htsjdk.samtools.reference.IndexedFastaSequenceFile;
-import htsjdk.samtools.reference.ReferenceSequence;
 import org.apache.log4j.Logger;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.zip.ZipEntry;
@@ -49,9 +48,9 @@ public class ProbeFileExporter {
         return String.format("%s%s%s",this.directoryPath,File.separator,fname);
     }
 
-    public void printProbeFileInAgilentFormat(Integer probe_length, List<ViewPoint> viewpointlist, String genomeBuild, String IndexedFastaSequenceFilePath) throws IOException {
+    public void printProbeFileInAgilentFormat(Integer probe_length, List<ViewPoint> viewpointlist, String genomeBuild, String IndexedFastaSequenceFilePath, boolean useTwoBitGenome) throws IOException {
 
-        IndexedFastaSequenceFile fastaReader = new IndexedFastaSequenceFile(new File(IndexedFastaSequenceFilePath));
+        SequenceSource sequenceSource = SequenceSource.openGenome(IndexedFastaSequenceFilePath, useTwoBitGenome);
 
         PrintStream out_probe_file_bed = new PrintStream(new FileOutputStream(getFullPath(ProbeFileBedFormat)));
 
@@ -141,8 +140,8 @@ public class ProbeFileExporter {
                 String key3 = refID + ":" + sortedPositions.get(i);
                 probeID += coordsTogeneNames.get(key3);
                 // get sequence
-                ReferenceSequence sequence = fastaReader.getSubsequenceAt(refID, sortedPositions.get(i),sortedPositions.get(i)+probe_length-1);
-                String printToZip=String.format(refID + "\t" + probeID + "\t" + sequence.getBaseString().toUpperCase() + "\t" + 1 + "\t" + "+" + "\t" + refID + ":" + (sortedPositions.get(i)) + "-" + (sortedPositions.get(i)+120-1) + "\n");
+                byte[] sequence = sequenceSource.getSubsequence(refID, sortedPositions.get(i),sortedPositions.get(i)+probe_length-1);
+                String printToZip=String.format(refID + "\t" + probeID + "\t" + new String(sequence, StandardCharsets.US_ASCII).toUpperCase() + "\t" + 1 + "\t" + "+" + "\t" + refID + ":" + (sortedPositions.get(i)) + "-" + (sortedPositions.get(i)+120-1) + "\n");
                 zipOutAgillent.write(printToZip.getBytes());
                 out_probe_file_bed.println(refID + "\t" + (sortedPositions.get(i)-1) + "\t" + (sortedPositions.get(i)+probe_length-2) + "\t" + probeID); // start and end 0-based
 
@@ -150,5 +149,6 @@ public class ProbeFileExporter {
         }
         zipOutAgillent.closeEntry();
         zipOutAgillent.close();
+        sequenceSource.close();
     }
 }
\ No newline at end of file
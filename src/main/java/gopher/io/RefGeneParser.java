@@ -9,7 +9,6 @@ import gopher.gui.popupdialog.PopupFactory;
 
 import java.io.*;
 import java.util.*;
-import java.util.zip.GZIPInputStream;
 
 /**
  * Parse the refGene.txt.gz file from UCSC. The format is the same for all of the genome builds we are considering.
@@ -83,31 +82,27 @@ public class RefGeneParser {
      * in the variables {@link #n_totalTSS} and {@link #n_totalGenes} and can be retrieved
      * by the functions {@link #getTotalTSScount()} and {@link #getTotalNumberOfRefGenes()}.*/
     private void parse(String path) {
-        try {
-            InputStream fileStream = new FileInputStream(path);
-            InputStream gzipStream = new GZIPInputStream(fileStream);
-            Reader decoder = new InputStreamReader(gzipStream);
-            BufferedReader br = new BufferedReader(decoder);
-            String line;
-            while ((line=br.readLine())!=null) {
-                String A[]=line.split("\t");
-                String accession=A[1];
-                String chrom=A[2];
+        try (InputStream gzipStream = new PipelinedGzipInputStream(path);
+             TabTokenizer tokens = new TabTokenizer(gzipStream)) {
+            while (tokens.nextLine()) {
+                if (tokens.isEmptyLine()) continue;
+                String chrom=tokens.getString(2);
                 if (chrom.contains("_")) { continue;}
                 if (chrom.contains("random")) { continue; } /* do not take gene models on random contigs. */
-                String strand=A[3];
+                String accession=tokens.getString(1);
+                String strand=tokens.fieldEquals(3,"+") ? "+" : tokens.getString(3);
                 Integer gPos;
                 // The UCSC database files have 0-based, closed start, open end numbers
                 // we want to return 1-0based, fully closed position (both endpoints included).
                 if (strand.equals("+")) {
-                    gPos = Integer.parseInt(A[4]) + 1;
+                    gPos = tokens.getInt(4) + 1;
                 } else {
-                    gPos = Integer.parseInt(A[5]);
+                    gPos = tokens.getInt(5);
                 }
                 // if the CDS is indicated at the same position for start and end,
                 // then the transcript is non-coding
-                boolean isNoncoding = A[CDS_START_IDX].equals(A[CDS_END_IDX]);
-                String name2=A[12]; // this is the gene symbol
+                boolean isNoncoding = tokens.fieldsEqual(CDS_START_IDX, CDS_END_IDX);
+                String name2=tokens.getString(12); // this is the gene symbol
                 //String key = name2.concat(chrom);
                 String key=String.format("%s_%s_%d",name2,chrom,gPos);
                 GopherGene gene;
@@ -121,7 +116,6 @@ public class RefGeneParser {
                 gene.addGenomicPosition(gPos);
 
             }
-            br.close();
         } catch (IOException e) {
             logger.error("Error while attempting to parse the RefGene file from UCSC:"+path);
             logger.error(e,e);
@@ -0,0 +1,128 @@
+package gopher.io;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Random access to the sequences of a genome (chromosomes and scaffolds). All coordinates are one-based and fully
+ * closed. The bases are returned as raw bytes as they are found in the genome file, i.e., soft-masked (repeat)
+ * bases are in lower case and unknown bases are N (or n), so that {@link gopher.model.viewpoint.ChromosomeSequence}
+ * can count GC and repeat content without creating Strings.
+ * <p>
+ * Two formats are supported (see {@link #open(String)}): indexed FASTA files (see {@link MappedFastaSequenceSource},
+ * or {@link IndexedFastaSequenceSource} for the HTSJDK reader) and UCSC {@code .2bit} files
+ * (see {@link TwoBitSequenceSource}).</p>
+ * <p>
+ * Note that the genome of a project is always the unpacked and indexed FASTA file: the contig names and lengths are
+ * taken from its index, and {@link #openGenome} only reads the bases from a matching 2bit file instead of the FASTA
+ * file. A 2bit file is therefore only a faster path for reading the bases (it needs less I/O and memory per
+ * chromosome), not a way to save disk space; the FASTA file must not be removed.</p>
+ */
+public interface SequenceSource extends Closeable {
+
+    /** @return the names of all sequences, in the order of the genome file. */
+    List<String> getSequenceNames();
+
+    /**
+     * @param name name of a sequence, e.g., chr1
+     * @return the length of the sequence in nucleotides
+     * @throws IllegalArgumentException if there is no such sequence
+     */
+    int getSequenceLength(String name);
+
+    /**
+     * @param name name of a sequence, e.g., chr1
+     * @param start one-based start position
+     * @param end one-based end position (inclusive)
+     * @return the bases in {@code [start,end]}
+     * @throws IllegalArgumentException if there is no such sequence or the interval is not within the sequence
+     */
+    byte[] getSubsequence(String name, int start, int end);
+
+    /**
+     * @param name name of a sequence, e.g., chr1
+     * @return all bases of the sequence
+     */
+    default byte[] getSequence(String name) {
+        return getSubsequence(name, 1, getSequenceLength(name));
+    }
+
+    /** @return true if this source may be used by several threads at the same time. */
+    boolean isThreadSafe();
+
+    /**
+     * Open a genome file. Files ending with {@code .2bit} are read as UCSC 2bit files, all other files as FASTA files,
+     * which must have been indexed (e.g., by {@link Faidx}).
+     * @param path path to the genome file, e.g., hg19.fa or hg19.2bit
+     * @return a new source for the sequences of the genome
+     * @throws IOException if the file (or the FASTA index) cannot be read
+     */
+    static SequenceSource open(String path) throws IOException {
+        if (path.endsWith(TwoBitSequenceSource.SUFFIX)) {
+            return new TwoBitSequenceSource(new File(path));
+        }
+        return new MappedFastaSequenceSource(new File(path));
+    }
+
+    /**
+     * Open the sequences of a genome. If the 2bit file has been enabled (see
+     * {@link gopher.model.Model#getUseTwoBitGenome()}) and there is a 2bit file with the same basename in the
+     * directory of the genome FASTA file (e.g., hg19.2bit next to hg19.fa), the 2bit file is used instead of the
+     * FASTA file, but only if it has the same sequence names and lengths (in the same order) as the FASTA index.
+     * The FASTA file and its index are required in any case (see the description of this interface).
+     * @param fastaPath path to the genome FASTA file, e.g., hg19.fa
+     * @param useTwoBit true if the 2bit file next to the FASTA file may be used
+     * @return a new source for the sequences of the genome
+     * @throws IOException if the file (or the FASTA index) cannot be read
+     */
+    static SequenceSource openGenome(String fastaPath, boolean useTwoBit) throws IOException {
+        Logger logger = Logger.getLogger(SequenceSource.class.getName());
+        SequenceSource fasta = open(fastaPath);
+        File twoBit = getTwoBitFile(fastaPath);
+        if (!useTwoBit || !twoBit.isFile()) {
+            logger.info("Reading genome sequences from " + fastaPath);
+            return fasta;
+        }
+        SequenceSource source;
+        try {
+            source = new TwoBitSequenceSource(twoBit);
+        } catch (IOException e) {
+            logger.warn(String.format("Could not read %s [%s], reading the FASTA file", twoBit.getAbsolutePath(),
+                    e.getMessage()));
+            return fasta;
+        }
+        if (hasSameSequences(source, fasta)) {
+            logger.info("Reading genome sequences from " + twoBit.getAbsolutePath());
+            fasta.close();
+            return source;
+        }
+        logger.warn(String.format("The sequences of %s do not match the FASTA index of %s, reading the FASTA file",
+                twoBit.getAbsolutePath(), fastaPath));
+        source.close();
+        return fasta;
+    }
+
+    /** @return true if both sources have the same sequence names and lengths, in the same order. */
+    static boolean hasSameSequences(SequenceSource a, SequenceSource b) {
+        List<String> names = a.getSequenceNames();
+        if (!names.equals(b.getSequenceNames())) {
+            return false;
+        }
+        for (String name : names) {
+            if (a.getSequenceLength(name) != b.getSequenceLength(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return the 2bit file that corresponds to a FASTA file, e.g., hg19.2bit for hg19.fa (it need not exist). */
+    static File getTwoBitFile(String fastaPath) {
+        String basename = fastaPath.replaceAll("\\.(fa|fasta)$", "");
+        return new File(basename + TwoBitSequenceSource.SUFFIX);
+    }
+}
@@ -0,0 +1,238 @@
+package gopher.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads tab-separated lines (bedGraph, BED, refGene, GTF) from a (possibly decompressed) byte stream. Unlike
+ * {@code BufferedReader.readLine()} followed by {@code String.split("\t")}, the current line is kept in a reusable
+ * byte buffer and only the offsets of its fields are recorded, so that reading a line does not create any objects.
+ * Numeric fields are parsed directly from the bytes with {@link #getInt(int)} and {@link #getDouble(int)}, and Strings
+ * are only created for the fields that are actually needed ({@link #getString(int)}).
+ * <p>
+ * Line terminators may be {@code \n} or {@code \r\n}. Empty trailing fields are kept (unlike {@code String.split}).
+ * The fields are decoded as UTF-8, in which a tab is always a single byte.</p>
+ */
+public class TabTokenizer implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Initial capacity of the arrays of field offsets. */
+    private static final int INITIAL_FIELD_CAPACITY = 16;
+    /** Powers of ten that are exactly representable as doubles. */
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final InputStream in;
+    /** Bytes read from the stream; the current line starts at {@link #lineStart}. */
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    /** Number of valid bytes in {@link #buffer}. */
+    private int limit = 0;
+    /** Index of the first byte of the current line in {@link #buffer}. */
+    private int lineStart = 0;
+    /** Index after the last byte of the current line (without the line terminator). */
+    private int lineEnd = 0;
+    /** Index of the first byte after the line terminator of the current line. */
+    private int next = 0;
+    /** Start and end (exclusive) indices of the fields of the current line in {@link #buffer}. */
+    private int[] fieldStarts = new int[INITIAL_FIELD_CAPACITY];
+    private int[] fieldEnds = new int[INITIAL_FIELD_CAPACITY];
+    private int fieldCount = 0;
+    private boolean endOfStream = false;
+
+    /** @param in the stream to read (it is closed by {@link #close()}) */
+    public TabTokenizer(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Advance to the next line.
+     * @return false if there are no more lines
+     * @throws IOException if the stream cannot be read
+     */
+    public boolean nextLine() throws IOException {
+        lineStart = next;
+        int i = lineStart;
+        while (true) {
+            while (i < limit && buffer[i] != '\n') i++;
+            if (i < limit || endOfStream) break;
+            i -= lineStart;
+            fill();
+            i += lineStart;
+        }
+        if (i == lineStart && endOfStream && i == limit) {
+            fieldCount = 0;
+            return false;
+        }
+        next = i < limit ? i + 1 : i;
+        lineEnd = i > lineStart && buffer[i - 1] == '\r' ? i - 1 : i;
+        split();
+        return true;
+    }
+
+    /** Move the current (incomplete) line to the start of the buffer and read more bytes. */
+    private void fill() throws IOException {
+        int remaining = limit - lineStart;
+        if (lineStart > 0) {
+            System.arraycopy(buffer, lineStart, buffer, 0, remaining);
+        } else if (remaining == buffer.length) {
+            buffer = Arrays.copyOf(buffer, 2 * buffer.length); // a line that is longer than the buffer
+        }
+        lineStart = 0;
+        limit = remaining;
+        int n = in.read(buffer, limit, buffer.length - limit);
+        if (n < 0) {
+            endOfStream = true;
+        } else {
+            limit += n;
+        }
+    }
+
+    /** Record the offsets of the fields of the current line. */
+    private void split() {
+        fieldCount = 0;
+        int start = lineStart;
+        for (int i = lineStart; i <= lineEnd; i++) {
+            if (i == lineEnd || buffer[i] == '\t') {
+                if (fieldCount == fieldStarts.length) {
+                    fieldStarts = Arrays.copyOf(fieldStarts, 2 * fieldCount);
+                    fieldEnds = Arrays.copyOf(fieldEnds, 2 * fieldCount);
+                }
+                fieldStarts[fieldCount] = start;
+                fieldEnds[fieldCount] = i;
+                fieldCount++;
+                start = i + 1;
+            }
+        }
+    }
+
+    /** @return number of fields of the current line (an empty line has one empty field). */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /** @return true if the current line is empty. */
+    public boolean isEmptyLine() {
+        return lineEnd == lineStart;
+    }
+
+    /** @return the current line (for error messages). */
+    public String getLine() {
+        return new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+    }
+
+    private void checkField(int field) {
+        if (field < 0 || field >= fieldCount) {
+            throw new IndexOutOfBoundsException(String.format("Field %d requested, but line has %d fields: %s",
+                    field, fieldCount, getLine()));
+        }
+    }
+
+    /** @return the content of the (zero-based) field. */
+    public String getString(int field) {
+        checkField(field);
+        return new String(buffer, fieldStarts[field], fieldEnds[field] - fieldStarts[field], StandardCharsets.UTF_8);
+    }
+
+    /** @return true if the field is equal to the (ASCII) String s. */
+    public boolean fieldEquals(int field, String s) {
+        checkField(field);
+        int start = fieldStarts[field];
+        int length = fieldEnds[field] - start;
+        if (length != s.length()) return false;
+        for (int k = 0; k < length; k++) {
+            if (buffer[start + k] != s.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    /** @return true if the two fields have the same content. */
+    public boolean fieldsEqual(int field1, int field2) {
+        checkField(field1);
+        checkField(field2);
+        int length = fieldEnds[field1] - fieldStarts[field1];
+        if (length != fieldEnds[field2] - fieldStarts[field2]) return false;
+        for (int k = 0; k < length; k++) {
+            if (buffer[fieldStarts[field1] + k] != buffer[fieldStarts[field2] + k]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the field parsed as a (decimal) int
+     * @throws NumberFormatException if the field is not an int
+     */
+    public int getInt(int field) {
+        checkField(field);
+        int i = fieldStarts[field];
+        int end = fieldEnds[field];
+        boolean negative = i < end && buffer[i] == '-';
+        if (negative || (i < end && buffer[i] == '+')) i++;
+        if (i == end) throw new NumberFormatException("Not an integer: \"" + getString(field) + "\"");
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) throw new NumberFormatException("Not an integer: \"" + getString(field) + "\"");
+            value = 10 * value + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("Integer out of range: \"" + getString(field) + "\"");
+            }
+        }
+        if (negative) value = -value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Integer out of range: \"" + getString(field) + "\"");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parse the field as a double. Plain decimal numbers with up to 15 significant digits (such as the scores of the
+     * alignability map) are parsed directly from the bytes; as the mantissa and the power of ten are then exact
+     * doubles, the result is the same as that of {@link Double#parseDouble(String)}, which is used for all other
+     * numbers (e.g., with an exponent).
+     * @return the field parsed as a double
+     * @throws NumberFormatException if the field is not a number
+     */
+    public double getDouble(int field) {
+        checkField(field);
+        int i = fieldStarts[field];
+        int end = fieldEnds[field];
+        boolean negative = i < end && buffer[i] == '-';
+        if (negative || (i < end && buffer[i] == '+')) i++;
+        long mantissa = 0;
+        int digits = 0; // number of significant digits
+        int fractionDigits = 0;
+        boolean anyDigit = false;
+        boolean point = false;
+        for (; i < end; i++) {
+            byte b = buffer[i];
+            if (b >= '0' && b <= '9') {
+                anyDigit = true;
+                if (mantissa > 0 || b != '0') digits++;
+                mantissa = 10 * mantissa + (b - '0');
+                if (point) fractionDigits++;
+                if (digits > 15) return Double.parseDouble(getString(field));
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                return Double.parseDouble(getString(field)); // exponent, NaN, malformed, ...
+            }
+        }
+        if (!anyDigit || fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(getString(field));
+        }
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
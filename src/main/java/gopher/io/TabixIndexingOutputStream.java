@@ -0,0 +1,177 @@
+package gopher.io;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.tribble.SimpleFeature;
+import htsjdk.tribble.index.Index;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndexCreator;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An output stream for a tab-separated file with genomic coordinates (e.g., the digest file or a BED file) that
+ * compresses the file with BGZF ({@code bgzip}) and creates a tabix index ({@code <file>.tbi}) for it, so that the
+ * lines of a region can be found with a single seek (e.g., by IGV or {@code tabix}). The lines must be sorted by
+ * their start positions, and the lines of each chromosome must be contiguous.
+ * <p>
+ * The chromosome, start and end of each line are read from the columns given by the {@link TabixFormat}; header lines
+ * ({@link TabixFormat#numHeaderLinesToSkip}) and lines that start with the {@link TabixFormat#metaCharacter} are
+ * not indexed. The index is written when the stream is closed.</p>
+ */
+public class TabixIndexingOutputStream extends OutputStream {
+    private static final Logger logger = Logger.getLogger(TabixIndexingOutputStream.class.getName());
+    /** File extension of the BGZF compressed files. */
+    public static final String SUFFIX = ".gz";
+
+    private final File file;
+    private final TabixFormat format;
+    private final BlockCompressedOutputStream bgzf;
+    private final TabixIndexCreator indexCreator;
+    /** Bytes of the current line (up to and including the newline). */
+    private byte[] line = new byte[1024];
+    private int lineLength = 0;
+    /** Virtual file pointer (see {@link BlockCompressedOutputStream#getFilePointer()}) of the current line. */
+    private long lineStart = 0;
+    /** Number of complete lines written so far. */
+    private int lineCount = 0;
+    /** Chromosome of the previous indexed line (reused for the following lines of the same chromosome). */
+    private String contig = null;
+    private boolean closed = false;
+
+    /**
+     * @param file the BGZF file to write; the index is written to {@code <file>.tbi}
+     * @param format columns of the chromosome, start and end positions (e.g., {@link TabixFormat#BED})
+     */
+    public TabixIndexingOutputStream(File file, TabixFormat format) {
+        this.file = file;
+        this.format = format;
+        this.bgzf = new BlockCompressedOutputStream(file);
+        this.indexCreator = new TabixIndexCreator(format);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (lineLength == 0) {
+                lineStart = bgzf.getFilePointer();
+            }
+            int end = off;
+            while (end < off + len && b[end] != '\n') end++;
+            boolean endOfLine = end < off + len;
+            int n = endOfLine ? end - off + 1 : len;
+            bgzf.write(b, off, n);
+            if (lineLength + n > line.length) {
+                line = Arrays.copyOf(line, Math.max(2 * line.length, lineLength + n));
+            }
+            System.arraycopy(b, off, line, lineLength, n);
+            lineLength += n;
+            off += n;
+            len -= n;
+            if (endOfLine) {
+                endLine();
+            }
+        }
+    }
+
+    /** Add the current line to the index (unless it is a header or comment line). */
+    private void endLine() throws IOException {
+        int length = lineLength;
+        lineLength = 0;
+        lineCount++;
+        if (length > 0 && line[length - 1] == '\n') length--;
+        if (length > 0 && line[length - 1] == '\r') length--;
+        if (lineCount <= format.numHeaderLinesToSkip || length == 0 || line[0] == format.metaCharacter) {
+            return;
+        }
+        int[] fieldStarts = new int[Math.max(format.sequenceColumn,
+                Math.max(format.startPositionColumn, format.endPositionColumn)) + 1];
+        int[] fieldEnds = new int[fieldStarts.length];
+        int field = 1; // tabix columns are one-based
+        fieldStarts[1] = 0;
+        for (int i = 0; i < length && field < fieldStarts.length; i++) {
+            if (line[i] == '\t') {
+                fieldEnds[field] = i;
+                if (++field < fieldStarts.length) fieldStarts[field] = i + 1;
+            }
+        }
+        if (field < fieldStarts.length) {
+            fieldEnds[field] = length;
+        }
+        if (field < fieldStarts.length - 1) {
+            throw new IOException(String.format("Line %d of %s has only %d columns: %s", lineCount,
+                    file.getAbsolutePath(), field, new String(line, 0, length, StandardCharsets.UTF_8)));
+        }
+        int seq = format.sequenceColumn;
+        if (contig == null || !sameBytes(contig, fieldStarts[seq], fieldEnds[seq])) {
+            contig = new String(line, fieldStarts[seq], fieldEnds[seq] - fieldStarts[seq], StandardCharsets.UTF_8);
+        }
+        int start = parsePosition(fieldStarts[format.startPositionColumn], fieldEnds[format.startPositionColumn]);
+        if ((format.flags & TabixFormat.ZERO_BASED) != 0) {
+            start++; // the index creator expects one-based positions
+        }
+        int end = format.endPositionColumn > 0
+                ? parsePosition(fieldStarts[format.endPositionColumn], fieldEnds[format.endPositionColumn])
+                : start;
+        try {
+            indexCreator.addFeature(new SimpleFeature(contig, start, end), lineStart);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(String.format("Cannot index line %d of %s (the lines must be sorted by position): %s",
+                    lineCount, file.getAbsolutePath(), e.getMessage()));
+        }
+    }
+
+    /** @return true if the (ASCII) String s has the same bytes as {@code line[start,end)}. */
+    private boolean sameBytes(String s, int start, int end) {
+        if (s.length() != end - start) return false;
+        for (int i = start; i < end; i++) {
+            if (line[i] != s.charAt(i - start)) return false;
+        }
+        return true;
+    }
+
+    private int parsePosition(int start, int end) throws IOException {
+        long value = start < end ? 0 : -1;
+        for (int i = start; i < end && value >= 0 && value <= Integer.MAX_VALUE; i++) {
+            int digit = line[i] - '0';
+            value = digit >= 0 && digit <= 9 ? 10 * value + digit : -1;
+        }
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException(String.format("Invalid position \"%s\" in line %d of %s",
+                    new String(line, start, end - start, StandardCharsets.UTF_8), lineCount, file.getAbsolutePath()));
+        }
+        return (int) value;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        bgzf.flush();
+    }
+
+    /** Write the end of the BGZF file and the tabix index ({@code <file>.tbi}). */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        Index index;
+        try {
+            if (lineLength > 0) { // last line without a newline
+                endLine();
+            }
+            index = indexCreator.finalizeIndex(bgzf.getFilePointer());
+        } finally {
+            bgzf.close();
+        }
+        index.writeBasedOnFeatureFile(file);
+        logger.trace(String.format("Wrote %s with tabix index (%d lines)", file.getAbsolutePath(), lineCount));
+    }
+}
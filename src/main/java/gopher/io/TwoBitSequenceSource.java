@@ -0,0 +1,236 @@
+package gopher.io;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link SequenceSource} for a UCSC {@code .2bit} file (see
+ * <a href="https://genome.ucsc.edu/FAQ/FAQformat.html#format7">the UCSC description of the format</a>).
+ * The bases are packed four to a byte, and blocks of Ns and of soft-masked (repeat) bases are stored as lists of
+ * intervals, so that the file is about a quarter of the size of the FASTA file. The packed bases of each sequence
+ * are memory mapped the first time the sequence is accessed, and requested intervals are decoded directly from the
+ * mapped bytes, with Ns and lower case letters for the masked bases (as in the FASTA files from UCSC).
+ * <p>
+ * The mapped buffers are only read with absolute get methods, and so a source can be shared by several threads.</p>
+ */
+public class TwoBitSequenceSource implements SequenceSource {
+    private static final Logger logger = Logger.getLogger(TwoBitSequenceSource.class.getName());
+    /** Suffix of 2bit files. */
+    public static final String SUFFIX = ".2bit";
+    /** The first four bytes of a 2bit file (in the byte order of the file). */
+    static final int SIGNATURE = 0x1A412743;
+    /** Decoded bases for each packed byte: DECODE[4*b+k] is the k-th base of the byte b. */
+    private static final byte[] DECODE = new byte[256 * 4];
+    static {
+        byte[] bases = {'T', 'C', 'A', 'G'};
+        for (int b = 0; b < 256; b++) {
+            for (int k = 0; k < 4; k++) {
+                DECODE[4 * b + k] = bases[(b >>> (6 - 2 * k)) & 3];
+            }
+        }
+    }
+
+    private final File file;
+    private final FileChannel channel;
+    private final ByteOrder byteOrder;
+    /** Key: name of a sequence; value: offset of its record in the file (in the order of the file). */
+    private final Map<String, Long> offsets = new LinkedHashMap<>();
+    /** Key: name of a sequence; value: its record, which is read when the sequence is first accessed. */
+    private final Map<String, SequenceRecord> records = new ConcurrentHashMap<>();
+
+    /** The length, the N and mask blocks and the mapped packed bases of one sequence. */
+    private static final class SequenceRecord {
+        private final int length;
+        /** Zero-based start positions and lengths of the blocks of Ns (sorted by position). */
+        private final int[] nBlockStarts;
+        private final int[] nBlockSizes;
+        /** Zero-based start positions and lengths of the soft-masked blocks (sorted by position). */
+        private final int[] maskBlockStarts;
+        private final int[] maskBlockSizes;
+        /** The packed bases, four per byte (the first base in the most significant bits). */
+        private final MappedByteBuffer packedBases;
+
+        private SequenceRecord(int length, int[] nBlockStarts, int[] nBlockSizes, int[] maskBlockStarts,
+                               int[] maskBlockSizes, MappedByteBuffer packedBases) {
+            this.length = length;
+            this.nBlockStarts = nBlockStarts;
+            this.nBlockSizes = nBlockSizes;
+            this.maskBlockStarts = maskBlockStarts;
+            this.maskBlockSizes = maskBlockSizes;
+            this.packedBases = packedBases;
+        }
+    }
+
+    /**
+     * Read the header and the index of the sequences of a 2bit file.
+     * @param file a 2bit file, e.g., hg19.2bit
+     * @throws IOException if the file cannot be read or is not a 2bit file
+     */
+    public TwoBitSequenceSource(File file) throws IOException {
+        this.file = file;
+        this.channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            ByteBuffer header = read(0, 16, ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) == SIGNATURE) {
+                this.byteOrder = ByteOrder.LITTLE_ENDIAN;
+            } else if (Integer.reverseBytes(header.getInt(0)) == SIGNATURE) {
+                this.byteOrder = ByteOrder.BIG_ENDIAN;
+            } else {
+                throw new IOException(file.getAbsolutePath() + " is not a 2bit file");
+            }
+            header.order(byteOrder);
+            int version = header.getInt(4);
+            if (version != 0 && version != 1) {
+                throw new IOException(String.format("Unsupported version %d of 2bit file %s", version, file.getAbsolutePath()));
+            }
+            int sequenceCount = header.getInt(8);
+            readIndex(sequenceCount, version == 1 ? 8 : 4);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        logger.trace(String.format("Opened 2bit file %s with %d sequences", file.getAbsolutePath(), offsets.size()));
+    }
+
+    /** Read the names and offsets of the sequences, which follow the 16 byte header. */
+    private void readIndex(int sequenceCount, int offsetSize) throws IOException {
+        long pos = 16;
+        for (int i = 0; i < sequenceCount; i++) {
+            int nameSize = read(pos, 1, byteOrder).get(0) & 0xFF;
+            ByteBuffer entry = read(pos + 1, nameSize + offsetSize, byteOrder);
+            byte[] name = new byte[nameSize];
+            entry.get(name);
+            long offset = offsetSize == 8 ? entry.getLong() : entry.getInt() & 0xFFFFFFFFL;
+            offsets.put(new String(name, "US-ASCII"), offset);
+            pos += 1 + nameSize + offsetSize;
+        }
+    }
+
+    /** @return a buffer with {@code length} bytes of the file, starting at {@code pos}. */
+    private ByteBuffer read(long pos, int length, ByteOrder order) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(order);
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, pos + buffer.position());
+            if (n < 0) {
+                throw new IOException("Unexpected end of 2bit file " + file.getAbsolutePath());
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private int[] readInts(long pos, int count) throws IOException {
+        int[] values = new int[count];
+        read(pos, 4 * count, byteOrder).asIntBuffer().get(values);
+        return values;
+    }
+
+    /** @return the record of the sequence (which is read and mapped when it is first requested). */
+    private SequenceRecord getRecord(String name) {
+        Long offset = offsets.get(name);
+        if (offset == null) {
+            throw new IllegalArgumentException("Sequence " + name + " not found in " + file.getName());
+        }
+        return records.computeIfAbsent(name, n -> {
+            try {
+                return readRecord(offset);
+            } catch (IOException e) {
+                throw new IllegalStateException(String.format("Could not read %s from %s [%s]",
+                        name, file.getAbsolutePath(), e.getMessage()));
+            }
+        });
+    }
+
+    private SequenceRecord readRecord(long offset) throws IOException {
+        long pos = offset;
+        ByteBuffer counts = read(pos, 8, byteOrder);
+        int length = counts.getInt();
+        int nBlockCount = counts.getInt();
+        pos += 8;
+        int[] nBlockStarts = readInts(pos, nBlockCount);
+        int[] nBlockSizes = readInts(pos + 4L * nBlockCount, nBlockCount);
+        pos += 8L * nBlockCount;
+        int maskBlockCount = read(pos, 4, byteOrder).getInt();
+        pos += 4;
+        int[] maskBlockStarts = readInts(pos, maskBlockCount);
+        int[] maskBlockSizes = readInts(pos + 4L * maskBlockCount, maskBlockCount);
+        pos += 8L * maskBlockCount + 4; // the blocks are followed by a reserved field
+        long packedLength = (length + 3L) / 4;
+        MappedByteBuffer packedBases = channel.map(FileChannel.MapMode.READ_ONLY, pos, packedLength);
+        return new SequenceRecord(length, nBlockStarts, nBlockSizes, maskBlockStarts, maskBlockSizes, packedBases);
+    }
+
+    @Override
+    public List<String> getSequenceNames() {
+        return new ArrayList<>(offsets.keySet());
+    }
+
+    @Override
+    public int getSequenceLength(String name) {
+        return getRecord(name).length;
+    }
+
+    @Override
+    public byte[] getSubsequence(String name, int start, int end) {
+        SequenceRecord record = getRecord(name);
+        if (start < 1 || end > record.length || end < start - 1) {
+            throw new IllegalArgumentException(String.format("Invalid interval %s:%d-%d", name, start, end));
+        }
+        int from = start - 1; // zero-based, inclusive
+        int to = end; // zero-based, exclusive
+        byte[] bases = new byte[to - from];
+        MappedByteBuffer packed = record.packedBases;
+        for (int i = from; i < to; i++) {
+            bases[i - from] = DECODE[4 * (packed.get(i >>> 2) & 0xFF) + (i & 3)];
+        }
+        // blocks of Ns
+        for (int b = firstOverlappingBlock(record.nBlockStarts, record.nBlockSizes, from);
+             b < record.nBlockStarts.length && record.nBlockStarts[b] < to; b++) {
+            int s = Math.max(from, record.nBlockStarts[b]);
+            int e = Math.min(to, record.nBlockStarts[b] + record.nBlockSizes[b]);
+            Arrays.fill(bases, s - from, e - from, (byte) 'N');
+        }
+        // soft-masked blocks are shown in lower case
+        for (int b = firstOverlappingBlock(record.maskBlockStarts, record.maskBlockSizes, from);
+             b < record.maskBlockStarts.length && record.maskBlockStarts[b] < to; b++) {
+            int s = Math.max(from, record.maskBlockStarts[b]);
+            int e = Math.min(to, record.maskBlockStarts[b] + record.maskBlockSizes[b]);
+            for (int i = s; i < e; i++) {
+                bases[i - from] |= 0x20;
+            }
+        }
+        return bases;
+    }
+
+    /** @return index of the first block that ends after the zero-based position {@code pos}. */
+    private static int firstOverlappingBlock(int[] starts, int[] sizes, int pos) {
+        int i = Arrays.binarySearch(starts, pos);
+        if (i < 0) {
+            i = -i - 2; // the last block that starts before pos
+        }
+        if (i < 0) {
+            return 0;
+        }
+        return starts[i] + sizes[i] > pos ? i : i + 1;
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the mapped buffers remain valid until they are garbage collected
+        channel.close();
+    }
+}
@@ -36,5 +36,16 @@ public class Default {
 
     /** Default size of the kmer used to determine alignability. */
     public final static int KMER_SIZE=50;
+    /** Default number of threads used to create viewpoints (one per available processor). */
+    public final static int THREAD_COUNT=Runtime.getRuntime().availableProcessors();
+    /** Fraction of the maximum heap size that may be used by the chromosomes that are held in memory at the same time
+     * while viewpoints are created. */
+    public final static double CHROMOSOME_MEMORY_FRACTION=0.25;
+    /** Designs with at least this number of genes keep the baits in a compact store (see BaitStore) to save memory. */
+    public final static int COMPACT_BAIT_STORE_MIN_GENES=5000;
+    /** Whether the genome sequences are read from a 2bit file next to the genome FASTA file (if there is one). */
+    public final static boolean USE_TWO_BIT_GENOME=false;
+    /** Whether the digest and BED files are exported compressed with bgzip and indexed with tabix. */
+    public final static boolean COMPRESS_OUTPUT_FILES=false;
 
 }
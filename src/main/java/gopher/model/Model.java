@@ -2,7 +2,9 @@ package gopher.model;
 
 
 import com.google.common.collect.ImmutableList;
+import gopher.exception.GopherException;
 import gopher.gui.popupdialog.PopupFactory;
+import gopher.io.ContigIndex;
 import gopher.io.RestrictionEnzymeParser;
 import gopher.model.genome.*;
 import gopher.model.viewpoint.ViewPoint;
@@ -257,6 +259,22 @@ public class Model implements Serializable {
     public int getMaxBaitCount(){return maxBaitCount;}
     public void setMaxBaitCount(int bc) { this.maxBaitCount=bc; clean=false;}
 
+    /** Number of threads used to create viewpoints (not stored with the project, it depends on the computer). */
+    private transient int threadCount=Default.THREAD_COUNT;
+    public int getThreadCount() { return threadCount>0 ? threadCount : Default.THREAD_COUNT; }
+    public void setThreadCount(int n) { this.threadCount=n; }
+
+    /** If true, the genome sequences are read from the 2bit file next to the genome FASTA file, if it matches the
+     * FASTA index (see {@link gopher.io.SequenceSource#openGenome}). */
+    private boolean useTwoBitGenome=Default.USE_TWO_BIT_GENOME;
+    public boolean getUseTwoBitGenome() { return useTwoBitGenome; }
+    public void setUseTwoBitGenome(boolean b) { this.useTwoBitGenome=b; clean=false; }
+
+    /** If true, the digest and BED files are exported compressed (BGZF) and with a tabix index. */
+    private boolean compressOutputFiles=Default.COMPRESS_OUTPUT_FILES;
+    public boolean getCompressOutputFiles() { return compressOutputFiles; }
+    public void setCompressOutputFiles(boolean b) { this.compressOutputFiles=b; clean=false; }
+
     /** Estimated average length of restriction fragments */
     private Double estAvgRestFragLen = null;
     public void setEstAvgRestFragLen(Double estAvgRestFragLen) {
@@ -346,8 +364,21 @@ public class Model implements Serializable {
     //private Map<String, String> indexedFaFiles=null;
     /** Path to the genome fai file, e.g., hg19.fa.fai. */
     private String indexedGenomeFastaIndexFile=null;
-    public void setIndexedGenomeFastaIndexFile(String path) { indexedGenomeFastaIndexFile=path; clean=false;}
+    public void setIndexedGenomeFastaIndexFile(String path) { indexedGenomeFastaIndexFile=path; contigIndex=null; clean=false;}
     public String getIndexedGenomeFastaIndexFile() { return indexedGenomeFastaIndexFile; }
+    /** Names and lengths of the contigs of the genome (read from the fai file when needed, not serialized). */
+    private transient ContigIndex contigIndex=null;
+    /**
+     * @return names and lengths of the contigs of the genome
+     * @throws GopherException if the FASTA index (fai) file cannot be read
+     */
+    public ContigIndex getContigIndex() throws GopherException {
+        if (contigIndex==null) {
+            contigIndex=ContigIndex.fromFaiFile(indexedGenomeFastaIndexFile,genome);
+        }
+        return contigIndex;
+    }
+    public void setContigIndex(ContigIndex index) { this.contigIndex=index; }
 
     public List<GopherGene> getGopherGeneList() { return this.geneList; }
 
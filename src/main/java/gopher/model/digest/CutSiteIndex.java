@@ -0,0 +1,282 @@
+package gopher.model.digest;
+
+import gopher.exception.GopherException;
+import gopher.io.SequenceSource;
+import gopher.model.RestrictionEnzyme;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * A genome-wide index of the restriction sites of a set of enzymes. For each chromosome, we store the sorted
+ * (one-based) start positions of all sites together with the id of the enzyme that recognizes the site, so that the
+ * cutting positions in any interval can be found by binary search instead of scanning the sequence.
+ * <p>
+ * The index is built once for each combination of genome and enzymes and stored next to the genome FASTA file,
+ * e.g., {@code hg19.fa.AAGCTT1_GATC0.cutsites} (see {@link #loadOrBuild(String, List, boolean)}). The file records the size
+ * and modification time of the FASTA file and is rebuilt if the FASTA file changes.</p>
+ * <p>
+ * The sites are found with a {@link RestrictionSiteMatcher}, i.e., sites on both strands and degenerate (IUPAC)
+ * sites are supported.</p>
+ */
+public class CutSiteIndex {
+    private static final Logger logger = Logger.getLogger(CutSiteIndex.class.getName());
+    /** Magic number at the start of an index file ("GCSI"). */
+    private static final int MAGIC = 0x47435349;
+    /** Version of the file format. Index files with a different version are rebuilt. */
+    private static final int VERSION = 2;
+    /** Suffix of the index files. */
+    private static final String SUFFIX = ".cutsites";
+    /** The enzymes of this index, sorted by site. The position of an enzyme in this list is its id in the index. */
+    private final List<RestrictionEnzyme> enzymes;
+    /** Key: name of a chromosome; value: the sites on this chromosome. */
+    private final Map<String, ChromosomeSites> chromosomeSitesMap;
+
+    /** The sites on one chromosome. */
+    private static final class ChromosomeSites {
+        /** One-based start positions of the sites (sorted). */
+        final int[] starts;
+        /** One-based cutting positions (first nucleotide after the cut) of the sites. */
+        final int[] cuts;
+        /** Id of the enzyme (index in {@link #enzymes}) for each site. */
+        final byte[] enzymeIds;
+
+        ChromosomeSites(int[] starts, int[] cuts, byte[] enzymeIds) {
+            this.starts = starts;
+            this.cuts = cuts;
+            this.enzymeIds = enzymeIds;
+        }
+    }
+
+    private CutSiteIndex(List<RestrictionEnzyme> enzymes, Map<String, ChromosomeSites> chromosomeSitesMap) {
+        this.enzymes = enzymes;
+        this.chromosomeSitesMap = chromosomeSitesMap;
+    }
+
+    /**
+     * Load the index for the given genome and enzymes from the file next to the genome FASTA file, or build it (and
+     * try to store it) if there is no such file or if it is outdated.
+     * @param fastaPath path to the indexed genome FASTA file
+     * @param chosenEnzymes restriction enzymes chosen by the user
+     * @param useTwoBitGenome true if the index may be built from the 2bit file next to the FASTA file (see
+     *                        {@link SequenceSource#openGenome})
+     * @return the cut site index
+     * @throws GopherException if the genome FASTA file cannot be read
+     */
+    public static CutSiteIndex loadOrBuild(String fastaPath, List<RestrictionEnzyme> chosenEnzymes,
+                                           boolean useTwoBitGenome) throws GopherException {
+        List<RestrictionEnzyme> sortedEnzymes = sortEnzymes(chosenEnzymes);
+        File fasta = new File(fastaPath);
+        File indexFile = getIndexFile(fastaPath, sortedEnzymes);
+        if (indexFile.exists()) {
+            try {
+                CutSiteIndex index = read(indexFile, fasta, sortedEnzymes);
+                if (index != null) {
+                    logger.trace("Loaded cut site index from " + indexFile.getAbsolutePath());
+                    return index;
+                }
+                logger.trace("Cut site index " + indexFile.getAbsolutePath() + " is outdated and will be rebuilt");
+            } catch (IOException e) {
+                logger.warn("Could not read cut site index " + indexFile.getAbsolutePath() + ": " + e.getMessage());
+            }
+        }
+        CutSiteIndex index;
+        try (SequenceSource source = SequenceSource.openGenome(fastaPath, useTwoBitGenome)) {
+            index = build(source, sortedEnzymes);
+        } catch (IOException e) {
+            throw new GopherException(String.format("Could not read genome fasta file [%s]", e.getMessage()));
+        }
+        try {
+            index.write(indexFile, fasta);
+            logger.trace("Wrote cut site index to " + indexFile.getAbsolutePath());
+        } catch (IOException e) {
+            // the index can still be used, it just has to be rebuilt the next time
+            logger.warn("Could not write cut site index " + indexFile.getAbsolutePath() + ": " + e.getMessage());
+        }
+        return index;
+    }
+
+    /** @return the enzymes sorted by site (this determines the enzyme ids in the index). */
+    private static List<RestrictionEnzyme> sortEnzymes(List<RestrictionEnzyme> chosenEnzymes) {
+        List<RestrictionEnzyme> sorted = new ArrayList<>(chosenEnzymes);
+        sorted.sort(Comparator.comparing(RestrictionEnzyme::getSite));
+        if (sorted.size() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot index the sites of more than " + Byte.MAX_VALUE + " enzymes");
+        }
+        for (RestrictionEnzyme re : sorted) {
+            if (re.getPlainSite().length() > 0xFF) {
+                throw new IllegalArgumentException("Cannot index the site of " + re.getLabel());
+            }
+        }
+        return sorted;
+    }
+
+    /** @return the index file for the genome and the enzymes, e.g., {@code hg19.fa.AAGCTT1_GATC0.cutsites}. */
+    static File getIndexFile(String fastaPath, List<RestrictionEnzyme> sortedEnzymes) {
+        String key = sortedEnzymes.stream().
+                map(re -> re.getPlainSite() + re.getOffset()).
+                collect(Collectors.joining("_"));
+        return new File(fastaPath + "." + key + SUFFIX);
+    }
+
+    /**
+     * Find the sites of all enzymes on all sequences of the genome.
+     * @param source the sequences of the genome
+     * @param sortedEnzymes enzymes sorted by site
+     * @return new index
+     */
+    static CutSiteIndex build(SequenceSource source, List<RestrictionEnzyme> sortedEnzymes) {
+        Map<String, ChromosomeSites> sitesMap = new LinkedHashMap<>();
+        RestrictionSiteMatcher matcher = new RestrictionSiteMatcher(sortedEnzymes);
+        for (String name : source.getSequenceNames()) {
+            logger.trace("Indexing restriction sites on " + name);
+            sitesMap.put(name, findSites(source.getSequence(name), matcher));
+        }
+        return new CutSiteIndex(sortedEnzymes, sitesMap);
+    }
+
+    /** @return the sites of all enzymes in the bases of one chromosome. */
+    private static ChromosomeSites findSites(byte[] bases, RestrictionSiteMatcher matcher) {
+        // each site is encoded as (start << 16 | (cut - start) << 8 | enzyme id) so that sorting orders the sites by
+        // position (the cut lies within the site, whose length is less than 256)
+        long[][] encoded = {new long[1024]};
+        int[] n = {0};
+        matcher.scan(bases, 0, bases.length, 1, (id, start, cut) -> {
+            if (n[0] == encoded[0].length) encoded[0] = Arrays.copyOf(encoded[0], 2 * n[0]);
+            encoded[0][n[0]++] = ((long) start << 16) | ((cut - start) << 8) | id;
+        });
+        long[] sorted = encoded[0];
+        Arrays.sort(sorted, 0, n[0]);
+        int[] starts = new int[n[0]];
+        int[] cuts = new int[n[0]];
+        byte[] enzymeIds = new byte[n[0]];
+        for (int k = 0; k < n[0]; k++) {
+            starts[k] = (int) (sorted[k] >>> 16);
+            cuts[k] = starts[k] + (int) ((sorted[k] >>> 8) & 0xFF);
+            enzymeIds[k] = (byte) (sorted[k] & 0xFF);
+        }
+        return new ChromosomeSites(starts, cuts, enzymeIds);
+    }
+
+    /**
+     * @param refID name of the chromosome
+     * @param enzyme one of the enzymes of this index
+     * @param from one-based start of the interval
+     * @param to one-based end of the interval (inclusive)
+     * @return the cutting positions (one-based position of the first nucleotide after the cut) of all sites of
+     * the enzyme that lie completely within {@code [from,to]}, in ascending order
+     */
+    public List<Integer> getCutPositions(String refID, RestrictionEnzyme enzyme, int from, int to) {
+        List<Integer> cuttingPositionList = new ArrayList<>();
+        ChromosomeSites sites = chromosomeSitesMap.get(refID);
+        if (sites == null) {
+            return cuttingPositionList;
+        }
+        int id = getEnzymeId(enzyme);
+        int siteLength = enzyme.getPlainSite().length();
+        int lastStart = to - siteLength + 1;
+        for (int k = lowerBound(sites.starts, from); k < sites.starts.length && sites.starts[k] <= lastStart; k++) {
+            if (sites.enzymeIds[k] == id) {
+                cuttingPositionList.add(sites.cuts[k]);
+            }
+        }
+        return cuttingPositionList;
+    }
+
+    /** @return the id of the enzyme in this index. */
+    private int getEnzymeId(RestrictionEnzyme enzyme) {
+        for (int id = 0; id < enzymes.size(); id++) {
+            if (enzymes.get(id).getSite().equals(enzyme.getSite())) {
+                return id;
+            }
+        }
+        throw new IllegalArgumentException("Enzyme " + enzyme.getLabel() + " is not part of the cut site index");
+    }
+
+    /** @return true if all of the enzymes are part of this index. */
+    public boolean containsAll(List<RestrictionEnzyme> chosenEnzymes) {
+        Set<String> sites = enzymes.stream().map(RestrictionEnzyme::getSite).collect(Collectors.toSet());
+        return chosenEnzymes.stream().map(RestrictionEnzyme::getSite).allMatch(sites::contains);
+    }
+
+    /** @return index of the first element of the sorted array that is not smaller than key. */
+    private static int lowerBound(int[] sorted, int key) {
+        int lo = 0, hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Write the index to a file. The data are first written to a temporary file that is then renamed, so that
+     * an interrupted write does not leave an incomplete index.
+     */
+    private void write(File indexFile, File fasta) throws IOException {
+        File tmp = new File(indexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fasta.length());
+            out.writeLong(fasta.lastModified());
+            out.writeInt(enzymes.size());
+            for (RestrictionEnzyme re : enzymes) {
+                out.writeUTF(re.getSite());
+            }
+            out.writeInt(chromosomeSitesMap.size());
+            for (Map.Entry<String, ChromosomeSites> entry : chromosomeSitesMap.entrySet()) {
+                ChromosomeSites sites = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(sites.starts.length);
+                for (int start : sites.starts) {
+                    out.writeInt(start);
+                }
+                for (int cut : sites.cuts) {
+                    out.writeInt(cut);
+                }
+                out.write(sites.enzymeIds);
+            }
+        }
+        Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return the index stored in the file, or null if the file does not belong to the current version of the
+     * FASTA file and the enzymes.
+     */
+    private static CutSiteIndex read(File indexFile, File fasta, List<RestrictionEnzyme> sortedEnzymes) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            if (in.readLong() != fasta.length() || in.readLong() != fasta.lastModified()) return null;
+            int n_enzymes = in.readInt();
+            if (n_enzymes != sortedEnzymes.size()) return null;
+            for (RestrictionEnzyme re : sortedEnzymes) {
+                if (!in.readUTF().equals(re.getSite())) return null;
+            }
+            int n_chromosomes = in.readInt();
+            Map<String, ChromosomeSites> sitesMap = new LinkedHashMap<>();
+            for (int c = 0; c < n_chromosomes; c++) {
+                String name = in.readUTF();
+                int n = in.readInt();
+                int[] starts = new int[n];
+                for (int k = 0; k < n; k++) {
+                    starts[k] = in.readInt();
+                }
+                int[] cuts = new int[n];
+                for (int k = 0; k < n; k++) {
+                    cuts[k] = in.readInt();
+                }
+                byte[] enzymeIds = new byte[n];
+                in.readFully(enzymeIds);
+                sitesMap.put(name, new ChromosomeSites(starts, cuts, enzymeIds));
+            }
+            return new CutSiteIndex(sortedEnzymes, sitesMap);
+        }
+    }
+}
@@ -1,29 +1,26 @@
 package gopher.model.digest;
 
 
-import com.google.common.collect.ImmutableList;
 import gopher.exception.GopherException;
 import gopher.gui.popupdialog.PopupFactory;
+import gopher.io.SequenceSource;
+import gopher.io.TabixIndexingOutputStream;
 import gopher.model.Model;
 import gopher.model.RestrictionEnzyme;
 import gopher.model.viewpoint.Segment;
 import gopher.model.viewpoint.ViewPoint;
-import htsjdk.samtools.reference.IndexedFastaSequenceFile;
-import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.tribble.index.tabix.TabixFormat;
 import javafx.concurrent.Task;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -72,15 +69,22 @@ public class DigestCreationTask extends Task<Void> {
     /** Path to the combined FASTA file with all (or all canonical) chromosomes. */
     private final String genomeFastaFilePath;
     /** File handle for the output of the restriction fragments. */
-    private BufferedWriter out = null;
+    private DigestRecordWriter out = null;
     /** size of margin of fragments used for calculating GC and fivePrimeRepeatContent content. */
     private final int marginSize;
-    /** Name of output file. */
+    /** Name of output file (ending with .gz if the file is compressed and indexed, see {@link Model#getCompressOutputFiles()}). */
     private final String outfilename;
     /** Reference to current model. */
     private final Model model;
     /**  We will use this to show progress in digest creation. */
     private int totalDigestCounter=0;
+    /**
+     * Columns of the digest file for the tabix index: chromosome, start and end (one-based, inclusive), after the
+     * header line.
+     */
+    private static final TabixFormat DIGEST_TABIX_FORMAT = new TabixFormat(TabixFormat.GENERIC_FLAGS, 1, 2, 3, '#', 1);
+    /** Number of bases of a chromosome that are read and searched for restriction sites at a time. */
+    private static final int DIGEST_CHUNK_SIZE = 1 << 20;
 
     /** Fields of the header of the output file. */
     private final String[] headerFields = {
@@ -101,8 +105,10 @@ public class DigestCreationTask extends Task<Void> {
     };
     /** Header of the output file. */
     private final String HEADER= Arrays.stream(headerFields).collect(Collectors.joining("\t"));
-    /** Binary tree of active {@link Segment}.*/
-    private BinaryTree btree;
+    /** Matcher for the sites of the chosen enzymes (in the order of {@link #restrictionEnzymeList}). */
+    private RestrictionSiteMatcher matcher;
+    /** Start positions of the active {@link Segment}s on each chromosome.*/
+    private SelectedSegmentIndex selectedSegments;
 
 
     /**
@@ -121,6 +127,9 @@ public class DigestCreationTask extends Task<Void> {
         outfile += "_";
         outfile += model.getGenomeBuild();
         outfile += "_DigestedGenome.txt";
+        if (model.getCompressOutputFiles()) {
+            outfile += TabixIndexingOutputStream.SUFFIX;
+        }
         outfilename=outfile;
         logger.trace(outfilename);
 
@@ -131,27 +140,24 @@ public class DigestCreationTask extends Task<Void> {
 
 
     private void extractChosenSegments(Model model) {
-        btree = new BinaryTree();
+        List<Segment> segments = new ArrayList<>();
         //A list of Viewpoints that contain at least one selected digest.
         List<ViewPoint> vplist = model.getActiveViewPointList();
         for (ViewPoint vp : vplist) {
-            String chrom = vp.getReferenceID();
-            List<Segment> seglist = vp.getActiveSegments();
             // 125 active digests for human example genes
             // coordinates of the fragments correspond to coordinates in digest file
             // segments are one based, digests in file are one based
-            for (Segment seg : seglist) {
-                btree.add(seg);
-            }
+            segments.addAll(vp.getActiveSegments());
         }
+        selectedSegments = new SelectedSegmentIndex(segments);
     }
 
     public Void call() {
         updateTitle("Creating Digest file");
-        updateMessage("Creating binary tree of selected fragments...");
+        updateMessage("Creating index of selected fragments...");
         extractChosenSegments(model);
-        logger.trace(String.format("We got a total of %d chosen segments in the binary tree",
-                this.btree.getN_nodes()));
+        logger.trace(String.format("We got a total of %d chosen segments in the index",
+                this.selectedSegments.getSegmentCount()));
 
         try {
             digestGenome();
@@ -182,9 +188,12 @@ public class DigestCreationTask extends Task<Void> {
                 enzyme2number.put(re,n);
             }
         }
+        this.matcher = new RestrictionSiteMatcher(this.restrictionEnzymeList);
         try {
-            out = new BufferedWriter(new FileWriter(outfilename));
-            out.write(HEADER + "\n");
+            out = model.getCompressOutputFiles()
+                    ? new DigestRecordWriter(new TabixIndexingOutputStream(new File(outfilename), DIGEST_TABIX_FORMAT))
+                    : new DigestRecordWriter(new File(outfilename));
+            out.writeLine(HEADER);
             cutChromosomes(this.genomeFastaFilePath);
             out.close();
         } catch (Exception e) {
@@ -196,84 +205,273 @@ public class DigestCreationTask extends Task<Void> {
 
 
 
-    private int counter=1;
-    /** This will cut all of the chromosomes in the multi-FASTA chromosome file. */
+    /** Number of digests written so far (shared by the worker threads, only used for the progress messages). */
+    private final AtomicInteger counter=new AtomicInteger(1);
+    /**
+     * This will cut all of the chromosomes in the multi-FASTA chromosome file. If more than one thread is
+     * available ({@link Model#getThreadCount()}), the chromosomes are cut concurrently.
+     */
     private void cutChromosomes(String chromosomeFilePath) throws Exception {
         logger.trace(String.format("cutting chromosomes %s",chromosomeFilePath ));
-        IndexedFastaSequenceFile fastaReader;
+        SequenceSource source;
         try {
-             fastaReader = new IndexedFastaSequenceFile(new File(chromosomeFilePath));
+             source = SequenceSource.openGenome(chromosomeFilePath, model.getUseTwoBitGenome());
         } catch (Exception e) {
             throw  new GopherException(String.format("Could not find FAI file for %s [%s]",chromosomeFilePath,e.toString()));
         }
 
-        ReferenceSequence refseq;
-        while ((refseq=fastaReader.nextSequence())!=null) {
-            if (isCancelled()) // true if user has cancelled the task
+        try {
+            List<String> seqnames = source.getSequenceNames();
+            int threadCount = model.getThreadCount();
+            if (threadCount > 1 && seqnames.size() > 1) {
+                cutChromosomesInParallel(source, seqnames, threadCount);
                 return;
-            String seqname = refseq.getName();
-            // note fastaReader refers to one-based numbering scheme.
-            String sequence = fastaReader.getSequence(seqname).getBaseString();
-            //ReferenceSequence refseq = fastaReader.nextSequence();
-            logger.trace(String.format("Cutting %s (length %d)",seqname,sequence.length() ));
-            updateMessage(String.format("Digesting %s",seqname));
-            cutOneChromosome(seqname, sequence);
+            }
+            for (String seqname : seqnames) {
+                if (isCancelled()) // true if user has cancelled the task
+                    return;
+                logger.trace(String.format("Cutting %s (length %d)",seqname,source.getSequenceLength(seqname) ));
+                updateMessage(String.format("Digesting %s",seqname));
+                cutOneChromosome(seqname, source, out);
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * Cut the chromosomes concurrently on a pool of worker threads. The digests of each chromosome are written to a
+     * temporary segment file in the directory of the output file, and the segments are appended to the output file
+     * in the order of the chromosomes in the genome file, so that the output is identical to that of the sequential
+     * version. Segments are appended as soon as they (and all of their predecessors) are complete, and at most as
+     * many chromosomes as there are threads are being cut at the same time.
+     * @param source the genome sequences
+     * @param seqnames names of the chromosomes in the order of the genome file
+     * @param threadCount number of worker threads
+     */
+    private void cutChromosomesInParallel(SequenceSource source, List<String> seqnames, int threadCount) throws Exception {
+        logger.trace(String.format("Cutting %d chromosomes with %d threads", seqnames.size(), threadCount));
+        File segmentDirectory = new File(outfilename).getAbsoluteFile().getParentFile();
+        ConcurrentLinkedQueue<File> segments = new ConcurrentLinkedQueue<>();
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        List<ForkJoinTask<File>> tasks = new ArrayList<>();
+        try {
+            for (String seqname : seqnames) {
+                tasks.add(pool.submit(() -> {
+                    if (isCancelled()) // true if user has cancelled the task
+                        return null;
+                    logger.trace(String.format("Cutting %s (length %d)",seqname,source.getSequenceLength(seqname) ));
+                    updateMessage(String.format("Digesting %s",seqname));
+                    File segment = File.createTempFile("digest", ".tmp", segmentDirectory);
+                    segments.add(segment);
+                    try (DigestRecordWriter segmentWriter = new DigestRecordWriter(segment)) {
+                        cutOneChromosome(seqname, source, segmentWriter);
+                    }
+                    return segment;
+                }));
+            }
+            for (ForkJoinTask<File> task : tasks) {
+                File segment = task.get(); // rethrows the exceptions of the worker threads
+                if (segment == null || isCancelled())
+                    return;
+                out.appendFile(segment);
+                if (segment.delete()) {
+                    segments.remove(segment);
+                }
+            }
+        } finally {
+            // if we stop early (cancelled or failed), the chromosomes that have not been started are cancelled and the
+            // running ones are awaited, so that no segment file is created after the segment files have been deleted
+            for (ForkJoinTask<File> task : tasks) {
+                task.cancel(false);
+            }
+            pool.shutdown();
+            pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            pool.shutdownNow();
+            for (File segment : segments) {
+                if (!segment.delete()) {
+                    logger.warn("Could not delete temporary digest file " + segment.getAbsolutePath());
+                }
+            }
         }
+    }
 
+    /**
+     * @return the bases in {@code [start,end]} (one-based, inclusive); sources that are not thread safe are read by
+     * one thread at a time.
+     */
+    private static byte[] getSubsequence(SequenceSource source, String seqname, int start, int end) {
+        if (source.isThreadSafe()) {
+            return source.getSubsequence(seqname, start, end);
+        }
+        synchronized (source) {
+            return source.getSubsequence(seqname, start, end);
+        }
     }
 
     /**
-     *
+     * Cut one chromosome. The chromosome is read in chunks of {@link #DIGEST_CHUNK_SIZE} bases, which are passed to
+     * a {@link RestrictionSiteMatcher.Scanner} that carries the state of the search over from one chunk to the next.
+     * Cuts are kept until no site in a later chunk can precede them and the 5' margin of the fragment that starts at
+     * the cut has been read, and are then written in the order of their positions (the same order as if the whole
+     * chromosome had been searched at once).
      * @param scaffoldName name of chromosome or alt scaffold
-     * @param sequence DNA sequence of the chromosome
-     * @throws IOException can be thrown by the BufferedWriter.
+     * @param source the genome sequences
+     * @param out writer for the digests of the chromosome
+     * @throws IOException if the digests cannot be written
      */
-    private void cutOneChromosome(String scaffoldName,String sequence) throws IOException {
-        ImmutableList.Builder<Digest> builder = new ImmutableList.Builder<>();
-        for (Map.Entry<RestrictionEnzyme,Integer> ent : enzyme2number.entrySet()) {
-            int enzymeNumber = ent.getValue();
-            RestrictionEnzyme enzyme = ent.getKey();
-            String cutpat = enzyme.getPlainSite();
-            int offset = enzyme.getOffset();
-            Pattern pattern = Pattern.compile(cutpat,Pattern.CASE_INSENSITIVE);
-            Matcher matcher = pattern.matcher(sequence);
-            /* one-based position of first nucleotide in the entire subsequence returned by fasta reader */
-            while (matcher.find()) {
-                /* Note that we are trying to match the 1-based positions in SegmentFactory.
-                In SegmentFactory, we use the HTSJDK IndexedFastaSequenceFile/Reader, which
-                gives back one-based positions. Here, we are using a Java string, and so we
-                need to add the "1" ourselves.
-                 */
-                int pos = matcher.start() + offset + 1;
-                builder.add(new Digest(enzymeNumber,pos));
+    private void cutOneChromosome(String scaffoldName, SequenceSource source, DigestRecordWriter out) throws IOException {
+        int length = source.getSequenceLength(scaffoldName);
+        RestrictionSiteMatcher.Scanner scanner = matcher.newScanner();
+        int maxSiteLength = matcher.getMaxSiteLength();
+        int margin = Math.max(0, marginSize);
+        // the cuts that are still pending after a chunk (and the margins of their fragments) start at most this many
+        // bases before the end of the chunk
+        int carryOver = maxSiteLength + 2 * margin + 1;
+        FragmentWriter fragments = new FragmentWriter(scaffoldName, length, carryOver, out);
+        // a chunk must be longer than the bases that are carried over from the previous chunk
+        int chunkSize = Math.max(DIGEST_CHUNK_SIZE, 2 * carryOver);
+        List<Digest> pending = new ArrayList<>();
+        /* Note that we are trying to match the 1-based positions in SegmentFactory.
+        In SegmentFactory, we use the HTSJDK IndexedFastaSequenceFile/Reader, which
+        gives back one-based positions. Here, we are using the raw bytes, and so we
+        pass the one-based position of the first base of each chunk to the matcher ourselves.
+         */
+        for (int chunkStart = 1; chunkStart <= length; chunkStart += chunkSize) {
+            int chunkEnd = (int) Math.min(length, (long) chunkStart + chunkSize - 1);
+            byte[] bases = getSubsequence(source, scaffoldName, chunkStart, chunkEnd);
+            fragments.addChunk(bases, chunkStart);
+            scanner.scan(bases, 0, bases.length, chunkStart, (enzymeIndex, start, cutPosition) ->
+                    pending.add(new Digest(enzyme2number.get(restrictionEnzymeList.get(enzymeIndex)), cutPosition)));
+            pending.sort(null); // stable, as the cuts at the same position must stay in the order of the sites
+            // sites that end in the following chunks start at chunkEnd-maxSiteLength+2 or later, and the 5' margin
+            // of the fragment that starts at a cut (plus one base for the last fragment) must be in this chunk
+            int threshold = chunkEnd < length ? Math.min(chunkEnd - maxSiteLength + 2, chunkEnd - margin) : Integer.MAX_VALUE;
+            int k = 0;
+            while (k < pending.size() && pending.get(k).position < threshold) {
+                fragments.add(pending.get(k++));
             }
+            pending.subList(0, k).clear();
+        }
+        fragments.finish();
+    }
+
+    /**
+     * Writes the fragments of one chromosome, given the chunks of the chromosome and the cuts in the order of their
+     * positions. The G/C and repeat content of the margins of the fragments is counted in the current chunk, together
+     * with the last bases of the previous chunk, so that neither the chromosome has to be held in memory nor the
+     * margins have to be read from the genome once more. The 5' margin of a fragment is counted as soon as the
+     * fragment starts, because the fragment may extend over many chunks.
+     */
+    private class FragmentWriter {
+        private final String scaffoldName;
+        private final int length;
+        /** Number of bases of the previous chunk that are kept with the current chunk. */
+        private final int carryOver;
+        private final DigestRecordWriter out;
+        /** The selected segments on this chromosome. */
+        private final SelectedSegmentIndex.Chromosome selectedSegmentsOnChromosome;
+        private String previousCutEnzyme="None";
+        private int previousCutPosition = 1; // start of chromosome
+        /** Number of fragments written so far. */
+        private int n=0;
+        /** The last {@link #carryOver} bases of the previous chunk, followed by the current chunk. */
+        private byte[] window = new byte[0];
+        /** One-based position of the first base of {@link #window}. */
+        private int windowStart = 1;
+        /** Number of G/C and repeat bases in {@code [previousCutPosition, previousCutPosition+marginSize-1]}. */
+        private int[] fivePrimeCounts;
+        /** The same for the margin shifted by one base (the last fragment starts after the last cut, see {@link #finish()}). */
+        private int[] lastFivePrimeCounts;
+
+        FragmentWriter(String scaffoldName, int length, int carryOver, DigestRecordWriter out) {
+            this.scaffoldName = scaffoldName;
+            this.length = length;
+            this.carryOver = carryOver;
+            this.out = out;
+            this.selectedSegmentsOnChromosome = selectedSegments.getChromosome(scaffoldName);
+        }
+
+        /**
+         * Add the next chunk of the chromosome. The cuts that are added afterwards must be at least {@link #marginSize}
+         * bases after the first base of the window, and at least {@link #marginSize} bases before its last base
+         * (except for the last chunk).
+         */
+        void addChunk(byte[] bases, int chunkStart) {
+            int keep = Math.min(carryOver, window.length);
+            byte[] next = new byte[keep + bases.length];
+            System.arraycopy(window, window.length - keep, next, 0, keep);
+            System.arraycopy(bases, 0, next, keep, bases.length);
+            window = next;
+            windowStart = chunkStart - keep;
+            if (fivePrimeCounts == null) { // the first fragment starts with the first chunk
+                countFivePrimeMargins();
+            }
+        }
+
+        /** Count the 5' margins of the fragment that starts at {@link #previousCutPosition} (as far as it is read). */
+        private void countFivePrimeMargins() {
+            int windowEnd = windowStart + window.length - 1;
+            fivePrimeCounts = countGcAndRepeat(previousCutPosition, Math.min(windowEnd, previousCutPosition + marginSize - 1));
+            lastFivePrimeCounts = countGcAndRepeat(previousCutPosition + 1, Math.min(windowEnd, previousCutPosition + marginSize));
+        }
+
+        /**
+         * @param from one-based position of the first base (in the {@link #window})
+         * @param to one-based position of the last base (inclusive)
+         * @return the number of G/C bases and the number of repeat (lower case) bases in {@code [from,to]}
+         */
+        private int[] countGcAndRepeat(int from, int to) {
+            int gc=0;
+            int repeat=0;
+            for (int i = from - windowStart; i <= to - windowStart; i++) {
+                switch (window[i]) {
+                    case 'a' :
+                    case 't' :
+                        repeat++;
+                        break;
+                    case 'c' :
+                    case 'g' :
+                        repeat++;
+                        // don't break because we also need to count G/C here
+                    case 'C' :
+                    case 'G' :
+                        gc++;
+                        break;
+                }
+            }
+            return new int[]{gc,repeat};
         }
-        ImmutableList<Digest> fraglist = ImmutableList.sortedCopyOf(builder.build());
-        String previousCutEnzyme="None";
-        Integer previousCutPosition = 1; // start of chromosome
-        //Header
 
-         int n=0;
-        for (Digest f:fraglist) {
+        /**
+         * @param startpos one-based start position of the fragment
+         * @param endpos one-based end position of the fragment (inclusive)
+         * @param fivePrime counts of the first {@link #marginSize} bases of the fragment
+         * @return G/C and repeat content of the margins of the fragment
+         */
+        private Result getGcAndRepeat(int startpos, int endpos, int[] fivePrime) {
+            int len=endpos-startpos+1;
+            if (len<=0) {
+                return new Result(len,0,0,0,0);
+            }
+            int margin = Math.max(0, Math.min(marginSize, len));
+            int[] counts5 = margin == marginSize ? fivePrime : countGcAndRepeat(startpos, startpos+margin-1);
+            int[] counts3 = countGcAndRepeat(endpos-margin+1, endpos);
+            return new Result(len,counts5[0],counts3[0],counts5[1],counts3[1]);
+        }
+
+        /** Write the fragment that ends at the cut f. */
+        void add(Digest f) throws IOException {
             int startpos = previousCutPosition;
             int endpos = f.position - 1; // f.position is the 1-based first coordinate of the next fragment
-            // Note: to get subsequence, decrement startpos by one to get zero-based numbering
-            // leave endpos as is--it is one past the end in zero-based numbering.
-            String subsequence=sequence.substring(startpos-1,endpos);
-            Result result = getGcAndRepeat(subsequence, this.marginSize);
-
-            boolean selected = false;
-            Integer baitNumUp = 0;
-            Integer baitNumDown = 0;
-            if(btree.containsNode(scaffoldName,startpos)) {
-                selected = true;
-                Segment seg = btree.getNode(scaffoldName, startpos).segment;
-                baitNumUp = seg.getBaitNumUp();
-                baitNumDown = seg.getBaitNumDown();
-            }
+            Result result = getGcAndRepeat(startpos, endpos, fivePrimeCounts);
+
+            int i = selectedSegmentsOnChromosome.indexOf(startpos);
+            boolean selected = i >= 0;
+            int baitNumUp = selected ? selectedSegmentsOnChromosome.getBaitNumUp(i) : 0;
+            int baitNumDown = selected ? selectedSegmentsOnChromosome.getBaitNumDown(i) : 0;
 
-            out.write(String.format("%s\t%d\t%d\t%d\t%s\t%s\t%d\t%.3f\t%.3f\t%.3f\t%.3f\t%s\t%d\t%d\n",
-                    scaffoldName,
+            out.writeFragment(                    scaffoldName,
                     startpos,
                     endpos,
                     (++n),
@@ -284,38 +482,31 @@ public class DigestCreationTask extends Task<Void> {
                     result.getThreePrimeGcContent(),
                     result.getFivePrimeRepeatContent(),
                     result.getThreePrimeRepeatContent(),
-                    selected ? "T" : "F",
+                    selected,
                     baitNumUp,
-                    baitNumDown));
-            if (counter%1000==0) {
-                updateMessage(String.format("Digesting %s [%d digests so far]",scaffoldName,counter ));
+                    baitNumDown);
+            int count = counter.getAndIncrement();
+            if (count%1000==0) {
+                updateMessage(String.format("Digesting %s [%d digests so far]",scaffoldName,count ));
             }
-            counter++;
             previousCutEnzyme=number2enzyme.get(f.enzymeNumber).getName();
             previousCutPosition = f.position;
+            countFivePrimeMargins();
         }
-        // output last digest also
-        // No cut ("None") at end of chromosome
-        int endpos = sequence.length();
-        int startpos= (previousCutPosition+1);
-        // Note: to get subsequence, decrement startpos by one to get zero-based numbering
-        // leave endpos as is--it is one past the end in zero-based numbering.
-
-        String subsequence=sequence.substring(startpos-1,endpos);
-        Result result = getGcAndRepeat(subsequence,marginSize);
-        boolean selected = false;
-        Integer baitNumUp = 0;
-        Integer baitNumDown = 0;
-        if(btree.containsNode(scaffoldName,startpos)) {
-            selected = true;
-            Segment seg = btree.getNode(scaffoldName, startpos).segment;
-            baitNumUp = seg.getBaitNumUp();
-            baitNumDown = seg.getBaitNumDown();
-        }
-        if (selected) {
-            System.out.println(String.format("%s\t%d\t%d\t%d\t%s\t%s\t%d\t%.3f\t%.3f\t%.3f\t%.3f\t%s\t%d\t%d\n",
-                    scaffoldName,
-                    (previousCutPosition+1),
+
+        /** Write the last fragment, which ends at the end of the chromosome. */
+        void finish() throws IOException {
+            // output last digest also
+            // No cut ("None") at end of chromosome
+            int endpos = length;
+            int startpos= (previousCutPosition+1);
+            Result result = getGcAndRepeat(startpos, endpos, lastFivePrimeCounts);
+            int i = selectedSegmentsOnChromosome.indexOf(startpos);
+            boolean selected = i >= 0;
+            int baitNumUp = selected ? selectedSegmentsOnChromosome.getBaitNumUp(i) : 0;
+            int baitNumDown = selected ? selectedSegmentsOnChromosome.getBaitNumDown(i) : 0;
+            out.writeFragment(                    scaffoldName,
+                    startpos,
                     endpos,
                     (++n),
                     previousCutEnzyme,
@@ -325,26 +516,10 @@ public class DigestCreationTask extends Task<Void> {
                     result.getThreePrimeGcContent(),
                     result.getFivePrimeRepeatContent(),
                     result.getThreePrimeRepeatContent(),
-                    selected ? "T" : "F",
+                    selected,
                     baitNumUp,
-                    baitNumDown));
-            System.out.println("SELECTED: " + scaffoldName + ": "+startpos);
+                    baitNumDown);
         }
-        out.write(String.format("%s\t%d\t%d\t%d\t%s\t%s\t%d\t%.3f\t%.3f\t%.3f\t%.3f\t%s\t%d\t%d\n",
-                scaffoldName,
-                (previousCutPosition+1),
-                endpos,
-                (++n),
-                previousCutEnzyme,
-                "None",
-                result.getLen(),
-                result.getFivePrimeGcContent(),
-                result.getThreePrimeGcContent(),
-                result.getFivePrimeRepeatContent(),
-                result.getThreePrimeRepeatContent(),
-                selected ? "T" : "F",
-                baitNumUp,
-                baitNumDown));
     }
 
 
@@ -378,33 +553,5 @@ public class DigestCreationTask extends Task<Void> {
         double getThreePrimeRepeatContent() { return threePrimeRepeatContent; }
     }
 
-    private Result getGcAndRepeat(String subsequence, int marginSize) {
-        int len=subsequence.length();
-        int repeat5=0;
-        int repeat3=0;
-        int gc5=0;
-        int gc3=0;
-        for (int i=0;i<len;++i) {
-            switch (subsequence.charAt(i)) {
-                case 'a' :
-                case 't' :
-                    if (i<marginSize) repeat5++;
-                    if  ((len-marginSize)<=i) repeat3++;
-                    break;
-                case 'c' :
-                case 'g' :
-                    if (i<marginSize) repeat5++;
-                    if  ((len-marginSize)<=i) repeat3++;
-                    // don't break because we also need to count G/C here
-                case 'C' :
-                case 'G' :
-                    if (i<marginSize) gc5++;
-                    if  ((len-marginSize)<=i) gc3++;
-                    break;
-            }
-        }
-        return new Result(len,gc5,gc3,repeat5,repeat3);
-    }
-
 
 }
@@ -0,0 +1,251 @@
+package gopher.model.digest;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Writes the lines of the digest file. Instead of formatting each line with {@code String.format}, the fields are
+ * encoded directly into a reusable byte buffer (ints digit by digit, fractions with a fixed number of decimals), and
+ * the buffer is written to the file with large writes through a {@link FileChannel} (or to an output stream, e.g.,
+ * a {@link gopher.io.TabixIndexingOutputStream} for a compressed and indexed digest file).
+ * <p>
+ * The output is the same as that of {@code String.format} with the conversions {@code %s}, {@code %d} and
+ * {@code %.3f} (with a '.' as the decimal separator). In particular, decimals are rounded half up on their
+ * shortest decimal representation, as by {@link java.util.Formatter}; the rare values that are (almost) exactly
+ * half way between two results are formatted by {@code String.format} itself.</p>
+ */
+public class DigestRecordWriter implements Closeable {
+    /** Size of the buffer, i.e., of the writes to the file. */
+    private static final int BUFFER_SIZE = 1 << 20;
+    /** Number of decimals of the G/C and repeat contents in the digest file. */
+    private static final int CONTENT_DECIMALS = 3;
+    /** Largest number of decimals supported by {@link #appendDecimal(double, int)}. */
+    private static final int MAX_DECIMALS = 9;
+    /** Values whose scaled magnitude is at least this large are formatted by {@code String.format}. */
+    private static final double MAX_FAST_SCALED_VALUE = 1e12;
+    private static final long[] POWERS_OF_TEN = new long[MAX_DECIMALS + 1];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final WritableByteChannel channel;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    /** Number of bytes in {@link #buffer} that have not been written yet. */
+    private int pos = 0;
+    /** Digits of a number, which are produced from right to left. */
+    private final byte[] digits = new byte[20];
+
+    /**
+     * @param file the file to write (an existing file is overwritten)
+     * @throws IOException if the file cannot be opened
+     */
+    public DigestRecordWriter(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /** @param out the stream to write (it is closed by {@link #close()}) */
+    public DigestRecordWriter(OutputStream out) {
+        this.channel = Channels.newChannel(out);
+    }
+
+    /**
+     * Write one line of the digest file (one restriction fragment).
+     * @param chromosome name of the chromosome
+     * @param start one-based start position of the fragment
+     * @param end one-based end position of the fragment (inclusive)
+     * @param number number of the fragment within the chromosome
+     * @param fivePrimeSite name of the enzyme that cuts at the 5' end (or "None")
+     * @param threePrimeSite name of the enzyme that cuts at the 3' end (or "None")
+     * @param length length of the fragment
+     * @param fivePrimeGcContent G/C content of the 5' margin
+     * @param threePrimeGcContent G/C content of the 3' margin
+     * @param fivePrimeRepeatContent repeat content of the 5' margin
+     * @param threePrimeRepeatContent repeat content of the 3' margin
+     * @param selected true if the fragment is part of an active viewpoint
+     * @param baitNumUp number of probes in the 5' margin
+     * @param baitNumDown number of probes in the 3' margin
+     * @throws IOException if the file cannot be written
+     */
+    public void writeFragment(String chromosome, int start, int end, int number, String fivePrimeSite,
+                              String threePrimeSite, int length, double fivePrimeGcContent,
+                              double threePrimeGcContent, double fivePrimeRepeatContent,
+                              double threePrimeRepeatContent, boolean selected, int baitNumUp,
+                              int baitNumDown) throws IOException {
+        append(chromosome).tab().append(start).tab().append(end).tab().append(number).tab()
+                .append(fivePrimeSite).tab().append(threePrimeSite).tab().append(length).tab()
+                .appendDecimal(fivePrimeGcContent, CONTENT_DECIMALS).tab()
+                .appendDecimal(threePrimeGcContent, CONTENT_DECIMALS).tab()
+                .appendDecimal(fivePrimeRepeatContent, CONTENT_DECIMALS).tab()
+                .appendDecimal(threePrimeRepeatContent, CONTENT_DECIMALS).tab()
+                .append(selected ? "T" : "F").tab().append(baitNumUp).tab().append(baitNumDown).newLine();
+    }
+
+    /** Write a line (e.g., the header), followed by a newline. */
+    public void writeLine(String line) throws IOException {
+        append(line).newLine();
+    }
+
+    /** Make room for n bytes in the buffer (n must not be larger than the buffer). */
+    private void ensureCapacity(int n) throws IOException {
+        if (pos + n > buffer.length) {
+            flush();
+        }
+    }
+
+    private DigestRecordWriter put(byte b) throws IOException {
+        ensureCapacity(1);
+        buffer[pos++] = b;
+        return this;
+    }
+
+    DigestRecordWriter tab() throws IOException {
+        return put((byte) '\t');
+    }
+
+    DigestRecordWriter newLine() throws IOException {
+        return put((byte) '\n');
+    }
+
+    /** Append the string (encoded as UTF-8). */
+    DigestRecordWriter append(String s) throws IOException {
+        int length = s.length();
+        if (length <= buffer.length) {
+            ensureCapacity(length);
+            int start = pos;
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                if (c >= 0x80) {
+                    pos = start;
+                    return append(s.getBytes(StandardCharsets.UTF_8));
+                }
+                buffer[pos++] = (byte) c;
+            }
+            return this;
+        }
+        return append(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private DigestRecordWriter append(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length) {
+            flush();
+            write(ByteBuffer.wrap(bytes));
+        } else {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, pos, bytes.length);
+            pos += bytes.length;
+        }
+        return this;
+    }
+
+    /** Append the decimal representation of the value (as {@code %d}). */
+    DigestRecordWriter append(long value) throws IOException {
+        ensureCapacity(digits.length);
+        if (value < 0) {
+            buffer[pos++] = '-';
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + Math.abs(value % 10)); // abs, as Long.MIN_VALUE cannot be negated
+            value /= 10;
+        } while (value != 0);
+        while (n > 0) {
+            buffer[pos++] = digits[--n];
+        }
+        return this;
+    }
+
+    /**
+     * Append the value with the given number of decimals, exactly as {@code String.format("%.<decimals>f", value)}
+     * (with a '.' as the decimal separator).
+     * @param value the value to append
+     * @param decimals number of decimals (at most {@link #MAX_DECIMALS})
+     */
+    DigestRecordWriter appendDecimal(double value, int decimals) throws IOException {
+        if (decimals < 0 || decimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException("Unsupported number of decimals: " + decimals);
+        }
+        double scaled = Math.abs(value) * POWERS_OF_TEN[decimals];
+        if (!(scaled < MAX_FAST_SCALED_VALUE)) { // also NaN and infinity
+            return appendFormatted(value, decimals);
+        }
+        long truncated = (long) scaled;
+        double fraction = scaled - truncated;
+        // near a tie, the result depends on the shortest representation of the value, which is not known here
+        if (Math.abs(fraction - 0.5) <= 4 * Math.ulp(scaled)) {
+            return appendFormatted(value, decimals);
+        }
+        long rounded = fraction > 0.5 ? truncated + 1 : truncated;
+        if (Double.doubleToRawLongBits(value) < 0) { // negative, including -0.0 and values that round to 0
+            put((byte) '-');
+        }
+        append(rounded / POWERS_OF_TEN[decimals]);
+        if (decimals > 0) {
+            ensureCapacity(decimals + 1);
+            buffer[pos++] = '.';
+            long fractionDigits = rounded % POWERS_OF_TEN[decimals];
+            for (int i = pos + decimals - 1; i >= pos; i--) {
+                buffer[i] = (byte) ('0' + fractionDigits % 10);
+                fractionDigits /= 10;
+            }
+            pos += decimals;
+        }
+        return this;
+    }
+
+    private DigestRecordWriter appendFormatted(double value, int decimals) throws IOException {
+        return append(String.format(Locale.US, "%." + decimals + "f", value));
+    }
+
+    /**
+     * Append the content of a file (e.g., the digests of one chromosome that were written to a temporary file),
+     * which is transferred from file to file without copying it through the buffer (if the output is a file).
+     * @param file the file to append
+     * @throws IOException if the file cannot be read or the output cannot be written
+     */
+    public void appendFile(File file) throws IOException {
+        flush();
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, channel);
+            }
+        }
+    }
+
+    private void write(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    /** Write the content of the buffer to the file. */
+    public void flush() throws IOException {
+        if (pos > 0) {
+            write(ByteBuffer.wrap(buffer, 0, pos));
+            pos = 0;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
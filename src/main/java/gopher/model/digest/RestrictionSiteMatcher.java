@@ -0,0 +1,322 @@
+package gopher.model.digest;
+
+import gopher.model.RestrictionEnzyme;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A matcher that finds the restriction sites of several enzymes in a single pass over the raw bases of a FASTA
+ * file. The sites of all enzymes are compiled into one Aho-Corasick automaton (with a full transition table, so that
+ * each base costs one table lookup), instead of running one regular expression per enzyme over a String.
+ * <p>
+ * Sites may contain the IUPAC ambiguity codes (e.g., HinfI {@code G^ANTC}); they are expanded into all of the concrete
+ * sequences they represent. If a site is not palindromic, the reverse complement of the site is searched as well and
+ * the cutting position is mirrored accordingly, i.e., sites on both strands are found.</p>
+ * <p>
+ * As with the regular expressions that were used before, matching is case-insensitive (lower case bases are soft-masked
+ * repeats), and the sites of one enzyme do not overlap: after a site of an enzyme has been found, the next site of the
+ * same enzyme is only reported if it starts after the end of the previous one. Bases other than A, C, G and T (e.g., N)
+ * never match. Objects of this class are immutable and can be shared by several threads.</p>
+ */
+public final class RestrictionSiteMatcher {
+    /** Maximum number of concrete sequences a degenerate site can be expanded into. */
+    private static final int MAX_EXPANSIONS = 1 << 16;
+    /** Number of symbols of the automaton (A, C, G, T). */
+    private static final int ALPHABET_SIZE = 4;
+    /** Key: a base (as unsigned byte), value: the symbol A=0, C=1, G=2, T=3 or -1 for any other base. */
+    private static final byte[] SYMBOL = new byte[256];
+    static {
+        Arrays.fill(SYMBOL, (byte) -1);
+        String acgt = "ACGT";
+        for (int i = 0; i < acgt.length(); i++) {
+            SYMBOL[acgt.charAt(i)] = (byte) i;
+            SYMBOL[Character.toLowerCase(acgt.charAt(i))] = (byte) i;
+        }
+    }
+    /** The enzymes whose sites are searched. The position of an enzyme in this list is its index in {@link SiteVisitor#visit}. */
+    private final List<RestrictionEnzyme> enzymes;
+    /** Index of the enzyme for each (expanded) pattern. */
+    private final int[] patternEnzyme;
+    /** Length of each pattern. */
+    private final int[] patternLength;
+    /** Offset of the cutting position from the start of each pattern. */
+    private final int[] patternCutOffset;
+    /** Transition table, the next state for state s and symbol c is {@code transitions[s*ALPHABET_SIZE+c]}. */
+    private final int[] transitions;
+    /** Patterns that end in each state (including those of the suffixes of the state), null if there are none. */
+    private final int[][] outputs;
+
+    /** Receives the sites found by {@link #scan}. */
+    public interface SiteVisitor {
+        /**
+         * @param enzymeIndex index of the enzyme in the list passed to the constructor
+         * @param start position of the first base of the site
+         * @param cutPosition position of the first base after the cut
+         */
+        void visit(int enzymeIndex, int start, int cutPosition);
+    }
+
+    /**
+     * @param enzymes the restriction enzymes whose sites are to be searched
+     * @throws IllegalArgumentException if a site contains characters that are not IUPAC nucleotide codes or if a
+     * degenerate site represents too many concrete sequences
+     */
+    public RestrictionSiteMatcher(List<RestrictionEnzyme> enzymes) {
+        this.enzymes = new ArrayList<>(enzymes);
+        List<byte[]> patterns = new ArrayList<>();
+        List<Integer> enzymeIndices = new ArrayList<>();
+        List<Integer> cutOffsets = new ArrayList<>();
+        for (int e = 0; e < this.enzymes.size(); e++) {
+            RestrictionEnzyme enzyme = this.enzymes.get(e);
+            String site = enzyme.getPlainSite().toUpperCase();
+            int offset = enzyme.getOffset();
+            for (byte[] p : expand(site)) {
+                patterns.add(p);
+                enzymeIndices.add(e);
+                cutOffsets.add(offset);
+            }
+            String reverseComplement = reverseComplement(site);
+            if (!reverseComplement.equals(site)) {
+                for (byte[] p : expand(reverseComplement)) {
+                    patterns.add(p);
+                    enzymeIndices.add(e);
+                    cutOffsets.add(site.length() - offset);
+                }
+            }
+        }
+        int n = patterns.size();
+        this.patternEnzyme = new int[n];
+        this.patternLength = new int[n];
+        this.patternCutOffset = new int[n];
+        int maxStates = 1;
+        for (int p = 0; p < n; p++) {
+            patternEnzyme[p] = enzymeIndices.get(p);
+            patternLength[p] = patterns.get(p).length;
+            patternCutOffset[p] = cutOffsets.get(p);
+            maxStates += patternLength[p];
+        }
+        // build the trie; 0 is the root and -1 marks missing transitions
+        int[] delta = new int[maxStates * ALPHABET_SIZE];
+        Arrays.fill(delta, -1);
+        List<List<Integer>> ownOutputs = new ArrayList<>();
+        ownOutputs.add(null);
+        int nStates = 1;
+        for (int p = 0; p < n; p++) {
+            int state = 0;
+            for (byte symbol : patterns.get(p)) {
+                int k = state * ALPHABET_SIZE + symbol;
+                if (delta[k] < 0) {
+                    delta[k] = nStates++;
+                    ownOutputs.add(null);
+                }
+                state = delta[k];
+            }
+            if (ownOutputs.get(state) == null) ownOutputs.set(state, new ArrayList<>());
+            ownOutputs.get(state).add(p);
+        }
+        // breadth-first traversal to compute the failure links and complete the transition table
+        int[] failure = new int[nStates];
+        int[][] out = new int[nStates][];
+        int[] queue = new int[nStates];
+        int head = 0, tail = 0;
+        for (int c = 0; c < ALPHABET_SIZE; c++) {
+            int child = delta[c];
+            if (child < 0) {
+                delta[c] = 0;
+            } else {
+                failure[child] = 0;
+                queue[tail++] = child;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            out[state] = mergeOutputs(ownOutputs.get(state), out[failure[state]]);
+            for (int c = 0; c < ALPHABET_SIZE; c++) {
+                int k = state * ALPHABET_SIZE + c;
+                int child = delta[k];
+                int fallback = delta[failure[state] * ALPHABET_SIZE + c];
+                if (child < 0) {
+                    delta[k] = fallback;
+                } else {
+                    failure[child] = fallback;
+                    queue[tail++] = child;
+                }
+            }
+        }
+        this.transitions = Arrays.copyOf(delta, nStates * ALPHABET_SIZE);
+        this.outputs = out;
+    }
+
+    private static int[] mergeOutputs(List<Integer> own, int[] inherited) {
+        if (own == null) return inherited;
+        int[] merged = new int[own.size() + (inherited == null ? 0 : inherited.length)];
+        int i = 0;
+        for (int p : own) merged[i++] = p;
+        if (inherited != null) {
+            System.arraycopy(inherited, 0, merged, i, inherited.length);
+        }
+        return merged;
+    }
+
+    /** @return the enzymes whose sites are searched by this matcher. */
+    public List<RestrictionEnzyme> getEnzymes() {
+        return enzymes;
+    }
+
+    /**
+     * Search the bases {@code bases[fromIndex..toIndex)} for the sites of all enzymes. Only sites that lie completely
+     * within this range are reported. Sites of the same enzyme are reported in ascending order; sites of different
+     * enzymes are reported in the order of the positions at which they end.
+     * @param bases bases as found in the FASTA file
+     * @param fromIndex index of the first base to be searched
+     * @param toIndex index after the last base to be searched
+     * @param firstPosition position that corresponds to {@code bases[0]} (e.g., 1 for one-based positions of a whole chromosome)
+     * @param visitor receives the sites that are found
+     */
+    public void scan(byte[] bases, int fromIndex, int toIndex, int firstPosition, SiteVisitor visitor) {
+        newScanner().scan(bases, fromIndex, toIndex, firstPosition, visitor);
+    }
+
+    /** @return a scanner for a sequence that is passed in consecutive chunks. */
+    public Scanner newScanner() {
+        return new Scanner();
+    }
+
+    /** @return the length of the longest site of the enzymes. */
+    public int getMaxSiteLength() {
+        return Arrays.stream(patternLength).max().orElse(0);
+    }
+
+    /**
+     * Scans a sequence that is passed in consecutive chunks (e.g., a chromosome that is read piece by piece). The
+     * state of the automaton is kept between the chunks, so that sites that span the border between two chunks are
+     * found without any overlap between the chunks, and the sites are reported exactly as if the whole sequence had
+     * been passed to {@link #scan} at once. A scanner must only be used by one thread.
+     */
+    public final class Scanner {
+        /** State of the automaton after the last base that was scanned. */
+        private int state = 0;
+        /** Position after the last site of each enzyme (to skip overlapping sites). */
+        private final int[] lastEnd = new int[enzymes.size()];
+
+        private Scanner() {
+            Arrays.fill(lastEnd, Integer.MIN_VALUE);
+        }
+
+        /**
+         * Scan the next chunk of the sequence.
+         * @param bases bases as found in the FASTA file
+         * @param fromIndex index of the first base to be searched
+         * @param toIndex index after the last base to be searched
+         * @param firstPosition position that corresponds to {@code bases[0]}; the chunks must be consecutive, i.e.,
+         *                      the position of {@code bases[fromIndex]} must follow the last base of the previous chunk
+         * @param visitor receives the sites that end within this chunk
+         */
+        public void scan(byte[] bases, int fromIndex, int toIndex, int firstPosition, SiteVisitor visitor) {
+            int state = this.state;
+            for (int i = fromIndex; i < toIndex; i++) {
+                int symbol = SYMBOL[bases[i] & 0xFF];
+                if (symbol < 0) {
+                    state = 0;
+                    continue;
+                }
+                state = transitions[state * ALPHABET_SIZE + symbol];
+                int[] matches = outputs[state];
+                if (matches == null) continue;
+                for (int p : matches) {
+                    int e = patternEnzyme[p];
+                    int start = firstPosition + i - patternLength[p] + 1;
+                    if (start < lastEnd[e]) continue; // overlaps with the previous site of this enzyme
+                    lastEnd[e] = firstPosition + i + 1;
+                    visitor.visit(e, start, start + patternCutOffset[p]);
+                }
+            }
+            this.state = state;
+        }
+    }
+
+    /**
+     * @param bases bases as found in the FASTA file
+     * @return the number of sites of all enzymes in the bases
+     */
+    public int countSites(byte[] bases) {
+        int[] count = new int[1];
+        scan(bases, 0, bases.length, 0, (enzymeIndex, start, cutPosition) -> count[0]++);
+        return count[0];
+    }
+
+    /** @return the bases (A, C, G or T) that are represented by an IUPAC nucleotide code. */
+    private static String getBases(char code) {
+        switch (code) {
+            case 'A': return "A";
+            case 'C': return "C";
+            case 'G': return "G";
+            case 'T': return "T";
+            case 'R': return "AG";
+            case 'Y': return "CT";
+            case 'S': return "CG";
+            case 'W': return "AT";
+            case 'K': return "GT";
+            case 'M': return "AC";
+            case 'B': return "CGT";
+            case 'D': return "AGT";
+            case 'H': return "ACT";
+            case 'V': return "ACG";
+            case 'N': return "ACGT";
+            default:
+                throw new IllegalArgumentException(String.format("Invalid nucleotide code '%c' in restriction site", code));
+        }
+    }
+
+    /** @return the complement of an IUPAC nucleotide code. */
+    private static char complement(char code) {
+        switch (code) {
+            case 'A': return 'T';
+            case 'C': return 'G';
+            case 'G': return 'C';
+            case 'T': return 'A';
+            case 'R': return 'Y';
+            case 'Y': return 'R';
+            case 'K': return 'M';
+            case 'M': return 'K';
+            case 'B': return 'V';
+            case 'V': return 'B';
+            case 'D': return 'H';
+            case 'H': return 'D';
+            default: return code; // S, W and N are their own complements
+        }
+    }
+
+    /** @return the reverse complement of a site (upper case, possibly with IUPAC codes). */
+    static String reverseComplement(String site) {
+        StringBuilder sb = new StringBuilder(site.length());
+        for (int i = site.length() - 1; i >= 0; i--) {
+            sb.append(complement(site.charAt(i)));
+        }
+        return sb.toString();
+    }
+
+    /** @return all concrete sequences (as symbols of the automaton) that are represented by a degenerate site. */
+    private static List<byte[]> expand(String site) {
+        List<byte[]> expanded = new ArrayList<>();
+        expanded.add(new byte[site.length()]);
+        for (int i = 0; i < site.length(); i++) {
+            String bases = getBases(site.charAt(i));
+            if (expanded.size() * bases.length() > MAX_EXPANSIONS) {
+                throw new IllegalArgumentException("Too many degenerate positions in restriction site " + site);
+            }
+            List<byte[]> next = new ArrayList<>(expanded.size() * bases.length());
+            for (byte[] prefix : expanded) {
+                for (int b = 0; b < bases.length(); b++) {
+                    byte[] p = b == bases.length() - 1 ? prefix : prefix.clone();
+                    p[i] = SYMBOL[bases.charAt(b)];
+                    next.add(p);
+                }
+            }
+            expanded = next;
+        }
+        return expanded;
+    }
+}
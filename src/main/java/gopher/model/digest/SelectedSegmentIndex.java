@@ -0,0 +1,93 @@
+package gopher.model.digest;
+
+import gopher.model.viewpoint.Segment;
+
+import java.util.*;
+
+/**
+ * The selected restriction fragments ({@link Segment}s of the active viewpoints), which are looked up for every
+ * fragment of the genome when the digest file is created. For each chromosome, the start positions of the selected
+ * segments are kept in a sorted {@code int} array, with the numbers of baits in parallel arrays, so that a fragment
+ * is found by a binary search without any recursion or String comparisons.
+ */
+class SelectedSegmentIndex {
+    /** Returned for the chromosomes without selected segments. */
+    private static final Chromosome EMPTY = new Chromosome(new int[0], new int[0], new int[0]);
+    /** key: name of a chromosome; value: the selected segments on the chromosome. */
+    private final Map<String, Chromosome> chromosomes = new HashMap<>();
+    /** Number of selected segments (segments with the same chromosome and start position are counted once). */
+    private final int segmentCount;
+
+    /**
+     * @param segments the selected segments; if several segments have the same chromosome and start position, the
+     *                 first one is used
+     */
+    SelectedSegmentIndex(Collection<Segment> segments) {
+        Map<String, List<Segment>> segmentsByChromosome = new HashMap<>();
+        for (Segment seg : segments) {
+            segmentsByChromosome.computeIfAbsent(seg.getReferenceSequenceID(), k -> new ArrayList<>()).add(seg);
+        }
+        int count = 0;
+        for (Map.Entry<String, List<Segment>> entry : segmentsByChromosome.entrySet()) {
+            List<Segment> seglist = entry.getValue();
+            seglist.sort(Comparator.comparingInt(Segment::getStartPos)); // stable, so the first segment comes first
+            int[] starts = new int[seglist.size()];
+            int[] baitNumUp = new int[seglist.size()];
+            int[] baitNumDown = new int[seglist.size()];
+            int n = 0;
+            for (Segment seg : seglist) {
+                int start = seg.getStartPos();
+                if (n > 0 && starts[n - 1] == start) {
+                    continue;
+                }
+                starts[n] = start;
+                baitNumUp[n] = seg.getBaitNumUp();
+                baitNumDown[n] = seg.getBaitNumDown();
+                n++;
+            }
+            chromosomes.put(entry.getKey(), new Chromosome(Arrays.copyOf(starts, n), Arrays.copyOf(baitNumUp, n),
+                    Arrays.copyOf(baitNumDown, n)));
+            count += n;
+        }
+        this.segmentCount = count;
+    }
+
+    /** @return number of selected segments */
+    int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /** @return the selected segments on the chromosome (empty if there are none). */
+    Chromosome getChromosome(String chrom) {
+        return chromosomes.getOrDefault(chrom, EMPTY);
+    }
+
+    /** The selected segments on one chromosome, sorted by their start positions. */
+    static final class Chromosome {
+        private final int[] starts;
+        private final int[] baitNumUp;
+        private final int[] baitNumDown;
+
+        private Chromosome(int[] starts, int[] baitNumUp, int[] baitNumDown) {
+            this.starts = starts;
+            this.baitNumUp = baitNumUp;
+            this.baitNumDown = baitNumDown;
+        }
+
+        /** @return index of the selected segment that starts at pos, or -1 if there is none. */
+        int indexOf(int pos) {
+            int i = Arrays.binarySearch(starts, pos);
+            return i >= 0 ? i : -1;
+        }
+
+        /** @return number of baits in the upstream margin of the i'th segment. */
+        int getBaitNumUp(int i) {
+            return baitNumUp[i];
+        }
+
+        /** @return number of baits in the downstream margin of the i'th segment. */
+        int getBaitNumDown(int i) {
+            return baitNumDown[i];
+        }
+    }
+}
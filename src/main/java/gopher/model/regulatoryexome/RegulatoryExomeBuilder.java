@@ -6,13 +6,13 @@ import org.apache.log4j.Logger;
 import gopher.exception.GopherException;
 import gopher.gui.popupdialog.PopupFactory;
 import gopher.io.GeneRegGTFParser;
+import gopher.io.PipelinedGzipInputStream;
 import gopher.model.Model;
 import gopher.model.viewpoint.ViewPoint;
 
 import java.io.*;
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.zip.GZIPInputStream;
 
 /**
  * This class uses data from the Ensembl regulatory build as well as the UCSC refGene.txt.gz files to create
@@ -127,8 +127,7 @@ public class RegulatoryExomeBuilder extends Task<Void> {
         int totalgenes=vpmap.size();
         status.add(String.format("%d genes for regulatory exome",totalgenes));
 
-        InputStream fileStream = new FileInputStream(this.pathToRefGeneFile);
-        InputStream gzipStream = new GZIPInputStream(fileStream);
+        InputStream gzipStream = new PipelinedGzipInputStream(this.pathToRefGeneFile);
         Reader decoder = new InputStreamReader(gzipStream);
         BufferedReader br = new BufferedReader(decoder);
         String line;
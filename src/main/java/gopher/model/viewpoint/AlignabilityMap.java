@@ -24,12 +24,20 @@ import java.util.List;
  *
  * First column (chromosome) lexicographically, second column numerically start position.
  * The downloadable files are sorted like this.
+ *
+ * For each run of positions with the same score, we additionally store the sum of the scores and the number of
+ * positions without score (-1) before the start of the run. Sums and means over any interval can thus be obtained
+ * with two binary searches, without looking at the individual positions (see {@link #getScoreSum(int, int)}).
  */
 public class AlignabilityMap {
     /** Array of coordinates with boundaries of the region that has a certain score. */
     private final int coordArray[];
      /** Array of alignability score entries */
     private final int scoreArray[];
+    /** Sum of the scores of all positions before {@code coordArray[i]} (positions without score count as -1). */
+    private final long cumulativeScoreArray[];
+    /** Number of positions without score (-1) before {@code coordArray[i]}. */
+    private final int cumulativeNoScoreArray[];
 
     private final String chromName;
 
@@ -43,12 +51,28 @@ public class AlignabilityMap {
     int getKmersize() { return kmersize; }
 
     AlignabilityMap(String chrom, List<Integer> coordinateList, List<Integer> scoreList, int kmer) {
-        this.coordArray = coordinateList.stream().mapToInt(Integer::intValue).toArray();
-        this.scoreArray = scoreList.stream().mapToInt(Integer::intValue).toArray();
+        this(chrom, coordinateList.stream().mapToInt(Integer::intValue).toArray(),
+                scoreList.stream().mapToInt(Integer::intValue).toArray(), kmer);
+    }
+
+    /**
+     * @param chrom name of the chromosome
+     * @param coordinates positions at which the score changes (sorted)
+     * @param scores score of the run of positions that starts at the corresponding coordinate
+     * @param kmer k-mer size of the alignability map
+     */
+    AlignabilityMap(String chrom, int[] coordinates, int[] scores, int kmer) {
+        this.coordArray = coordinates;
+        this.scoreArray = scores;
         this.chromName=chrom;
         this.kmersize=kmer;
-
-
+        this.cumulativeScoreArray = new long[coordArray.length];
+        this.cumulativeNoScoreArray = new int[coordArray.length];
+        for (int i = 1; i < coordArray.length; i++) {
+            int runLength = coordArray[i] - coordArray[i-1];
+            cumulativeScoreArray[i] = cumulativeScoreArray[i-1] + (long) runLength * scoreArray[i-1];
+            cumulativeNoScoreArray[i] = cumulativeNoScoreArray[i-1] + (scoreArray[i-1] == -1 ? runLength : 0);
+        }
     }
 
     /** @return number of elements in the array of alignability scores. */
@@ -56,6 +80,67 @@ public class AlignabilityMap {
         return coordArray.length;
     }
 
+    /** @return first position of the i-th run of positions with the same score. */
+    int getRunStart(int i) {
+        return coordArray[i];
+    }
+
+    /** @return score of the i-th run of positions with the same score. */
+    int getRunScore(int i) {
+        return scoreArray[i];
+    }
+
+    /** @return index of the run of positions with the same score that contains pos. */
+    private int getRunIndex(int pos) {
+        int index = Arrays.binarySearch(coordArray, pos);
+        if(index < 0) {
+            index = (index+2)*(-1); // take the next previous index
+        }
+        return index;
+    }
+
+    /** @return alignability score at position pos. */
+    int getScoreAt(int pos) {
+        return scoreArray[getRunIndex(pos)];
+    }
+
+    /** @return sum of the scores of all positions before pos. */
+    private long getScoreSumBefore(int pos) {
+        int index = getRunIndex(pos);
+        return cumulativeScoreArray[index] + (long) (pos - coordArray[index]) * scoreArray[index];
+    }
+
+    /** @return number of positions without score (-1) before pos. */
+    private int getNoScoreCountBefore(int pos) {
+        int index = getRunIndex(pos);
+        return cumulativeNoScoreArray[index] + (scoreArray[index] == -1 ? pos - coordArray[index] : 0);
+    }
+
+    /**
+     * @return sum of the alignability scores for the interval between fromPos and toPos (positions without score
+     * count as -1), or zero if the interval is empty.
+     */
+    long getScoreSum(int fromPos, int toPos) {
+        if (toPos < fromPos) return 0;
+        return getScoreSumBefore(toPos + 1) - getScoreSumBefore(fromPos);
+    }
+
+    /** @return mean alignability score for the interval between fromPos and toPos (NaN if the interval is empty). */
+    double getMeanScore(int fromPos, int toPos) {
+        return (double) getScoreSum(fromPos, toPos) / Math.max(0, toPos - fromPos + 1);
+    }
+
+    /** @return number of positions without score (-1), e.g., because of Ns, for the interval between fromPos and toPos. */
+    int getNoScoreCount(int fromPos, int toPos) {
+        if (toPos < fromPos) return 0;
+        return getNoScoreCountBefore(toPos + 1) - getNoScoreCountBefore(fromPos);
+    }
+
+    /** @return true if there is at least one position without score (-1) in the interval between fromPos and toPos. */
+    boolean containsNoScore(int fromPos, int toPos) {
+        return getNoScoreCount(fromPos, toPos) > 0;
+    }
+
     /** @return list of alignability scores for the interval between fromPos and toPos*/
     ArrayList<Integer> getScoreFromTo(int fromPos, int toPos) {
         ArrayList<Integer> scoreArrayForRegion = new ArrayList<>();
@@ -0,0 +1,260 @@
+package gopher.model.viewpoint;
+
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * A binary copy of the alignability map (bedGraph) that can be loaded much faster than the gzipped text file.
+ * The map is parsed once with an {@link AlignabilityMapIterator} and the runs of positions with the same score are
+ * written to a file next to the bedGraph file, e.g., {@code hg19.100mer.alignabilityMap.bedgraph.gz.amap}
+ * (see {@link #loadOrBuild(String, String)}). Afterwards, the map of a chromosome is read by memory mapping its
+ * block of the file and copying the coordinates and scores into the arrays of the {@link AlignabilityMap}.
+ * <p>
+ * The file consists of a header, one block for each chromosome and an index of the blocks at the end of the file.
+ * The header records the size and modification time of the bedGraph and the chromInfo file, and the cache is rebuilt
+ * if one of them changes. A block holds the (one-based) start positions of the runs as ints, followed by the scores,
+ * which are stored as single bytes (score + 1, i.e., -1 for positions without score is stored as 0) unless a
+ * chromosome has scores larger than {@link #MAX_BYTE_SCORE}, in which case they are stored as ints.</p>
+ */
+public class AlignabilityMapCache {
+    private static final Logger logger = Logger.getLogger(AlignabilityMapCache.class.getName());
+    /** Magic number at the start of a cache file ("GAMC"). */
+    private static final int MAGIC = 0x47414D43;
+    /** Version of the file format. Cache files with a different version are rebuilt. */
+    private static final int VERSION = 1;
+    /** Suffix of the cache files. */
+    private static final String SUFFIX = ".amap";
+    /** Size of the header; the last field of the header is the offset of the index. */
+    private static final int HEADER_SIZE = 48;
+    /** Largest score that can be stored as a single byte. */
+    private static final int MAX_BYTE_SCORE = 254;
+    /** The cache file. */
+    private final File cacheFile;
+    /** Key: name of a chromosome; value: location of its block in the cache file (in the order of the bedGraph file). */
+    private final Map<String, Block> blocks;
+
+    /** The location of the runs of one chromosome in the cache file. */
+    private static final class Block {
+        /** Byte position of the block in the cache file. */
+        final long offset;
+        /** Number of runs of positions with the same score. */
+        final int runCount;
+        /** Number of bytes per score (1 or 4). */
+        final int scoreBytes;
+
+        Block(long offset, int runCount, int scoreBytes) {
+            this.offset = offset;
+            this.runCount = runCount;
+            this.scoreBytes = scoreBytes;
+        }
+    }
+
+    private AlignabilityMapCache(File cacheFile, Map<String, Block> blocks) {
+        this.cacheFile = cacheFile;
+        this.blocks = blocks;
+    }
+
+    /**
+     * Load the index of the cache file for the given alignability map, or build the cache file if there is no such
+     * file or if it is outdated.
+     * @param alignabilityMapPath path to the gzipped bedGraph file with the alignability map
+     * @param chromInfoPath path to the gzipped chromInfo file with the lengths of the chromosomes
+     * @return the cache, or null if the cache file could not be written (the bedGraph file must then be parsed)
+     * @throws IOException if the alignability map cannot be read
+     */
+    public static AlignabilityMapCache loadOrBuild(String alignabilityMapPath, String chromInfoPath) throws IOException {
+        File bedGraph = new File(alignabilityMapPath);
+        File chromInfo = new File(chromInfoPath);
+        File cacheFile = getCacheFile(alignabilityMapPath);
+        if (cacheFile.exists()) {
+            try {
+                AlignabilityMapCache cache = read(cacheFile, bedGraph, chromInfo);
+                if (cache != null) {
+                    logger.trace("Loaded alignability map cache " + cacheFile.getAbsolutePath());
+                    return cache;
+                }
+                logger.trace("Alignability map cache " + cacheFile.getAbsolutePath() + " is outdated and will be rebuilt");
+            } catch (IOException e) {
+                logger.warn("Could not read alignability map cache " + cacheFile.getAbsolutePath() + ": " + e.getMessage());
+            }
+        }
+        if (!bedGraph.isFile()) {
+            throw new FileNotFoundException("Could not find alignability map " + bedGraph.getAbsolutePath());
+        }
+        try {
+            write(cacheFile, bedGraph, chromInfo);
+            logger.trace("Wrote alignability map cache " + cacheFile.getAbsolutePath());
+            return read(cacheFile, bedGraph, chromInfo);
+        } catch (IOException e) {
+            logger.warn("Could not write alignability map cache " + cacheFile.getAbsolutePath() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** @return the cache file for the alignability map, e.g., {@code hg19.100mer.alignabilityMap.bedgraph.gz.amap}. */
+    static File getCacheFile(String alignabilityMapPath) {
+        return new File(alignabilityMapPath + SUFFIX);
+    }
+
+    /** @return names of the chromosomes of the alignability map, in the order of the bedGraph file. */
+    public List<String> getChromosomeNames() {
+        return new ArrayList<>(blocks.keySet());
+    }
+
+    /**
+     * @param chromosome name of a chromosome of the alignability map
+     * @param kmerSize k-mer size of the alignability map
+     * @return the alignability map of the chromosome
+     * @throws IOException if the cache file cannot be read
+     */
+    public AlignabilityMap getMap(String chromosome, int kmerSize) throws IOException {
+        Block block = blocks.get(chromosome);
+        if (block == null) {
+            throw new IllegalArgumentException("Chromosome " + chromosome + " not found in alignability map");
+        }
+        int n = block.runCount;
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(cacheFile, "r")) {
+            // the mapped buffer remains valid after the file has been closed
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, block.offset, (4L + block.scoreBytes) * n);
+        }
+        int[] coordinates = new int[n];
+        buffer.asIntBuffer().get(coordinates);
+        int[] scores = new int[n];
+        buffer.position(4 * n);
+        if (block.scoreBytes == 1) {
+            for (int i = 0; i < n; i++) {
+                scores[i] = (buffer.get() & 0xFF) - 1;
+            }
+        } else {
+            buffer.asIntBuffer().get(scores);
+        }
+        return new AlignabilityMap(chromosome, coordinates, scores, kmerSize);
+    }
+
+    /**
+     * Iterate over the maps of the chromosomes that are accepted by the filter. The blocks of the other chromosomes
+     * are not read at all, so that small designs do not pay for the chromosomes (and unplaced contigs) without genes.
+     * @param kmerSize k-mer size of the alignability map
+     * @param chromosomeFilter returns true for the names of the chromosomes that are needed
+     * @return iterator over the alignability maps of the chromosomes, in the order of the bedGraph file
+     */
+    public Iterator<AlignabilityMap> iterator(int kmerSize, Predicate<String> chromosomeFilter) {
+        Iterator<String> chromosomes = blocks.keySet().stream().filter(chromosomeFilter).iterator();
+        return new Iterator<AlignabilityMap>() {
+            @Override
+            public boolean hasNext() {
+                return chromosomes.hasNext();
+            }
+
+            @Override
+            public AlignabilityMap next() {
+                try {
+                    return getMap(chromosomes.next(), kmerSize);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Parse the bedGraph file and write the cache file. The data are first written to a temporary file that is then
+     * renamed, so that an interrupted write does not leave an incomplete cache. Only one chromosome is held in memory
+     * at any time.
+     */
+    private static void write(File cacheFile, File bedGraph, File chromInfo) throws IOException {
+        File tmp = new File(cacheFile.getPath() + ".tmp");
+        Map<String, Block> blockMap = new LinkedHashMap<>();
+        long offset = HEADER_SIZE;
+        // the k-mer size is not stored in the cache, it is only passed on to the maps
+        AlignabilityMapIterator iterator = new AlignabilityMapIterator(bedGraph.getPath(), chromInfo.getPath(), 0);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(bedGraph.length());
+            out.writeLong(bedGraph.lastModified());
+            out.writeLong(chromInfo.length());
+            out.writeLong(chromInfo.lastModified());
+            out.writeLong(0L); // offset of the index, which is written at the end
+            while (iterator.hasNext()) {
+                AlignabilityMap map = iterator.next();
+                if (map == null) {
+                    throw new IOException("Could not parse alignability map " + bedGraph.getAbsolutePath());
+                }
+                if (blockMap.containsKey(map.getChromName())) {
+                    // the bedGraph file is not sorted by chromosome; keep the first block as the iterator would
+                    logger.warn("Alignability map " + bedGraph.getName() + " has several blocks for " + map.getChromName());
+                    continue;
+                }
+                int n = map.getSize();
+                int scoreBytes = 1;
+                for (int i = 0; i < n; i++) {
+                    out.writeInt(map.getRunStart(i));
+                    if (map.getRunScore(i) < -1 || map.getRunScore(i) > MAX_BYTE_SCORE) {
+                        scoreBytes = 4;
+                    }
+                }
+                for (int i = 0; i < n; i++) {
+                    if (scoreBytes == 1) {
+                        out.writeByte(map.getRunScore(i) + 1);
+                    } else {
+                        out.writeInt(map.getRunScore(i));
+                    }
+                }
+                blockMap.put(map.getChromName(), new Block(offset, n, scoreBytes));
+                offset += (4L + scoreBytes) * n;
+            }
+            out.writeInt(blockMap.size());
+            for (Map.Entry<String, Block> entry : blockMap.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().offset);
+                out.writeInt(entry.getValue().runCount);
+                out.writeByte(entry.getValue().scoreBytes);
+            }
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+            raf.seek(HEADER_SIZE - 8);
+            raf.writeLong(offset);
+        }
+        Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return the cache with the index of the file, or null if the file does not belong to the current version of the
+     * bedGraph and the chromInfo file.
+     */
+    private static AlignabilityMapCache read(File cacheFile, File bedGraph, File chromInfo) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(cacheFile, "r")) {
+            if (raf.length() < HEADER_SIZE) return null;
+            if (raf.readInt() != MAGIC || raf.readInt() != VERSION) return null;
+            if (raf.readLong() != bedGraph.length() || raf.readLong() != bedGraph.lastModified()) return null;
+            if (raf.readLong() != chromInfo.length() || raf.readLong() != chromInfo.lastModified()) return null;
+            long indexOffset = raf.readLong();
+            if (indexOffset < HEADER_SIZE || indexOffset > raf.length()) {
+                throw new IOException("Invalid index offset " + indexOffset);
+            }
+            byte[] index = new byte[(int) (raf.length() - indexOffset)];
+            raf.seek(indexOffset);
+            raf.readFully(index);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(index));
+            int n_chromosomes = in.readInt();
+            Map<String, Block> blockMap = new LinkedHashMap<>();
+            for (int c = 0; c < n_chromosomes; c++) {
+                String name = in.readUTF();
+                long offset = in.readLong();
+                int runCount = in.readInt();
+                int scoreBytes = in.readByte();
+                blockMap.put(name, new Block(offset, runCount, scoreBytes));
+            }
+            return new AlignabilityMapCache(cacheFile, blockMap);
+        }
+    }
+}
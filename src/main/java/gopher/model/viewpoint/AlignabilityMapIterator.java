@@ -1,6 +1,8 @@
 package gopher.model.viewpoint;
 
 import com.google.common.collect.ImmutableMap;
+import gopher.io.PipelinedGzipInputStream;
+import gopher.io.TabTokenizer;
 import org.apache.log4j.Logger;
 
 import java.io.*;
@@ -16,15 +18,15 @@ public class AlignabilityMapIterator implements Iterator<AlignabilityMap> {
     private static Logger logger = Logger.getLogger(AlignabilityMapIterator.class.getName());
 
     /**
-     * The reader that is being read.
+     * The tokenizer for the lines of the bedGraph file.
      */
-    private final BufferedReader bufferedReader;
+    private final TabTokenizer tokenizer;
     /**
      * This variable helps to keep track of when are finished with a chromosome and need to go to the next one.
      */
     private String prevChr = "chr0";
 
-    private Integer prevEnd = 0;
+    private int prevEnd = 0;
     /**
      * The first and last positions of the chromosomes often consists of N's. For regions consisting of N's
      * there are no alignability scores. The parser for the bedgraph file will fill those gaps with
@@ -62,10 +64,9 @@ public class AlignabilityMapIterator implements Iterator<AlignabilityMap> {
     public AlignabilityMapIterator(String alignabilityMapPath, String chromInfoPath, int kmerSize) throws IOException {
         parseChromInfoFile(chromInfoPath);
         logger.debug("About to parse bedgraph file " + alignabilityMapPath + "...");
-        InputStream fileStream = new FileInputStream(alignabilityMapPath);
-        InputStream gzipStream = new GZIPInputStream(fileStream);
-        Reader decoder = new InputStreamReader(gzipStream);
-        this.bufferedReader = new BufferedReader(decoder);
+        // the bedGraph file is inflated on a separate thread while it is being parsed
+        InputStream gzipStream = new PipelinedGzipInputStream(alignabilityMapPath);
+        this.tokenizer = new TabTokenizer(gzipStream);
         ready = true;
         this.scoreList = new ArrayList<>();
         this.coordinateList = new ArrayList<>();
@@ -82,16 +83,12 @@ public class AlignabilityMapIterator implements Iterator<AlignabilityMap> {
         ImmutableMap.Builder<String, Integer> builder = new ImmutableMap.Builder<>();
         try (InputStream fileStream = new FileInputStream(chromInfoPathIncludingFileName);
                 InputStream gzipStream = new GZIPInputStream(fileStream);
-                Reader decoder = new InputStreamReader(gzipStream);
-                BufferedReader br = new BufferedReader(decoder) ) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String A[] = line.split("\t");
-                String chromosome = A[0];
-                Integer length = Integer.parseInt(A[1]);
-                builder.put(chromosome, length);
+                TabTokenizer tokens = new TabTokenizer(gzipStream) ) {
+            while (tokens.nextLine()) {
+                if (tokens.isEmptyLine()) continue;
+                builder.put(tokens.getString(0), tokens.getInt(1));
             }
-            // note: all four resources closed automatically
+            // note: all three resources closed automatically
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -100,35 +97,29 @@ public class AlignabilityMapIterator implements Iterator<AlignabilityMap> {
 
 
     /**
-     * This checks if {@link #bufferedReader} is null -- if so, we are finished and there are no more Chromosome2AlignabilityMap objects.
+     * The last Chromosome2AlignabilityMap object is returned when the end of the file has been reached, afterwards
+     * {@link #ready} is false.
      */
     @Override
     public boolean hasNext() {
-        if (ready) return true;
-        try {
-            return this.bufferedReader.ready();
-        } catch (Exception e) {
-            return false;
-        }
+        return ready;
     }
 
 
     @Override
     public AlignabilityMap next() {
-        String line;
-        String A[];
         String chromosome;
-        Integer startPos;
-        Integer endPos;
-        Integer alignabilityScore;
+        int startPos;
+        int endPos;
+        int alignabilityScore;
         try {
             // This will be the first line for each chromosome, but may
-            while ((line = this.bufferedReader.readLine()) != null) {
-                A = line.split("\t");
-                chromosome = A[0];
-                startPos = Integer.parseInt(A[1]) + 1; // start coordinates of the bedGraph format are 0-based
-                endPos = Integer.parseInt(A[2]);     // end coordinates of the bedGraph format are 1-based
-                alignabilityScore = (int) Math.round(1.0 / Double.parseDouble(A[3]));
+            while (this.tokenizer.nextLine()) {
+                // the String for the chromosome is only created for the first line of each chromosome
+                chromosome = tokenizer.fieldEquals(0, prevChr) ? prevChr : tokenizer.getString(0);
+                startPos = tokenizer.getInt(1) + 1; // start coordinates of the bedGraph format are 0-based
+                endPos = tokenizer.getInt(2);     // end coordinates of the bedGraph format are 1-based
+                alignabilityScore = (int) Math.round(1.0 / tokenizer.getDouble(3));
                 int dist = startPos - prevEnd;
                 if (prevChr.equals("chr0")) { // only the case for the version first line of the file.
                     if (startPos != 1) {
@@ -198,6 +189,7 @@ public class AlignabilityMapIterator implements Iterator<AlignabilityMap> {
             }
             currentArrayPair = new AlignabilityMap(prevChr, coordinateList, scoreList, this.kmerSize);
             ready = false;
+            tokenizer.close();
             return currentArrayPair;
 
         } catch (IOException e) {
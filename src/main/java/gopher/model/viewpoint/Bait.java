@@ -1,10 +1,8 @@
 package gopher.model.viewpoint;
 
-import htsjdk.samtools.reference.IndexedFastaSequenceFile;
 import org.apache.log4j.Logger;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 
 /**
  * This class represents a bait or probe sequence that used for enrichment. The efficiency of a bait depends on
@@ -47,13 +45,25 @@ public class Bait implements Serializable {
 //        this.setRepeatContent(fastaReader);
 //    }
 
-    public Bait(String refID, Integer startPos, Integer endPos, IndexedFastaSequenceFile fastaReader, AlignabilityMap alignabilityMap) {
+    public Bait(String refID, Integer startPos, Integer endPos, ChromosomeSequence sequence, AlignabilityMap alignabilityMap) {
         this.refID = refID;
         this.startPos = startPos;
         this.endPos = endPos;
-        this.setGCContent(fastaReader);
+        this.setGCContent(sequence);
         this.setAlignabilityScore(alignabilityMap);
-        this.setRepeatContent(fastaReader);
+        this.setRepeatContent(sequence);
+    }
+
+    /**
+     * Create a bait whose properties have already been calculated (see {@link BaitWindowScanner}).
+     */
+    Bait(String refID, int startPos, int endPos, double GCcontent, double alignabilityScore, double repeatContent) {
+        this.refID = refID;
+        this.startPos = startPos;
+        this.endPos = endPos;
+        this.GCcontent = GCcontent;
+        this.averageKmeralignabilty = alignabilityScore;
+        this.repeatContent = repeatContent;
     }
 
 
@@ -88,38 +98,29 @@ public class Bait implements Serializable {
 
     /**
      * Calculate GC content of the bait.
-     * @param fastaReader FASTA Reader from HTSJDK
+     * @param sequence buffer with the bases of the chromosome
      */
-    private void setGCContent(IndexedFastaSequenceFile fastaReader) {
-        String subsequence = fastaReader.getSubsequenceAt(this.refID, this.startPos, this.endPos).getBaseString();
+    private void setGCContent(ChromosomeSequence sequence) {
         // count Gs and Cs
-        int GC = 0;
-        for (int i = 0; i < subsequence.length(); i++) {
-            switch (subsequence.charAt(i)) {
-                case 'G':
-                case 'g':
-                case 'C':
-                case 'c':
-                    GC++;
-            }
-        }
-        this.GCcontent = (double) GC / (double) subsequence.length();
+        int GC = sequence.countGC(this.startPos, this.endPos);
+        this.GCcontent = (double) GC / (double) (this.endPos - this.startPos + 1);
 
     }
 
 
     private void setAlignabilityScore(AlignabilityMap alignabilityMap) {
 
-        Integer kmerSize = alignabilityMap.getKmersize();
-        Double score = 0.0;
-        ArrayList<Integer> alignabilityScoreList = alignabilityMap.getScoreFromTo(startPos, endPos - kmerSize + 1);
-
-        for (Integer d : alignabilityScoreList) {
-            if(d==(-1.0)) {score=-1.0; break;} // probe contains Ns, which have an alignability of -1
-            score = score + d;
-
+        int kmerSize = alignabilityMap.getKmersize();
+        int fromPos = startPos;
+        int toPos = endPos - kmerSize + 1;
+        int scoreCount = Math.max(0, toPos - fromPos + 1);
+        double score;
+        if (alignabilityMap.containsNoScore(fromPos, toPos)) {
+            score = -1.0; // probe contains Ns, which have an alignability of -1
+        } else {
+            score = alignabilityMap.getScoreSum(fromPos, toPos);
         }
-        this.averageKmeralignabilty = score/alignabilityScoreList.size();
+        this.averageKmeralignabilty = score/scoreCount;
     }
 
 
@@ -127,18 +128,13 @@ public class Bait implements Serializable {
     /**
      * Calculate repeat content based on lower (repeat) and uppercase letters.
      *
-     * @param fastaReader
+     * @param sequence buffer with the bases of the chromosome
      */
-    private void setRepeatContent(IndexedFastaSequenceFile fastaReader) {
-
-        String subsequence = fastaReader.getSubsequenceAt(this.refID, this.startPos, this.endPos).getBaseString();
+    private void setRepeatContent(ChromosomeSequence sequence) {
 
         // count upper and lower case
-        int lowerCase = 0, upperCase = 0;
-        for (int i = 0; i < subsequence.length(); i++) {
-            if (Character.isLowerCase(subsequence.charAt(i))) lowerCase++;
-            if (Character.isUpperCase(subsequence.charAt(i))) upperCase++;
-        }
+        int lowerCase = sequence.countLowerCase(this.startPos, this.endPos);
+        int upperCase = sequence.countUpperCase(this.startPos, this.endPos);
         this.repeatContent = ((double) lowerCase / (lowerCase + (double) upperCase));
     }
 
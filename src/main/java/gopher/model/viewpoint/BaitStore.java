@@ -0,0 +1,134 @@
+package gopher.model.viewpoint;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Compact storage for the {@link Bait} objects of one chromosome. Genome-wide designs have millions of baits, and
+ * so the coordinates and the GC, repeat and alignability content of the baits are kept in primitive arrays (one
+ * column per property) instead of in one object per bait. {@link Segment} objects refer to their baits by the index
+ * in the store (see {@link BaitList}), and {@link Bait} objects are only created when a bait is accessed.
+ * <p>
+ * The GC, repeat and alignability content are stored in double precision, so that the baits of the store are exactly
+ * the same as the original ones (the content is compared with thresholds and used for the scores of the viewpoints).
+ * Baits are added concurrently by the threads that create the viewpoints of the chromosome, and so all access to
+ * the arrays is synchronized.</p>
+ */
+final class BaitStore implements Serializable {
+    /** serialization version ID */
+    static final long serialVersionUID = 1L;
+    private static final int INITIAL_CAPACITY = 1024;
+    /** The id of the chromosome of all baits in this store (there is only one copy of this String). */
+    private final String referenceSequenceID;
+    /** Number of baits in the store. */
+    private int size = 0;
+    private int[] startPos;
+    private int[] endPos;
+    private double[] gcContent;
+    private double[] repeatContent;
+    private double[] alignabilityScore;
+
+    /** @param referenceSequenceID the id of the chromosome, e.g., chr1 */
+    BaitStore(String referenceSequenceID) {
+        this.referenceSequenceID = referenceSequenceID;
+        this.startPos = new int[INITIAL_CAPACITY];
+        this.endPos = new int[INITIAL_CAPACITY];
+        this.gcContent = new double[INITIAL_CAPACITY];
+        this.repeatContent = new double[INITIAL_CAPACITY];
+        this.alignabilityScore = new double[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Add the baits to the store.
+     * @param baits baits on the chromosome of this store
+     * @return an immutable list that is backed by this store
+     */
+    List<Bait> compact(List<Bait> baits) {
+        int[] indices = new int[baits.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = add(baits.get(i));
+        }
+        return new BaitList(this, indices);
+    }
+
+    /**
+     * @param bait a bait on the chromosome of this store
+     * @return index of the bait in the store
+     */
+    synchronized int add(Bait bait) {
+        if (!referenceSequenceID.equals(bait.getRefId())) {
+            throw new IllegalArgumentException(String.format("Attempt to add bait on %s to store for %s",
+                    bait.getRefId(), referenceSequenceID));
+        }
+        if (size == startPos.length) {
+            resize(Math.max(INITIAL_CAPACITY, 2 * size));
+        }
+        startPos[size] = bait.getStartPos();
+        endPos[size] = bait.getEndPos();
+        gcContent[size] = bait.getGCContent();
+        repeatContent[size] = bait.getRepeatContent();
+        alignabilityScore[size] = bait.getAlignabilityScore();
+        return size++;
+    }
+
+    /** @return a new {@link Bait} object with the data of the bait at the given index. */
+    synchronized Bait getBait(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Bait index: " + index + ", size: " + size);
+        }
+        return new Bait(referenceSequenceID, startPos[index], endPos[index],
+                gcContent[index], alignabilityScore[index], repeatContent[index]);
+    }
+
+    /** @return number of baits in the store. */
+    synchronized int size() {
+        return size;
+    }
+
+    private void resize(int capacity) {
+        startPos = Arrays.copyOf(startPos, capacity);
+        endPos = Arrays.copyOf(endPos, capacity);
+        gcContent = Arrays.copyOf(gcContent, capacity);
+        repeatContent = Arrays.copyOf(repeatContent, capacity);
+        alignabilityScore = Arrays.copyOf(alignabilityScore, capacity);
+    }
+
+    /** Do not write the unused capacity of the arrays. */
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        if (size < startPos.length) {
+            resize(size);
+        }
+        out.defaultWriteObject();
+    }
+
+    /**
+     * Immutable list of baits of a {@link Segment} margin, which are stored in a {@link BaitStore}.
+     */
+    static final class BaitList extends AbstractList<Bait> implements RandomAccess, Serializable {
+        /** serialization version ID */
+        static final long serialVersionUID = 1L;
+        private final BaitStore store;
+        /** Indices of the baits in the {@link #store}. */
+        private final int[] indices;
+
+        private BaitList(BaitStore store, int[] indices) {
+            this.store = store;
+            this.indices = indices;
+        }
+
+        @Override
+        public Bait get(int i) {
+            return store.getBait(indices[i]);
+        }
+
+        @Override
+        public int size() {
+            return indices.length;
+        }
+    }
+}
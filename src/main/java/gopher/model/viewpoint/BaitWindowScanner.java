@@ -0,0 +1,133 @@
+package gopher.model.viewpoint;
+
+/**
+ * This class evaluates the candidate baits of a {@link Segment} margin by sliding a window of the bait size over the
+ * sequence. Adjacent candidates differ by only one base, and so the GC, repeat and alignability sums of the window are
+ * updated incrementally when the window is moved by one position to the left or right, and a {@link Bait} object is
+ * only created (see {@link #toBait()}) for windows that pass the usability thresholds.
+ * Coordinates are one-based and fully closed, as for {@link Bait}.
+ */
+class BaitWindowScanner {
+    /** The id of the reference sequence, e.g., chr1. */
+    private final String referenceSequenceID;
+    /** Buffer with the bases of the chromosome. */
+    private final ChromosomeSequence sequence;
+    /** Alignability map for the chromosome. */
+    private final AlignabilityMap alignabilityMap;
+    /** Length of the baits. */
+    private final int baitSize;
+    /** Number of k-mer alignability scores that overlap with a bait. */
+    private final int scoreCount;
+    /** Start position of the current window. */
+    private int startPos;
+    /** True once the window has been moved to a position for the first time. */
+    private boolean positioned = false;
+    /** Number of G and C bases in the current window. */
+    private int gc;
+    /** Number of lower case (repeat) bases in the current window. */
+    private int lowerCase;
+    /** Number of upper case bases in the current window. */
+    private int upperCase;
+    /** Sum of the k-mer alignability scores of the current window (k-mers without score count as -1). */
+    private long scoreSum;
+    /** Number of k-mers of the current window with a score of -1 (i.e., that contain Ns). */
+    private int unalignableCount;
+
+    BaitWindowScanner(String refID, ChromosomeSequence sequence, AlignabilityMap alignabilityMap, int baitSize) {
+        this.referenceSequenceID = refID;
+        this.sequence = sequence;
+        this.alignabilityMap = alignabilityMap;
+        this.baitSize = baitSize;
+        this.scoreCount = Math.max(0, baitSize - alignabilityMap.getKmersize() + 1);
+    }
+
+    /**
+     * Move the window to {@code [pos, pos+baitSize-1]}. If the window is moved by one base, only the bases and k-mers
+     * entering and leaving the window are taken into account, otherwise all sums are calculated for the new window.
+     * @param pos one-based start position of the window
+     */
+    void moveTo(int pos) {
+        if (positioned && pos == startPos + 1) {
+            removeBase(startPos);
+            addBase(pos + baitSize - 1);
+            if (scoreCount > 0) {
+                removeScore(startPos);
+                addScore(pos + scoreCount - 1);
+            }
+        } else if (positioned && pos == startPos - 1) {
+            removeBase(startPos + baitSize - 1);
+            addBase(pos);
+            if (scoreCount > 0) {
+                removeScore(startPos + scoreCount - 1);
+                addScore(pos);
+            }
+        } else if (!positioned || pos != startPos) {
+            reset(pos);
+        }
+        this.startPos = pos;
+        this.positioned = true;
+    }
+
+    private void reset(int pos) {
+        int end = pos + baitSize - 1;
+        this.gc = sequence.countGC(pos, end);
+        this.lowerCase = sequence.countLowerCase(pos, end);
+        this.upperCase = sequence.countUpperCase(pos, end);
+        this.scoreSum = alignabilityMap.getScoreSum(pos, pos + scoreCount - 1);
+        this.unalignableCount = alignabilityMap.getNoScoreCount(pos, pos + scoreCount - 1);
+    }
+
+    private void addBase(int pos) {
+        if (sequence.isGC(pos)) gc++;
+        if (sequence.isLowerCase(pos)) lowerCase++;
+        if (sequence.isUpperCase(pos)) upperCase++;
+    }
+
+    private void removeBase(int pos) {
+        if (sequence.isGC(pos)) gc--;
+        if (sequence.isLowerCase(pos)) lowerCase--;
+        if (sequence.isUpperCase(pos)) upperCase--;
+    }
+
+    private void addScore(int pos) {
+        int score = alignabilityMap.getScoreAt(pos);
+        if (score == -1) unalignableCount++;
+        scoreSum += score;
+    }
+
+    private void removeScore(int pos) {
+        int score = alignabilityMap.getScoreAt(pos);
+        if (score == -1) unalignableCount--;
+        scoreSum -= score;
+    }
+
+    /** @return GC content of the current window. */
+    double getGCContent() {
+        return (double) gc / (double) baitSize;
+    }
+
+    /** @return mean k-mer alignability of the current window, or -1/(number of k-mers) if a k-mer contains Ns. */
+    double getAlignabilityScore() {
+        if (unalignableCount > 0) return -1.0 / scoreCount;
+        return (double) scoreSum / scoreCount;
+    }
+
+    /** @return repeat content of the current window. */
+    double getRepeatContent() {
+        return ((double) lowerCase / (lowerCase + (double) upperCase));
+    }
+
+    /** @return true if the current window would be a usable bait (see {@link Bait#isUsable}). */
+    boolean isUsable(double minGCcontent, double maxGCcontent, double maxAlignabilityScore) {
+        double gcContent = getGCContent();
+        return (minGCcontent <= gcContent &&
+                gcContent <= maxGCcontent &&
+                getAlignabilityScore() <= maxAlignabilityScore);
+    }
+
+    /** @return a new {@link Bait} for the current window. */
+    Bait toBait() {
+        return new Bait(referenceSequenceID, startPos, startPos + baitSize - 1,
+                getGCContent(), getAlignabilityScore(), getRepeatContent());
+    }
+}
@@ -0,0 +1,308 @@
+package gopher.model.viewpoint;
+
+import gopher.io.SequenceSource;
+import gopher.model.digest.RestrictionSiteMatcher;
+import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An in-memory buffer with the bases of a reference sequence (usually an entire chromosome) that is loaded
+ * once per {@link ChromosomeGroup} and then shared by {@link SegmentFactory}, {@link Segment} and {@link Bait}.
+ * The bases are stored as raw bytes as they are found in the FASTA file, i.e., lower case letters are
+ * (soft-masked) repeats. All coordinates used by this class are one-based and fully closed, as for the
+ * HTSJDK {@link IndexedFastaSequenceFile}.
+ * <p>
+ * The buffer can also hold a subsequence of the reference sequence (see {@link #load(IndexedFastaSequenceFile, String, int, int)}),
+ * in which case only positions between {@link #getStartPos()} and {@link #getEndPos()} may be queried.</p>
+ * <p>
+ * When the buffer is created, we build cumulative counts of G/C, A/T, lower case (repeat), upper case and N bases.
+ * The counts are recorded every {@link #BLOCK_SIZE} bases (a full prefix sum for every base would need four times
+ * as much memory as the chromosome itself for each column), so that the content of any interval can be obtained with
+ * two array lookups and a scan of at most {@code BLOCK_SIZE} bases, independent of the length of the interval.</p>
+ */
+public class ChromosomeSequence {
+    /** The id of the reference sequence, e.g., chr1. */
+    private final String referenceSequenceID;
+    /** The bases of the reference sequence (or of the subsequence starting at {@link #startPos}). */
+    private final byte[] bases;
+    /** One-based position of the first element of {@link #bases} on the reference sequence. */
+    private final int startPos;
+    /** The cumulative counts are recorded at every BLOCK_SIZE-th base. */
+    private static final int BLOCK_SIZE = 64;
+    /* Columns of the cumulative count table {@link #cumulativeCounts}. */
+    private static final int GC = 0;
+    private static final int AT = 1;
+    private static final int LOWER_CASE = 2;
+    private static final int UPPER_CASE = 3;
+    private static final int N = 4;
+    private static final int N_COLUMNS = 5;
+    /** Key: a base (as unsigned byte), value: bit mask with the columns that are incremented by the base. */
+    private static final int[] BASE_FLAGS = new int[256];
+    static {
+        for (char c = 'A'; c <= 'Z'; c++) {
+            BASE_FLAGS[c] |= 1 << UPPER_CASE;
+            BASE_FLAGS[Character.toLowerCase(c)] |= 1 << LOWER_CASE;
+        }
+        for (char c : new char[]{'G', 'g', 'C', 'c'}) BASE_FLAGS[c] |= 1 << GC;
+        for (char c : new char[]{'A', 'a', 'T', 't'}) BASE_FLAGS[c] |= 1 << AT;
+        BASE_FLAGS['N'] |= 1 << N;
+        BASE_FLAGS['n'] |= 1 << N;
+    }
+    /**
+     * Cumulative counts of the bases in {@code bases[0..k*BLOCK_SIZE)}, stored for column c at index
+     * {@code k*N_COLUMNS+c}.
+     */
+    private final int[] cumulativeCounts;
+
+    ChromosomeSequence(String refID, byte[] bases, int startPos) {
+        this.referenceSequenceID = refID;
+        this.bases = bases;
+        this.startPos = startPos;
+        this.cumulativeCounts = buildCumulativeCounts(bases);
+    }
+
+    private static int[] buildCumulativeCounts(byte[] bases) {
+        int nBlocks = bases.length / BLOCK_SIZE;
+        int[] cumulative = new int[(nBlocks + 1) * N_COLUMNS];
+        int[] running = new int[N_COLUMNS];
+        for (int k = 0; k < nBlocks; k++) {
+            int base = k * BLOCK_SIZE;
+            for (int i = base; i < base + BLOCK_SIZE; i++) {
+                int flags = BASE_FLAGS[bases[i] & 0xFF];
+                if (flags == 0) continue;
+                for (int c = 0; c < N_COLUMNS; c++) {
+                    running[c] += (flags >>> c) & 1;
+                }
+            }
+            System.arraycopy(running, 0, cumulative, (k + 1) * N_COLUMNS, N_COLUMNS);
+        }
+        return cumulative;
+    }
+
+    /**
+     * Read the entire sequence of a chromosome into memory.
+     * @param fastaReader HTSJDK reader for the indexed genome FASTA file
+     * @param refID name of the chromosome, e.g., chr1
+     * @return buffer with all bases of the chromosome
+     */
+    public static ChromosomeSequence load(IndexedFastaSequenceFile fastaReader, String refID) {
+        ReferenceSequence refseq = fastaReader.getSequence(refID);
+        return new ChromosomeSequence(refID, refseq.getBases(), 1);
+    }
+
+    /**
+     * Read the subsequence {@code [start,end]} (one-based, fully closed) of a chromosome into memory.
+     * @param fastaReader HTSJDK reader for the indexed genome FASTA file
+     * @param refID name of the chromosome, e.g., chr1
+     * @param start one-based start position
+     * @param end one-based end position (inclusive)
+     * @return buffer with the bases of the subsequence
+     */
+    public static ChromosomeSequence load(IndexedFastaSequenceFile fastaReader, String refID, int start, int end) {
+        ReferenceSequence refseq = fastaReader.getSubsequenceAt(refID, start, end);
+        return new ChromosomeSequence(refID, refseq.getBases(), start);
+    }
+
+    /**
+     * Read the entire sequence of a chromosome into memory.
+     * @param source the sequences of the genome
+     * @param refID name of the chromosome, e.g., chr1
+     * @return buffer with all bases of the chromosome
+     */
+    public static ChromosomeSequence load(SequenceSource source, String refID) {
+        return new ChromosomeSequence(refID, source.getSequence(refID), 1);
+    }
+
+    /**
+     * Read the subsequence {@code [start,end]} (one-based, fully closed) of a chromosome into memory.
+     * @param source the sequences of the genome
+     * @param refID name of the chromosome, e.g., chr1
+     * @param start one-based start position
+     * @param end one-based end position (inclusive)
+     * @return buffer with the bases of the subsequence
+     */
+    public static ChromosomeSequence load(SequenceSource source, String refID, int start, int end) {
+        return new ChromosomeSequence(refID, source.getSubsequence(refID, start, end), start);
+    }
+
+    public String getReferenceSequenceID() {
+        return referenceSequenceID;
+    }
+
+    /** @return the number of bases held by this buffer (for a whole chromosome, this is the chromosome length). */
+    public int length() {
+        return bases.length;
+    }
+
+    /** @return one-based position of the first base held by this buffer. */
+    public int getStartPos() {
+        return startPos;
+    }
+
+    /** @return one-based position of the last base held by this buffer. */
+    public int getEndPos() {
+        return startPos + bases.length - 1;
+    }
+
+    /**
+     * Copy the bases of {@code [start,end]} (one-based, inclusive) into a buffer of their own, so that an object that
+     * only needs this window does not keep the buffer of the entire chromosome alive.
+     * @param start one-based start position (not smaller than {@link #getStartPos()})
+     * @param end one-based end position (not larger than {@link #getEndPos()}; may be {@code start-1} for an empty window)
+     * @return buffer with the bases of the window (this buffer if it holds exactly the window)
+     */
+    ChromosomeSequence window(int start, int end) {
+        if (start == startPos && end == getEndPos()) {
+            return this;
+        }
+        int from = start - startPos;
+        int to = Math.max(from, end - startPos + 1);
+        return new ChromosomeSequence(referenceSequenceID, Arrays.copyOfRange(bases, from, to), start);
+    }
+
+    /**
+     * @param pos one-based position on the reference sequence
+     * @return the base at this position as found in the FASTA file (lower case for repeats)
+     */
+    public byte getBase(int pos) {
+        return bases[pos - startPos];
+    }
+
+    /** @return number of G and C bases (upper or lower case) in {@code [start,end]} (one-based, inclusive). */
+    public int countGC(int start, int end) {
+        return count(GC, start, end);
+    }
+
+    /** @return number of A and T bases (upper or lower case) in {@code [start,end]} (one-based, inclusive). */
+    public int countAT(int start, int end) {
+        return count(AT, start, end);
+    }
+
+    /** @return number of lower case (repeat-masked) bases in {@code [start,end]} (one-based, inclusive). */
+    public int countLowerCase(int start, int end) {
+        return count(LOWER_CASE, start, end);
+    }
+
+    /** @return number of upper case bases in {@code [start,end]} (one-based, inclusive). */
+    public int countUpperCase(int start, int end) {
+        return count(UPPER_CASE, start, end);
+    }
+
+    /** @return number of N bases (upper or lower case) in {@code [start,end]} (one-based, inclusive). */
+    public int countN(int start, int end) {
+        return count(N, start, end);
+    }
+
+    /** @return true if the base at the one-based position {@code pos} is a G or C (upper or lower case). */
+    boolean isGC(int pos) {
+        return is(GC, pos);
+    }
+
+    /** @return true if the base at the one-based position {@code pos} is lower case (repeat-masked). */
+    boolean isLowerCase(int pos) {
+        return is(LOWER_CASE, pos);
+    }
+
+    /** @return true if the base at the one-based position {@code pos} is upper case. */
+    boolean isUpperCase(int pos) {
+        return is(UPPER_CASE, pos);
+    }
+
+    private boolean is(int column, int pos) {
+        return ((BASE_FLAGS[bases[pos - startPos] & 0xFF] >>> column) & 1) != 0;
+    }
+
+    private int count(int column, int start, int end) {
+        if (end < start) return 0;
+        return countBefore(column, end - startPos + 1) - countBefore(column, start - startPos);
+    }
+
+    /** @return number of bases of the given column in {@code bases[0..i)}. */
+    private int countBefore(int column, int i) {
+        int block = i / BLOCK_SIZE;
+        int next = (block + 1) * BLOCK_SIZE;
+        if (next - i < BLOCK_SIZE / 2 && next <= bases.length) {
+            // closer to the next checkpoint, count backwards from there
+            int n = cumulativeCounts[(block + 1) * N_COLUMNS + column];
+            for (int j = i; j < next; j++) {
+                n -= (BASE_FLAGS[bases[j] & 0xFF] >>> column) & 1;
+            }
+            return n;
+        }
+        int n = cumulativeCounts[block * N_COLUMNS + column];
+        for (int j = block * BLOCK_SIZE; j < i; j++) {
+            n += (BASE_FLAGS[bases[j] & 0xFF] >>> column) & 1;
+        }
+        return n;
+    }
+
+    /**
+     * Search {@code [start,end]} for restriction sites; the positions passed to the visitor are one-based positions
+     * on the reference sequence.
+     * @param matcher matcher for the sites of the chosen enzymes
+     * @param start one-based start position
+     * @param end one-based end position (inclusive)
+     * @param visitor receives the sites that lie completely within {@code [start,end]}
+     */
+    void findRestrictionSites(RestrictionSiteMatcher matcher, int start, int end, RestrictionSiteMatcher.SiteVisitor visitor) {
+        matcher.scan(bases, start - startPos, end - startPos + 1, startPos, visitor);
+    }
+
+    /**
+     * Note that no copy of the bases is made, i.e., this can be used to search for patterns without creating
+     * a String for the region.
+     * @param start one-based start position
+     * @param end one-based end position (inclusive)
+     * @return a read-only view of the bases in {@code [start,end]}
+     */
+    CharSequence subSequence(int start, int end) {
+        return new ByteCharSequence(bases, start - startPos, end - start + 1);
+    }
+
+    /**
+     * @param start one-based start position
+     * @param end one-based end position (inclusive)
+     * @return the bases in {@code [start,end]} as a String
+     */
+    public String getSubsequence(int start, int end) {
+        return subSequence(start, end).toString();
+    }
+
+    /**
+     * A {@link CharSequence} view of a range of a byte array.
+     */
+    private static final class ByteCharSequence implements CharSequence {
+        private final byte[] bytes;
+        private final int offset;
+        private final int len;
+
+        ByteCharSequence(byte[] bytes, int offset, int len) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.len = len;
+        }
+
+        @Override
+        public int length() {
+            return len;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) bytes[offset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new ByteCharSequence(bytes, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, offset, len, StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package gopher.model.viewpoint;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import gopher.model.RestrictionEnzyme;
+import gopher.model.digest.CutSiteIndex;
+import gopher.model.digest.RestrictionSiteMatcher;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settings that are the same for all viewpoints of a panel design, i.e., the restriction enzymes chosen
+ * by the user and (optionally) the genome-wide index of their restriction sites. Objects of this class are immutable and can therefore be shared by viewpoints that are created
+ * concurrently (see {@link ViewPointCreationTask}). They are passed to the {@link ViewPoint.Builder}.
+ */
+final class DesignContext {
+    /** List of restriction enzymes chosen by the user. */
+    private final List<RestrictionEnzyme> chosenEnzymes;
+    /** Key: a site without the caret symbol, such as GATC; value: the corresponding {@link RestrictionEnzyme}. */
+    private final ImmutableMap<String, RestrictionEnzyme> restrictionEnzymeMap;
+    /** Matcher for the sites of the chosen enzymes, built once for the whole design. */
+    private final RestrictionSiteMatcher matcher;
+    /** Index of the restriction sites of the chosen enzymes (null if the sites are to be searched in the sequence). */
+    private final CutSiteIndex cutSiteIndex;
+
+    DesignContext(List<RestrictionEnzyme> chosenEnzymes) {
+        this.chosenEnzymes = ImmutableList.copyOf(chosenEnzymes);
+        this.matcher = new RestrictionSiteMatcher(this.chosenEnzymes);
+        this.cutSiteIndex = null;
+        this.restrictionEnzymeMap = createRestrictionEnzymeMap(this.chosenEnzymes);
+    }
+
+    private DesignContext(DesignContext context, CutSiteIndex cutSiteIndex) {
+        this.chosenEnzymes = context.chosenEnzymes;
+        this.matcher = context.matcher;
+        this.cutSiteIndex = cutSiteIndex;
+        this.restrictionEnzymeMap = context.restrictionEnzymeMap;
+    }
+
+    private static ImmutableMap<String, RestrictionEnzyme> createRestrictionEnzymeMap(List<RestrictionEnzyme> chosenEnzymes) {
+        Map<String, RestrictionEnzyme> siteMap = new HashMap<>();
+        for (RestrictionEnzyme re : chosenEnzymes) {
+            siteMap.put(re.getPlainSite(), re);
+        }
+        return ImmutableMap.copyOf(siteMap);
+    }
+
+    /** @return list of restriction enzymes chosen by the user. */
+    List<RestrictionEnzyme> getChosenEnzymes() {
+        return chosenEnzymes;
+    }
+
+    /**
+     * @param index index of the restriction sites of the chosen enzymes
+     * @return a new context with the same enzymes that uses the index to find cutting positions
+     */
+    DesignContext withCutSiteIndex(CutSiteIndex index) {
+        return new DesignContext(this, index);
+    }
+
+    /**
+     * Create a {@link SegmentFactory} for the chosen enzymes. If there is a {@link CutSiteIndex}, the cutting
+     * positions are looked up in the index, otherwise they are searched for in the sequence.
+     */
+    SegmentFactory createSegmentFactory(String referenceSequenceID,
+                                        int genomicPos,
+                                        ChromosomeSequence sequence,
+                                        int chromosomeLength,
+                                        int maxDistToGenomicPosUp,
+                                        int maxDistToGenomicPosDown) {
+        if (cutSiteIndex != null) {
+            return new SegmentFactory(referenceSequenceID, genomicPos, cutSiteIndex, chromosomeLength,
+                    maxDistToGenomicPosUp, maxDistToGenomicPosDown, chosenEnzymes);
+        }
+        return new SegmentFactory(referenceSequenceID, genomicPos, sequence, chromosomeLength,
+                maxDistToGenomicPosUp, maxDistToGenomicPosDown, matcher);
+    }
+
+    /**
+     * @param plainSite a site without the caret symbol, such as GATC
+     * @return the corresponding {@link RestrictionEnzyme}, or null if no chosen enzyme has this site
+     */
+    RestrictionEnzyme getRestrictionEnzyme(String plainSite) {
+        return restrictionEnzymeMap.get(plainSite);
+    }
+}
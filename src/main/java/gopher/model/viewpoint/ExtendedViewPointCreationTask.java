@@ -1,17 +1,15 @@
 package gopher.model.viewpoint;
 
 import gopher.exception.GopherException;
-import gopher.model.Default;
+import gopher.io.SequenceSource;
 import gopher.model.GopherGene;
 import gopher.model.Model;
-import htsjdk.samtools.reference.IndexedFastaSequenceFile;
 import javafx.application.Platform;
 import javafx.beans.property.StringProperty;
 import org.apache.log4j.Logger;
 
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -27,21 +25,22 @@ public class ExtendedViewPointCreationTask extends ViewPointCreationTask {
 
     /**
      * The constructor sets up the Task of creating ViewPoints. It sets the chosen enzymes from the Model
-     * Since we use the same enzymes for all ViewPoints; therefore, ViewPoint .chosenEnzymes and
-     * CuttingPositionMap.restrictionEnzymeMap are static class-wide variables that get set with the corresponding
-     * values for the enzymes.
+     * Since we use the same enzymes for all ViewPoints, they are stored in an immutable {@link DesignContext}
+     * that is passed to the builder of each ViewPoint.
      *  @param model Model of the panel design project
      */
     public ExtendedViewPointCreationTask(Model model) {
         super(model);
     }
 
-    private void calculateViewPoints(GopherGene gopherGene,
-                                     String referenceSequenceID,
-                                     IndexedFastaSequenceFile fastaReader,
-                                     AlignabilityMap c2aMap,
-                                     int chromLen) {
-        int chromosomeLength = fastaReader.getSequence(referenceSequenceID).length();
+    @Override
+    protected List<ViewPoint> calculateViewPoints(GopherGene gopherGene,
+                                                  String referenceSequenceID,
+                                                  ChromosomeSequence sequence,
+                                                  SegmentCache segmentCache,
+                                                  AlignabilityMap c2aMap,
+                                                  int chromLen) {
+        List<ViewPoint> viewpoints = new ArrayList<>();
         List<Integer> gPosList = gopherGene.getTSSlist();
         if (! gopherGene.isForward()) {
             Collections.reverse(gPosList);
@@ -51,14 +50,15 @@ public class ExtendedViewPointCreationTask extends ViewPointCreationTask {
         // Note we do this differently according to strand.
         for (Integer gPos : gPosList) {
             if (isCancelled()) // true if user has cancelled the task
-                return;
+                break;
             ViewPoint vp = new ViewPoint.Builder(referenceSequenceID, gPos,chromLen).
                     targetName(gopherGene.getGeneSymbol()).
                     upstreamLength(model.getSizeUp()).
                     downstreamLength(model.getSizeDown()).
                     maximumGcContent(model.getMaxGCcontent()).
                     minimumGcContent(model.getMinGCcontent()).
-                    fastaReader(fastaReader).
+                    sequence(sequence).
+                    segmentCache(segmentCache).
                     isForwardStrand(gopherGene.isForward()).
                     minimumFragmentSize(model.getMinFragSize()).
                     maximumRepeatContent(model.getMaxRepeatContent()).
@@ -67,13 +67,14 @@ public class ExtendedViewPointCreationTask extends ViewPointCreationTask {
                     accessionNr(gopherGene.getRefSeqID()).
                     c2alignabilityMap(c2aMap).
                     model(this.model).
+                    designContext(designContext).
                     build();
             vp.setPromoterNumber(++n,gPosList.size());
-            updateProgress(i++, total); /* this will update the progress bar */
-            updateMessage(String.format("[%d/%d] Creating view point for %s", i, total, vp.toString()));
+            updateProgressForNextViewPoint(vp.toString());
             vp.generateViewpointExtendedApproach(model.getSizeUp(), model.getSizeDown(),model);
-            viewpointlist.add(vp);
+            viewpoints.add(vp);
         }
+        return viewpoints;
     }
 
 
@@ -84,60 +85,22 @@ public class ExtendedViewPointCreationTask extends ViewPointCreationTask {
      */
     protected Void call() throws GopherException {
         updateTitle("Creating viewpoints using 'extended' approach");
-        if (ViewPoint.chosenEnzymes == null) {
+        if (designContext == null) {
             logger.error("Attempt to start ViewPoint creation with chosenEnzymes=null");
             throw new GopherException("Attempt to start ViewPoint creation thread with null chosenEnzymes");
         }
         this.total = getTotalGeneCount();
-        this.i = 0;
-        String faipath = this.model.getIndexedGenomeFastaIndexFile();
-        String fastapath = this.model.getGenomeFastaFile();
-        if (faipath == null) {
-            logger.error("Could not retrieve faidx file for " + fastapath);
-            throw new GopherException("Could not retrieve faidx file for " + fastapath);
+        try (SequenceSource source = openSequenceSource()) {
+            double meanLen = getEstimatedMeanRestrictionFragmentLength(source);
+            model.setEstAvgRestFragLen(meanLen);
+            model.setNormalDistributionsExtended();
+        } catch (IOException e) {
+            throw new GopherException(String.format("Could not read genome fasta file [%s]",e.getMessage()));
         }
-        IndexedFastaSequenceFile fastaReader;
-        try {
-            fastaReader =new IndexedFastaSequenceFile(new File(fastapath));
-        } catch (FileNotFoundException fnfe) {
-            throw new GopherException(String.format("Could not find genome fasta file [%s]",fnfe.getMessage()));
+        loadCutSiteIndex();
+        if (!createViewPointsForAllChromosomes()) {
+            return null; // cancelled or interrupted, keep the viewpoints of the model
         }
-
-        double meanLen = getEstimatedMeanRestrictionFragmentLength(fastaReader);
-        model.setEstAvgRestFragLen(meanLen);
-        model.setNormalDistributionsExtended();
-        String chromInfoPath=model.getChromInfoPathIncludingFileNameGz();
-        String alignabilitMapPath=model.getAlignabilityMapPathIncludingFileNameGz();
-        int kmerSize=Default.KMER_SIZE;
-
-        try {
-        AlignabilityMapIterator apiterator = new AlignabilityMapIterator(alignabilitMapPath,chromInfoPath, kmerSize);
-        logger.trace("About to start iteration in new function");
-
-        while (apiterator.hasNext()) {
-            if (isCancelled()) // true if user has cancelled the task
-                return null;
-            AlignabilityMap apair = apiterator.next();
-            String referenceSequenceID = apair.getChromName();
-            if (! chromosomes.containsKey(referenceSequenceID)) {
-                continue; // skip if we have no gene on this chromosome
-            }
-            ChromosomeGroup group = chromosomes.get(referenceSequenceID);
-            if (group==null) {
-                logger.error("group is null while searching for \"" + referenceSequenceID +"\"");
-                for (ChromosomeGroup g : chromosomes.values()) {
-                    logger.error(g.getReferenceSequenceID());
-                }
-            }
-            int chromosomeLen = fastaReader.getSequence(referenceSequenceID).length();
-            //for (GopherGene gene : group.getGenes()) {
-            group.getGenes().stream().forEach(gene -> calculateViewPoints(gene, referenceSequenceID, fastaReader, apair,chromosomeLen));
-        }
-
-
-    } catch (IOException e){
-        e.printStackTrace();
-    }
         logger.trace(String.format("Created %d extended viewpoints", viewpointlist.size()));
         this.model.setViewPoints(viewpointlist);
         return null;
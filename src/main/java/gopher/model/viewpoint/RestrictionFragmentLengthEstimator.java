@@ -0,0 +1,215 @@
+package gopher.model.viewpoint;
+
+import gopher.io.SequenceSource;
+import gopher.model.RestrictionEnzyme;
+import gopher.model.digest.RestrictionSiteMatcher;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Estimates the average length of the restriction fragments of the chosen enzymes in a genome. The estimate is stored
+ * in a cache file (a properties file in the Gopher directory) with the genome build and the sites of the enzymes as
+ * key, so that it only has to be calculated once.
+ * <p>
+ * If there is no cached value, the number of sites is counted in randomly chosen windows of {@link #WINDOW_SIZE}
+ * bases (only these windows are read from the FASTA file) until at least {@link #MIN_NUMBER_OF_CUTS} sites have been
+ * found. The mean length is estimated as the total length of the windows divided by the number of sites (a ratio
+ * estimator), and a 95% confidence interval is obtained with the delta method. Small genomes are scanned completely.
+ * As before, random and unplaced scaffolds (names with an underscore) and chrM are not considered.</p>
+ */
+class RestrictionFragmentLengthEstimator {
+    private static final Logger logger = Logger.getLogger(RestrictionFragmentLengthEstimator.class.getName());
+    /** Length of the windows that are sampled. */
+    static final int WINDOW_SIZE = 100_000;
+    /** Sampling stops once this number of restriction sites has been found... */
+    static final int MIN_NUMBER_OF_CUTS = 100_000;
+    /** ...or once this number of windows has been sampled. */
+    static final int MAX_NUMBER_OF_WINDOWS = 5_000;
+    /** Seed of the random number generator, so that the same estimate is obtained for the same genome. */
+    private static final long SEED = 42L;
+    /** Quantile of the standard normal distribution for a 95% confidence interval. */
+    private static final double Z_95 = 1.96;
+    /** Properties file with the cached estimates (null if there is no cache). */
+    private final File cacheFile;
+    private final int windowSize;
+    private final int minNumberOfCuts;
+    private final int maxNumberOfWindows;
+
+    /** Result of the estimation. */
+    static final class Estimate {
+        /** Estimated mean length of the restriction fragments. */
+        final double mean;
+        /** Lower bound of the 95% confidence interval. */
+        final double lower;
+        /** Upper bound of the 95% confidence interval. */
+        final double upper;
+        /** Number of restriction sites found in the sampled windows. */
+        final long numberOfCuts;
+        /** Total length of the sampled windows. */
+        final long sampledLength;
+
+        Estimate(double mean, double lower, double upper, long numberOfCuts, long sampledLength) {
+            this.mean = mean;
+            this.lower = lower;
+            this.upper = upper;
+            this.numberOfCuts = numberOfCuts;
+            this.sampledLength = sampledLength;
+        }
+    }
+
+    /** @param cacheFile properties file with the cached estimates (null if the estimates are not to be cached) */
+    RestrictionFragmentLengthEstimator(File cacheFile) {
+        this(cacheFile, WINDOW_SIZE, MIN_NUMBER_OF_CUTS, MAX_NUMBER_OF_WINDOWS);
+    }
+
+    RestrictionFragmentLengthEstimator(File cacheFile, int windowSize, int minNumberOfCuts, int maxNumberOfWindows) {
+        this.cacheFile = cacheFile;
+        this.windowSize = windowSize;
+        this.minNumberOfCuts = minNumberOfCuts;
+        this.maxNumberOfWindows = maxNumberOfWindows;
+    }
+
+    /**
+     * @param genomeBuild the genome build, e.g., hg19 (null if unknown, then the estimate is not cached)
+     * @param enzymes the restriction enzymes chosen by the user
+     * @param source the sequences of the genome
+     * @return the cached or newly estimated mean length of the restriction fragments
+     */
+    double getMeanFragmentLength(String genomeBuild, List<RestrictionEnzyme> enzymes, SequenceSource source) {
+        String key = genomeBuild == null ? null : getCacheKey(genomeBuild, enzymes);
+        Properties cache = readCache();
+        if (key != null && cache.containsKey(key)) {
+            try {
+                double mean = Double.parseDouble(cache.getProperty(key));
+                logger.trace(String.format("Using cached average length of restriction fragments (%s): %.1f", key, mean));
+                return mean;
+            } catch (NumberFormatException e) {
+                logger.warn(String.format("Ignoring invalid cached average length of restriction fragments (%s)", key));
+            }
+        }
+        Estimate estimate = estimate(source, new RestrictionSiteMatcher(enzymes));
+        logger.trace(String.format("Estimated average length of restriction fragments: %.1f (95%% CI %.1f-%.1f; %d cuts in %d bases)",
+                estimate.mean, estimate.lower, estimate.upper, estimate.numberOfCuts, estimate.sampledLength));
+        if (key != null && estimate.numberOfCuts > 0) {
+            cache.setProperty(key, String.valueOf(estimate.mean));
+            writeCache(cache);
+        }
+        return estimate.mean;
+    }
+
+    /** @return key of the cache, e.g., {@code hg19:A^AGCTT,^GATC}. */
+    static String getCacheKey(String genomeBuild, List<RestrictionEnzyme> enzymes) {
+        return genomeBuild + ":" + enzymes.stream().
+                map(RestrictionEnzyme::getSite).
+                sorted().
+                distinct().
+                collect(Collectors.joining(","));
+    }
+
+    private Properties readCache() {
+        Properties cache = new Properties();
+        if (cacheFile == null || !cacheFile.exists()) {
+            return cache;
+        }
+        try (InputStream in = new FileInputStream(cacheFile)) {
+            cache.load(in);
+        } catch (IOException e) {
+            logger.warn("Could not read " + cacheFile.getAbsolutePath() + ": " + e.getMessage());
+        }
+        return cache;
+    }
+
+    private void writeCache(Properties cache) {
+        if (cacheFile == null || cacheFile.getParentFile() == null || !cacheFile.getParentFile().isDirectory()) {
+            return;
+        }
+        try (OutputStream out = new FileOutputStream(cacheFile)) {
+            cache.store(out, "Average length of restriction fragments (key: genome build and restriction sites)");
+        } catch (IOException e) {
+            logger.warn("Could not write " + cacheFile.getAbsolutePath() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Estimate the mean length of the restriction fragments from randomly chosen windows (or from all sequences if
+     * the genome is small).
+     * @param source the sequences of the genome
+     * @param matcher matcher for the sites of the chosen enzymes
+     * @return the estimate with its confidence interval
+     */
+    Estimate estimate(SequenceSource source, RestrictionSiteMatcher matcher) {
+        List<String> contigs = new ArrayList<>();
+        long genomeLength = 0;
+        for (String name : source.getSequenceNames()) {
+            if (name.contains("_") || name.contains("chrM")) continue; // skip random chromosomes and chromosome M
+            contigs.add(name);
+            genomeLength += source.getSequenceLength(name);
+        }
+        // lengths and numbers of sites of the windows
+        List<long[]> windows = new ArrayList<>();
+        long totalCuts = 0;
+        if (genomeLength <= (long) windowSize * maxNumberOfWindows / 10) {
+            for (String contig : contigs) {
+                byte[] bases = source.getSequence(contig);
+                int cuts = matcher.countSites(bases);
+                windows.add(new long[]{bases.length, cuts});
+                totalCuts += cuts;
+            }
+            return createEstimate(windows, totalCuts, true);
+        }
+        long[] cumulativeLength = new long[contigs.size()];
+        long sum = 0;
+        for (int i = 0; i < contigs.size(); i++) {
+            sum += source.getSequenceLength(contigs.get(i));
+            cumulativeLength[i] = sum;
+        }
+        Random random = new Random(SEED);
+        while (totalCuts < minNumberOfCuts && windows.size() < maxNumberOfWindows) {
+            // choose a position uniformly from the genome, i.e., chromosomes are weighted by their length
+            long genomicPos = (long) (random.nextDouble() * genomeLength);
+            int c = 0;
+            while (cumulativeLength[c] <= genomicPos) c++;
+            String contig = contigs.get(c);
+            int contigLength = source.getSequenceLength(contig);
+            long contigStart = cumulativeLength[c] - contigLength;
+            int start = (int) (genomicPos - contigStart + 1); // one-based
+            int end = Math.min(start + windowSize - 1, contigLength);
+            start = Math.max(1, end - windowSize + 1);
+            byte[] bases = source.getSubsequence(contig, start, end);
+            int cuts = matcher.countSites(bases);
+            windows.add(new long[]{bases.length, cuts});
+            totalCuts += cuts;
+        }
+        return createEstimate(windows, totalCuts, false);
+    }
+
+    /**
+     * @param windows length and number of sites of each window
+     * @param totalCuts total number of sites
+     * @param complete true if the windows are all sequences of the genome (the estimate is then exact)
+     */
+    private static Estimate createEstimate(List<long[]> windows, long totalCuts, boolean complete) {
+        long totalLength = windows.stream().mapToLong(w -> w[0]).sum();
+        double mean = (double) totalLength / totalCuts;
+        int n = windows.size();
+        if (complete || n < 2 || totalCuts == 0) {
+            return new Estimate(mean, mean, mean, totalCuts, totalLength);
+        }
+        // delta method for the ratio estimator: var(mean) ~ s^2 / (n * meanCutsPerWindow^2),
+        // where s^2 is the sample variance of the residuals length - mean * cuts
+        double squaredResiduals = 0;
+        for (long[] w : windows) {
+            double residual = w[0] - mean * w[1];
+            squaredResiduals += residual * residual;
+        }
+        double meanCutsPerWindow = (double) totalCuts / n;
+        double standardError = Math.sqrt(squaredResiduals / (n - 1) / n) / meanCutsPerWindow;
+        return new Estimate(mean, mean - Z_95 * standardError, mean + Z_95 * standardError, totalCuts, totalLength);
+    }
+}
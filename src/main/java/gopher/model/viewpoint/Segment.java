@@ -7,12 +7,13 @@ import org.apache.log4j.Logger;
 import gopher.gui.popupdialog.PopupFactory;
 import gopher.model.IntPair;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
 
 /**
  * This class represents a restriction digest that is a member of a viewpoint.
@@ -61,13 +62,44 @@ public class Segment implements Serializable {
 
     private double GCcontentUp;
 
-    private final transient IndexedFastaSequenceFile fastaReader;
+    /** Bases used to calculate content and place baits. A Segment whose content is calculated on first access holds
+     * the buffer of the chromosome until then and drops it afterwards; other Segments keep a copy of their own window,
+     * because {@link #setUsableBaits} may still be called for them. */
+    private transient ChromosomeSequence sequence;
 
     private List<Bait> baitListUpStreamMargin;
     private List<Bait> baitListDownStreamMargin;
+    /** Data needed to calculate the content and baits of this Segment on first access (null once they have been
+     * calculated, and therefore also for deserialized Segments). See {@link #evaluate()}. */
+    private transient volatile PendingEvaluation pending;
+    /** True while {@link #evaluate()} is running, so that the getters used by {@link #setUsableBaits} do not recurse. */
+    private transient boolean evaluating;
+
+    /**
+     * The parameters for the lazy calculation of the GC and repeat content and of the usable baits of a Segment.
+     * Most Segments that are created for a viewpoint are trimmed, and so they only need their coordinates. The
+     * Segments that are kept are evaluated once all viewpoints of the chromosome have been created.
+     */
+    private static final class PendingEvaluation {
+        private final Model model;
+        private final AlignabilityMap alignabilityMap;
+        private final double maxAlignabilityScore;
+        /** If not null, the content and baits are copied from this Segment (see {@link SegmentCache}). */
+        private final Segment prototype;
+        /** If not null, the baits are moved to this store once they have been calculated. */
+        private BaitStore baitStore;
+
+        private PendingEvaluation(Model model, AlignabilityMap alignabilityMap, double maxAlignabilityScore, Segment prototype) {
+            this.model = model;
+            this.alignabilityMap = alignabilityMap;
+            this.maxAlignabilityScore = maxAlignabilityScore;
+            this.prototype = prototype;
+        }
+    }
 
 
     public String detailedReport() {
+        evaluate();
         return String.format("%s:%d-%d [len: %d] repeat-up:%.1f, down:%.1f  GC-up:%.1f, down:%.1f overlaps TSS: %s",
                 referenceSequenceID,
                 startPos,
@@ -94,11 +126,111 @@ public class Segment implements Serializable {
         this.endPos=builder.endPos;
         this.marginSize=builder.marginSize;
         this.selected=false; /* default */
-        this.fastaReader = builder.fastaReader;
         this.baitListDownStreamMargin=new ArrayList<>();
         this.baitListUpStreamMargin=new ArrayList<>();
-        calculateGCandRepeatContent(builder.fastaReader);
-        calculateRepeatAndGcContentMargins(builder.fastaReader);
+        if (builder.model!=null) {
+            // calculate content and baits on first access
+            this.sequence = builder.sequence;
+            this.pending=new PendingEvaluation(builder.model,builder.alignabilityMap,builder.maxAlignabilityScore,null);
+        } else {
+            this.sequence = builder.sequence.window(startPos,endPos);
+            calculateGCandRepeatContent();
+            calculateRepeatAndGcContentMargins();
+        }
+    }
+
+    /**
+     * Create a copy of a Segment that has the same coordinates, GC and repeat content and baits, but is not selected.
+     * The {@link Bait} objects are shared with the prototype (they are not changed after creation), whereas the
+     * selection state is separate, so that the copy can be used by another {@link ViewPoint} (see {@link SegmentCache}).
+     * If the content of the prototype has not been calculated yet, it is copied on first access.
+     * @param prototype Segment that is shared by the viewpoints
+     */
+    Segment(Segment prototype) {
+        this.referenceSequenceID=prototype.referenceSequenceID;
+        this.startPos=prototype.startPos;
+        this.endPos=prototype.endPos;
+        this.marginSize=prototype.marginSize;
+        this.selected=false; /* default */
+        if (prototype.pending!=null) {
+            this.pending=new PendingEvaluation(null,null,0,prototype); // the bases are not needed to copy the content
+        } else {
+            this.sequence=prototype.sequence;
+            copyContent(prototype);
+        }
+    }
+
+    /** Copy the GC and repeat content and the baits of a Segment whose content has been calculated. */
+    private void copyContent(Segment prototype) {
+        this.repeatContent=prototype.repeatContent;
+        this.repeatContentUp=prototype.repeatContentUp;
+        this.repeatContentDown=prototype.repeatContentDown;
+        this.GCcontent=prototype.GCcontent;
+        this.GCcontentUp=prototype.GCcontentUp;
+        this.GCcontentDown=prototype.GCcontentDown;
+        this.unselectable=prototype.unselectable;
+        this.balanced=prototype.balanced;
+        this.unbalanced=prototype.unbalanced;
+        this.baitListUpStreamMargin=copyBaitList(prototype.baitListUpStreamMargin);
+        this.baitListDownStreamMargin=copyBaitList(prototype.baitListDownStreamMargin);
+    }
+
+    /** Lists backed by a {@link BaitStore} are immutable and can be shared, other lists are copied. */
+    private static List<Bait> copyBaitList(List<Bait> baits) {
+        return baits instanceof BaitStore.BaitList ? baits : new ArrayList<>(baits);
+    }
+
+    /**
+     * Move the baits of this Segment to a {@link BaitStore} (this should be done after {@link #setUsableBaits}).
+     * The bait lists are immutable afterwards.
+     * @param store compact storage for the baits of the chromosome of this Segment
+     */
+    synchronized void compactBaits(BaitStore store) {
+        if (pending!=null && !evaluating) {
+            pending.baitStore=store; // the baits have not been calculated yet
+            return;
+        }
+        this.baitListUpStreamMargin=store.compact(baitListUpStreamMargin);
+        this.baitListDownStreamMargin=store.compact(baitListDownStreamMargin);
+    }
+
+    /**
+     * Calculate the GC and repeat content and the usable baits of this Segment if this has not been done yet. This
+     * is called by all getters of these values, and may be called concurrently by different viewpoints that share
+     * the prototype of this Segment. The viewpoint creation tasks call it for all Segments that are kept by a
+     * viewpoint before they release the chromosome, so that no Segment outlives the chromosome buffer, the model and
+     * the alignability map that it needs for the calculation.
+     */
+    void evaluate() {
+        if (pending==null) return;
+        synchronized (this) {
+            PendingEvaluation p=pending;
+            if (p==null || evaluating) return;
+            evaluating=true;
+            try {
+                if (p.prototype!=null) {
+                    p.prototype.evaluate();
+                    copyContent(p.prototype);
+                } else {
+                    calculateGCandRepeatContent();
+                    calculateRepeatAndGcContentMargins();
+                    setUsableBaits(p.model,p.alignabilityMap,p.maxAlignabilityScore);
+                }
+                if (p.baitStore!=null) {
+                    compactBaits(p.baitStore);
+                }
+            } finally {
+                evaluating=false;
+            }
+            pending=null;
+            sequence=null; // release the chromosome buffer
+        }
+    }
+
+    /** The content and baits are calculated before the Segment is written (they are needed by the saved project). */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        evaluate();
+        out.defaultWriteObject();
     }
 
 
@@ -110,7 +242,11 @@ public class Segment implements Serializable {
         private final Integer endPos;
         private Integer genomicPos;
         private IndexedFastaSequenceFile fastaReader;
+        private ChromosomeSequence sequence;
         private Integer marginSize;
+        private Model model;
+        private AlignabilityMap alignabilityMap;
+        private double maxAlignabilityScore;
 
         public Builder(String refSequenceID, Integer start, Integer end) {
             this.referenceSequenceID=refSequenceID;
@@ -120,13 +256,31 @@ public class Segment implements Serializable {
         public Builder fastaReader(IndexedFastaSequenceFile val) {
             this.fastaReader=val; return this;
         }
+        /** @param val buffer with the bases of the chromosome, shared by all Segments of the chromosome. */
+        public Builder sequence(ChromosomeSequence val) {
+            this.sequence=val; return this;
+        }
         public Builder genomicPos(Integer val) {
             this.genomicPos=val; return this;
         }
         public Builder marginSize(Integer val) {
             this.marginSize=val; return this;
         }
+        /**
+         * Calculate the GC and repeat content and the usable baits (see {@link Segment#setUsableBaits}) only when
+         * they are first needed, e.g., when the Segment is selected, displayed or exported.
+         */
+        public Builder lazyUsableBaits(Model model, AlignabilityMap alignabilityMap, double maxAlignabilityScore) {
+            this.model=model;
+            this.alignabilityMap=alignabilityMap;
+            this.maxAlignabilityScore=maxAlignabilityScore;
+            return this;
+        }
         public Segment build() {
+            if (sequence==null) {
+                // no shared buffer was passed, read the bases of this Segment once
+                sequence = ChromosomeSequence.load(fastaReader,referenceSequenceID,startPos,endPos);
+            }
             return new Segment(this);
         }
 
@@ -182,31 +336,22 @@ public class Segment implements Serializable {
     /**
      * This function calculates the {@link #repeatContent} of this segment by counting lower and uppercase.
      */
-    private void calculateGCandRepeatContent(IndexedFastaSequenceFile fastaReader) {
-        String subsequence = fastaReader.getSubsequenceAt(referenceSequenceID, startPos, endPos).getBaseString();
+    private void calculateGCandRepeatContent() {
+        int len = endPos - startPos + 1;
+        if (len<=0) return;
         /* determine repeat content */
-        int lowerCase = 0, upperCase = 0; int GC=0;
-        if (subsequence.length()==0) return;
-        for (int i = 0; i < subsequence.length(); i++) {
-            if (Character.isLowerCase(subsequence.charAt(i))) lowerCase++;
-            if (Character.isUpperCase(subsequence.charAt(i))) upperCase++;
-            switch (subsequence.charAt(i)){
-                case 'G':
-                case 'g':
-                case 'C':
-                case 'c':
-                    GC++;
-            }
-        }
+        int lowerCase = sequence.countLowerCase(startPos,endPos);
+        int upperCase = sequence.countUpperCase(startPos,endPos);
+        int GC = sequence.countGC(startPos,endPos);
         this.repeatContent = ((double) lowerCase / (lowerCase + (double) upperCase));
-        this.GCcontent=(double)GC/(double)subsequence.length();
+        this.GCcontent=(double)GC/(double)len;
     }
 
     /**
      * Calculates the repetitive and GC content on the margins of the segment (if the segment is too small, we take the
      * repeat content of the entire segment to be the margin repeat content).
      */
-    private void calculateRepeatAndGcContentMargins(IndexedFastaSequenceFile fastaReader) {
+    private void calculateRepeatAndGcContentMargins() {
 
         /* generate Segment objects for margins */
 
@@ -229,17 +374,12 @@ public class Segment implements Serializable {
             IntPair seg = margins.get(i);
             int start = seg.getStartPos();
             int end = seg.getEndPos();
-            String s = fastaReader.getSubsequenceAt(this.referenceSequenceID,start,end).getBaseString();
 
             /* determine repeat content */
-            int lowerCase = 0, upperCase = 0;
-            int gc = 0; int at = 0;
-            for (int j = 0; j < s.length(); j++) {
-                if (Character.isLowerCase(s.charAt(j))) lowerCase++;
-                if (Character.isUpperCase(s.charAt(j))) upperCase++;
-                if (s.charAt(j)=='A' || s.charAt(j)=='T' || s.charAt(j)=='a' || s.charAt(j)=='t') at++;
-                if (s.charAt(j)=='G' || s.charAt(j)=='C' || s.charAt(j)=='g' || s.charAt(j)=='c') gc++;
-            }
+            int lowerCase = sequence.countLowerCase(start,end);
+            int upperCase = sequence.countUpperCase(start,end);
+            int at = sequence.countAT(start,end);
+            int gc = sequence.countGC(start,end);
             double repcon = ((double) lowerCase / (lowerCase + (double) upperCase));
             double gccon = ((double) gc / (lowerCase + (double) (at+gc)));
             if (i==0) {
@@ -258,44 +398,53 @@ public class Segment implements Serializable {
      * @return repeat content of this segment.
      */
     public double getRepeatContent() {
+        evaluate();
         return repeatContent;
     }
     /** @return A formatted string, e.g., "7.23%", representing the repeat content */
-    public String getRepeatContentAsPercent() { return String.format("%.2f%%",100*repeatContent);}
+    public String getRepeatContentAsPercent() { evaluate(); return String.format("%.2f%%",100*repeatContent);}
 
     public double getRepeatContentMarginUp() {
+        evaluate();
         return repeatContentUp;
     }
     /** @return A formatted string, e.g., "7.23%", representing the repeat content of the margin on the up side */
-    public String getRepeatContentMarginUpAsPercent() { return String.format("%.2f%%",100*repeatContentUp);}
+    public String getRepeatContentMarginUpAsPercent() { evaluate(); return String.format("%.2f%%",100*repeatContentUp);}
 
     public double getRepeatContentMarginDown() {
+        evaluate();
         return repeatContentDown;
     }
     public double getGcContentMarginDown() {
+        evaluate();
         return GCcontentDown;
     }
     public double getGcContentMarginUp() {
+        evaluate();
         return GCcontentUp;
     }
     /** @return A formatted string, e.g., "7.23%", representing the repeat content of the margin on the down side */
-    public String getRepeatContentMarginDownAsPercent() { return String.format("%.2f%%",100*repeatContentDown);}
+    public String getRepeatContentMarginDownAsPercent() { evaluate(); return String.format("%.2f%%",100*repeatContentDown);}
 
-    public double getMeanMarginRepeatContent() { return 0.5*(repeatContentUp+repeatContentDown);}
+    public double getMeanMarginRepeatContent() { evaluate(); return 0.5*(repeatContentUp+repeatContentDown);}
 
     public String getGCcontentAsPercent() {
+        evaluate();
         return String.format("%.2f%%",100*GCcontent);
     }
 
     public String getGCcontentUpAsPercent() {
+        evaluate();
         return String.format("%.2f%%",100*GCcontentUp);
     }
 
     public String getGCcontentDownAsPercent() {
+        evaluate();
         return String.format("%.2f%%",100*GCcontentDown);
     }
 
     public double getGCcontent() {
+        evaluate();
         return GCcontent;
     }
     /** @return a String such as {@code chr3:425930-736434}. */
@@ -467,14 +616,15 @@ public class Segment implements Serializable {
     }
 
     public String getNumberOfBaitsUpDownAsString() {
+        evaluate();
         return String.format("%d/%d",this.baitListUpStreamMargin.size(),this.baitListDownStreamMargin.size() );
     }
 
-    public Integer getBaitNumTotal() { return this.baitListUpStreamMargin.size() + this.baitListDownStreamMargin.size(); }
+    public Integer getBaitNumTotal() { evaluate(); return this.baitListUpStreamMargin.size() + this.baitListDownStreamMargin.size(); }
 
-    public Integer getBaitNumUp() { return this.baitListUpStreamMargin.size(); }
+    public Integer getBaitNumUp() { evaluate(); return this.baitListUpStreamMargin.size(); }
 
-    public Integer getBaitNumDown() {return this.baitListDownStreamMargin.size(); }
+    public Integer getBaitNumDown() { evaluate(); return this.baitListDownStreamMargin.size(); }
 
 
     /** NEW VERSION */
@@ -484,14 +634,15 @@ public class Segment implements Serializable {
         Integer end = this.getStartPos() + marginSize - 1;
 
         ArrayList<Bait> baitListUpStreamMargin = new ArrayList<>();
+        BaitWindowScanner scanner = new BaitWindowScanner(this.referenceSequenceID, sequence, alignabilityMap, baitSize);
         for(int i = sta; i <= end - baitSize + 1; i++ ) { // from left to right because this is the upstream margin
 
-            // init bait
-            Bait b = new Bait(this.referenceSequenceID, i, i + baitSize - 1, fastaReader, alignabilityMap);
+            // move the bait window by one position
+            scanner.moveTo(i);
 
             // check for constraints and add if appropriate
-            if( b.isUsable(minGCcontent, maxGCcontent, maxAlignabilityScore) ) {
-                baitListUpStreamMargin.add(b);
+            if( scanner.isUsable(minGCcontent, maxGCcontent, maxAlignabilityScore) ) {
+                baitListUpStreamMargin.add(scanner.toBait());
             }
 
             // abort if bmax is reached
@@ -526,6 +677,7 @@ public class Segment implements Serializable {
 
 
     public List<Bait> getBaitsForUpstreamMargin() {
+        evaluate();
         return this.baitListUpStreamMargin;
     }
 
@@ -539,14 +691,15 @@ public class Segment implements Serializable {
         Integer end = this.getEndPos();
 
         ArrayList<Bait> baitListDownStreamMargin = new ArrayList<>();
+        BaitWindowScanner scanner = new BaitWindowScanner(this.referenceSequenceID, sequence, alignabilityMap, baitSize);
         for (int i = end - baitSize + 1; sta < i; i--) { // from right to left because this is the upstream margin
 
-            // init bait
-            Bait b = new Bait(this.referenceSequenceID, i, i + baitSize - 1, fastaReader, alignabilityMap);
+            // move the bait window by one position
+            scanner.moveTo(i);
 
             // check for constraints and add if appropriate
-            if( b.isUsable(minGCcontent, maxGCcontent, maxAlignabilityScore) ) {
-                baitListDownStreamMargin.add(b);
+            if( scanner.isUsable(minGCcontent, maxGCcontent, maxAlignabilityScore) ) {
+                baitListDownStreamMargin.add(scanner.toBait());
             }
 
             // abort if bmax is reached
@@ -560,7 +713,7 @@ public class Segment implements Serializable {
     }
 
 
-    public List<Bait> getBaitsForDownstreamMargin()  { return this.baitListDownStreamMargin; }
+    public List<Bait> getBaitsForDownstreamMargin()  { evaluate(); return this.baitListDownStreamMargin; }
 
 
     /**
@@ -574,16 +727,17 @@ public class Segment implements Serializable {
 
         Integer numOfRedundantBaitsRemoved = 0;
 
-        // put the the coordinates of all upstream baits in a string Set
-        Set<String> upstreamCoordSet = new HashSet<>();
-        for(Bait b : baitListUpStreamMargin) {
-            upstreamCoordSet.add(b.getRefId() + b.getStartPos());
+        // put the start positions of all upstream baits (all on this segment's chromosome) in a sorted array
+        int[] upstreamStartPositions = new int[baitListUpStreamMargin.size()];
+        for(int i = 0; i < upstreamStartPositions.length; i++) {
+            upstreamStartPositions[i] = baitListUpStreamMargin.get(i).getStartPos();
         }
+        Arrays.sort(upstreamStartPositions);
 
-        // iterate over downstream baits and skip those also contained in set for upstream baits
+        // iterate over downstream baits and skip those also contained in array for upstream baits
         List<Bait> newBaitListDownStreamMargin = new ArrayList<>();
         for(Bait b : baitListDownStreamMargin) {
-            if( !upstreamCoordSet.contains(b.getRefId() + b.getStartPos()) ) {
+            if( Arrays.binarySearch(upstreamStartPositions, b.getStartPos()) < 0 ) {
                 newBaitListDownStreamMargin.add(b);
             } else {
                 numOfRedundantBaitsRemoved++;
@@ -595,18 +749,22 @@ public class Segment implements Serializable {
     }
 
     public boolean isBalanced() {
+        evaluate();
         return this.balanced;
     }
 
     public boolean isUnbalanced() {
+        evaluate();
         return this.unbalanced;
     }
 
     public boolean isUnselectable() {
+        evaluate();
         return this.unselectable;
     }
 
     public Double getMeanGCcontentOfBaits() {
+        evaluate();
         Double meanGCcontentOfBaits = 0.0;
         for(Bait b : baitListUpStreamMargin) {
             meanGCcontentOfBaits = meanGCcontentOfBaits + b.getGCContent();
@@ -624,6 +782,7 @@ public class Segment implements Serializable {
     }
 
     public Double getMeanAlignabilityOfBaits() {
+        evaluate();
         Double meanAlignabilityOfBaits = 0.0;
         for(Bait b : baitListUpStreamMargin) {
             meanAlignabilityOfBaits = meanAlignabilityOfBaits + b.getAlignabilityScore();
@@ -635,6 +794,7 @@ public class Segment implements Serializable {
     }
 
     public Double getMeanRepeatContentOfBaits() {
+        evaluate();
         Double meanRepeatContentOfBaits = 0.0;
         for(Bait b : baitListUpStreamMargin) {
             meanRepeatContentOfBaits = meanRepeatContentOfBaits + b.getRepeatContent();
@@ -0,0 +1,61 @@
+package gopher.model.viewpoint;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the {@link Segment} objects of one chromosome, shared by all viewpoints on the chromosome during one
+ * run of the {@link ViewPointCreationTask}. Viewpoints of neighbouring or alternative transcription start sites
+ * often contain the same restriction fragments, and the GC and repeat content and the baits of a fragment only
+ * depend on its coordinates (and on the settings of the design, which do not change during the run). Therefore,
+ * these are calculated once per fragment. Each viewpoint gets its own copy of the Segment, because the selection
+ * state belongs to the viewpoint.
+ * <p>
+ * For large designs, the baits of the cached Segments can be kept in a {@link BaitStore}, which needs much less
+ * memory than the {@link Bait} objects. The cache is used concurrently by the threads that create the viewpoints
+ * of the chromosome.</p>
+ */
+final class SegmentCache {
+    /** Key: start and end position of a Segment (see {@link #key}); value: Segment with content and baits. */
+    private final Map<Long, Segment> segments = new ConcurrentHashMap<>();
+    /** Compact storage for the baits of the Segments (null if the baits are kept as objects). */
+    private final BaitStore baitStore;
+
+    SegmentCache() {
+        this(null);
+    }
+
+    /** @param baitStore compact storage for the baits of the chromosome (may be null) */
+    SegmentCache(BaitStore baitStore) {
+        this.baitStore = baitStore;
+    }
+
+    /**
+     * @param start most 5' position of the Segment
+     * @param end most 3' position of the Segment
+     * @param factory creates the Segment (and calculates its baits) if it is not yet in the cache
+     * @return a new, unselected copy of the cached Segment
+     */
+    Segment getSegment(int start, int end, Supplier<Segment> factory) {
+        Segment prototype = segments.computeIfAbsent(key(start, end), k -> createPrototype(factory));
+        return new Segment(prototype);
+    }
+
+    private Segment createPrototype(Supplier<Segment> factory) {
+        Segment segment = factory.get();
+        if (baitStore != null) {
+            segment.compactBaits(baitStore);
+        }
+        return segment;
+    }
+
+    /** @return number of distinct Segments in the cache. */
+    int size() {
+        return segments.size();
+    }
+
+    private static long key(int start, int end) {
+        return ((long) start << 32) | (end & 0xffffffffL);
+    }
+}
@@ -1,13 +1,13 @@
 package gopher.model.viewpoint;
 
+import gopher.model.digest.CutSiteIndex;
+import gopher.model.digest.RestrictionSiteMatcher;
 import htsjdk.samtools.reference.IndexedFastaSequenceFile;
 import org.apache.log4j.Logger;
 import gopher.model.RestrictionEnzyme;
 
 import java.io.Serializable;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * This is a utility class for the class 'ViewPoint' that holds the cutting positions for the provided restriction enzyme motifs.
@@ -39,12 +39,15 @@ public class SegmentFactory implements Serializable {
     /** Map of the positions where the enzymes cut. Key: a site, such as GATC, value: list of cutting site positions
      * relative to {@link #genomicPos}. */
     private final HashMap<String, ArrayList<Integer>> cuttingPositionMap;
-    /** TODO what is key?. Value, the corresponding {@link RestrictionEnzyme} object. */
-    static Map<String, RestrictionEnzyme> restrictionEnzymeMap;
-
-    static void setRestrictionEnzymeMap(Map<String, RestrictionEnzyme> m) {
-        restrictionEnzymeMap = m;
-    }
+    /** Sorted cutting positions of all enzymes (same as the list with the key <i>ALL</i> in {@link #cuttingPositionMap}),
+     * used for binary searches. This is not serialized, but recreated from {@link #cuttingPositionMap} if needed. */
+    private transient int[] allCuts;
+    /** The name of the genomic sequence, e.g. {@code chr1} (only needed while the cutting positions are searched). */
+    private transient String referenceSequenceID;
+    /** List of cutting {@link RestrictionEnzyme} objects (only needed while the cutting positions are searched). */
+    private transient List<RestrictionEnzyme> chosenEnzymeList;
+    /** Finds the cutting positions when the factory is created or expanded (null after deserialization). */
+    private transient CuttingPositionFinder finder;
     /** This determines the maximum allowed zooming factor for the extended approach. */
     static final int MAXIMUM_ZOOM_FACTOR=3;
 
@@ -71,29 +74,164 @@ public class SegmentFactory implements Serializable {
                           Integer maxDistToGenomicPosUp,
                           Integer maxDistToGenomicPosDown,
                           List<RestrictionEnzyme> chosenEnzymeList) {
+        this(referenceSequenceID,
+                genomicPos,
+                ChromosomeSequence.load(fastaReader, referenceSequenceID),
+                chromLen,
+                maxDistToGenomicPosUp,
+                maxDistToGenomicPosDown,
+                chosenEnzymeList);
+    }
+
+    /**
+     * Same as the above constructor, but the cutting positions are searched for in a {@link ChromosomeSequence}
+     * that was loaded once for all viewpoints on the chromosome.
+     *
+     * @param referenceSequenceID     name of the genomic sequence, e.g. {@code chr1}.
+     * @param genomicPos              central position of the region for which the CuttingPositionMap is created (one-based numbering).
+     * @param sequence                buffer with the bases of the chromosome {@code referenceSequenceID}.
+     * @param chromLen                length of the chromosome.
+     * @param maxDistToGenomicPosUp   maximal distance to 'genomicPos' in upstream direction.
+     * @param maxDistToGenomicPosDown maximal distance to 'genomicPos' in downstream direction.
+     * @param chosenEnzymeList        List of cutting {@link RestrictionEnzyme} objects.
+     */
+    public SegmentFactory(String referenceSequenceID,
+                          Integer genomicPos,
+                          ChromosomeSequence sequence,
+                          int chromLen,
+                          Integer maxDistToGenomicPosUp,
+                          Integer maxDistToGenomicPosDown,
+                          List<RestrictionEnzyme> chosenEnzymeList) {
+        this(referenceSequenceID,
+                genomicPos,
+                sequence,
+                chromLen,
+                maxDistToGenomicPosUp,
+                maxDistToGenomicPosDown,
+                new RestrictionSiteMatcher(chosenEnzymeList));
+    }
+
+    /**
+     * Same as the above constructor, but with a {@link RestrictionSiteMatcher} for the chosen enzymes that is
+     * shared by all viewpoints of a design (see {@link DesignContext}).
+     */
+    SegmentFactory(String referenceSequenceID,
+                   Integer genomicPos,
+                   ChromosomeSequence sequence,
+                   int chromLen,
+                   Integer maxDistToGenomicPosUp,
+                   Integer maxDistToGenomicPosDown,
+                   RestrictionSiteMatcher matcher) {
+        this(referenceSequenceID,
+                genomicPos,
+                chromLen,
+                maxDistToGenomicPosUp,
+                maxDistToGenomicPosDown,
+                matcher.getEnzymes(),
+                new SequenceCuttingPositionFinder(matcher, sequence));
+    }
+
+    /**
+     * Same as the above constructor, but the cutting positions are looked up in a genome-wide {@link CutSiteIndex}
+     * (by binary search) instead of searching the sequence for the restriction sites.
+     *
+     * @param referenceSequenceID     name of the genomic sequence, e.g. {@code chr1}.
+     * @param genomicPos              central position of the region for which the CuttingPositionMap is created (one-based numbering).
+     * @param cutSiteIndex            index of the restriction sites of the chosen enzymes.
+     * @param chromLen                length of the chromosome.
+     * @param maxDistToGenomicPosUp   maximal distance to 'genomicPos' in upstream direction.
+     * @param maxDistToGenomicPosDown maximal distance to 'genomicPos' in downstream direction.
+     * @param chosenEnzymeList        List of cutting {@link RestrictionEnzyme} objects.
+     */
+    public SegmentFactory(String referenceSequenceID,
+                          Integer genomicPos,
+                          CutSiteIndex cutSiteIndex,
+                          int chromLen,
+                          Integer maxDistToGenomicPosUp,
+                          Integer maxDistToGenomicPosDown,
+                          List<RestrictionEnzyme> chosenEnzymeList) {
+        this(referenceSequenceID,
+                genomicPos,
+                chromLen,
+                maxDistToGenomicPosUp,
+                maxDistToGenomicPosDown,
+                chosenEnzymeList,
+                (fragmentStart, fragmentEnd) -> {
+                    List<List<Integer>> cuttingPositionLists = new ArrayList<>();
+                    for (RestrictionEnzyme enzyme : chosenEnzymeList) {
+                        cuttingPositionLists.add(cutSiteIndex.getCutPositions(referenceSequenceID,
+                                enzyme,
+                                Math.max(fragmentStart, 1),
+                                Math.min(fragmentEnd, chromLen)));
+                    }
+                    return cuttingPositionLists;
+                });
+    }
+
+    /**
+     * Finds the cutting positions of the chosen enzymes for sites that lie completely in a (one-based, closed)
+     * interval. The result has one list of cutting positions for each enzyme, in the order of the chosen enzymes.
+     */
+    private interface CuttingPositionFinder {
+        List<List<Integer>> find(int fragmentStart, int fragmentEnd);
+    }
+
+    private SegmentFactory(String referenceSequenceID,
+                           Integer genomicPos,
+                           int chromLen,
+                           Integer maxDistToGenomicPosUp,
+                           Integer maxDistToGenomicPosDown,
+                           List<RestrictionEnzyme> chosenEnzymeList,
+                           CuttingPositionFinder finder) {
+        this.referenceSequenceID = referenceSequenceID;
+        this.chosenEnzymeList = chosenEnzymeList;
+        this.finder = finder;
+        this.chromosomeLength = chromLen;
+        cuttingPositionMap = new HashMap<>();
+        findCuttingPositions(genomicPos, maxDistToGenomicPosUp, maxDistToGenomicPosDown);
+    }
+
+    /**
+     * Enlarge the region for which the cutting positions are derived. This is the same as creating a new factory
+     * with the new distances, but the sequence is only searched in the flanks that are added to the region, i.e.,
+     * the cutting positions that have already been found are kept.
+     * @param maxDistToGenomicPosUp   new maximal distance to 'genomicPos' in upstream direction (not smaller than the current one).
+     * @param maxDistToGenomicPosDown new maximal distance to 'genomicPos' in downstream direction (not smaller than the current one).
+     */
+    void expand(Integer maxDistToGenomicPosUp, Integer maxDistToGenomicPosDown) {
+        if (finder == null) {
+            throw new IllegalStateException("Cannot expand a deserialized or released SegmentFactory");
+        }
+        findCuttingPositions(genomicPos, maxDistToGenomicPosUp, maxDistToGenomicPosDown);
+    }
+
+    /**
+     * Drop the reference to the bases of the chromosome (held by the finder of the cutting positions) once the region
+     * is final. The cutting positions are kept, but the factory cannot be expanded afterwards.
+     */
+    void releaseFinder() {
+        this.finder = null;
+    }
+
+    private void findCuttingPositions(Integer genomicPos, Integer maxDistToGenomicPosUp, Integer maxDistToGenomicPosDown) {
         maxDistToGenomicPosUp=maxDistToGenomicPosUp*MAXIMUM_ZOOM_FACTOR;
         if(genomicPos<maxDistToGenomicPosUp) {
             maxDistToGenomicPosUp=genomicPos;
         }
         maxDistToGenomicPosDown=maxDistToGenomicPosDown*MAXIMUM_ZOOM_FACTOR;
-        Integer referenceSequenceLen = chromLen;
-        //this.chromosomeLength=fastaReader.getSequence(referenceSequenceID).length();
-        this.chromosomeLength=referenceSequenceLen;
+        Integer referenceSequenceLen = chromosomeLength;
         if(referenceSequenceLen < genomicPos + maxDistToGenomicPosDown) {
             maxDistToGenomicPosDown = referenceSequenceLen - genomicPos;
         }
         setGenomicPos(genomicPos);
         setMaxDistToGenomicPosUp(maxDistToGenomicPosUp);
         setMaxDistToGenomicPosDown(maxDistToGenomicPosDown);
-        cuttingPositionMap = new HashMap<>();
+        cuttingPositionMap.clear();
         Set<Integer> allPositionSet = new HashSet<>(); // remove duplicates
 
 
 
-        for (RestrictionEnzyme enzyme : chosenEnzymeList) {
-            String cutpat = enzyme.getPlainSite();
-            int offset = enzyme.getOffset();
-            // get sequence around genomic position and convert everything to uppercase
+        if (!chosenEnzymeList.isEmpty()) {
             if (chromosomeLength < genomicPos + maxDistToGenomicPosDown) {
                 logger.warn(String.format("maxDistToGenomicPosDown [%d] + genomicPos [%d] = %d > length of chromosome [%s;%d] -> will adjust",
                         maxDistToGenomicPosDown,genomicPos,(maxDistToGenomicPosDown+genomicPos), referenceSequenceID , chromosomeLength));
@@ -106,50 +244,117 @@ public class SegmentFactory implements Serializable {
                 maxDistToGenomicPosUp = genomicPos;
                 allPositionSet.add(1);
             }
-            // note fastaReader refers to one-based numbering scheme.
-            String genomicPosRegionString = fastaReader.getSubsequenceAt(referenceSequenceID, genomicPos - maxDistToGenomicPosUp, genomicPos + maxDistToGenomicPosDown).getBaseString().toUpperCase();
-            Pattern pattern = Pattern.compile(cutpat,Pattern.CASE_INSENSITIVE);
-            Matcher matcher = pattern.matcher(genomicPosRegionString);
-            ArrayList<Integer> cuttingPositionList = new ArrayList<>();
-            int fragmentStart=genomicPos - maxDistToGenomicPosUp; /* one-based position of first nucleotide in the entire subsequence returned by fasta reader */
-            while (matcher.find()) {
-                    // replaces matcher.start() - maxDistToGenomicPosUp + offset;
-                    int pos = fragmentStart + matcher.start() + offset; /* one-based position of first nucleotide after the restriction enzyme cuts */
-                    cuttingPositionList.add(pos);
-                    allPositionSet.add(pos);
+            int fragmentStart=genomicPos - maxDistToGenomicPosUp; /* one-based position of first nucleotide in the searched subsequence */
+            int fragmentEnd=genomicPos + maxDistToGenomicPosDown;
+            List<List<Integer>> cuttingPositionLists = finder.find(fragmentStart, fragmentEnd);
+            for (int i = 0; i < chosenEnzymeList.size(); i++) {
+                ArrayList<Integer> cuttingPositionList = new ArrayList<>(cuttingPositionLists.get(i));
+                allPositionSet.addAll(cuttingPositionList);
+                cuttingPositionMap.put(chosenEnzymeList.get(i).getPlainSite(), cuttingPositionList); // push array list to map
             }
-            cuttingPositionMap.put(enzyme.getPlainSite(), cuttingPositionList); // push array list to map
         }
         ArrayList<Integer> cuttingPositionListUnion = new ArrayList<>(allPositionSet);
         Collections.sort(cuttingPositionListUnion);
         cuttingPositionMap.put("ALL", cuttingPositionListUnion); // push array list to map
+        allCuts = cuttingPositionListUnion.stream().mapToInt(Integer::intValue).toArray();
     }
 
+    /** @return sorted cutting positions of all enzymes. */
+    private int[] getAllCutsArray() {
+        if (allCuts == null) { // object was deserialized
+            allCuts = getAllCuts().stream().mapToInt(Integer::intValue).toArray();
+        }
+        return allCuts;
+    }
 
-    /** @return  the number of cutting sites upstream of the given position. */
-    public int getNumOfCutsUpstreamPos(int pos) {
-        int numOfCuts=0;
-        for(Integer cut : getAllCuts()) {
-            if(cut < pos) {
-                numOfCuts++;
+    /**
+     * Searches a {@link ChromosomeSequence} for the restriction sites of the enzymes of a matcher. The interval that
+     * has been searched and the cutting positions are remembered, so that only the new flanks have to be searched if
+     * the factory is expanded. (Overlapping sites of the same enzyme, which are only possible for a few sites such as
+     * GCGC, may therefore differ slightly from a search of the whole interval at once.)
+     */
+    private static final class SequenceCuttingPositionFinder implements CuttingPositionFinder {
+        /** Matcher for the sites of the chosen enzymes. */
+        private final RestrictionSiteMatcher matcher;
+        /** Buffer with the bases of the chromosome. */
+        private final ChromosomeSequence sequence;
+        /** Length of the site of each enzyme. */
+        private final int[] siteLength;
+        /** Length of the longest site. */
+        private final int maxSiteLength;
+        /** One-based start of the interval searched so far. */
+        private int searchedStart = 1;
+        /** One-based end of the interval searched so far (smaller than {@link #searchedStart} if nothing has been searched). */
+        private int searchedEnd = 0;
+        /** Cutting positions of each enzyme for the sites found in the searched interval. */
+        private final List<List<Integer>> cuttingPositionLists = new ArrayList<>();
+
+        SequenceCuttingPositionFinder(RestrictionSiteMatcher matcher, ChromosomeSequence sequence) {
+            this.matcher = matcher;
+            this.sequence = sequence;
+            List<RestrictionEnzyme> enzymes = matcher.getEnzymes();
+            this.siteLength = enzymes.stream().mapToInt(re -> re.getPlainSite().length()).toArray();
+            this.maxSiteLength = Arrays.stream(siteLength).max().orElse(0);
+            for (int i = 0; i < enzymes.size(); i++) {
+                cuttingPositionLists.add(new ArrayList<>());
             }
-            else {
-                break;
+        }
+
+        @Override
+        public List<List<Integer>> find(int fragmentStart, int fragmentEnd) {
+            int start = Math.max(fragmentStart, sequence.getStartPos());
+            int end = Math.min(fragmentEnd, sequence.getEndPos());
+            if (searchedEnd < searchedStart || searchedStart < start || end < searchedEnd) {
+                // nothing has been searched yet, or the new interval does not contain the searched interval
+                cuttingPositionLists.forEach(List::clear);
+                scan(start, end, (e, siteStart) -> true);
+            } else {
+                int oldStart = searchedStart;
+                int oldEnd = searchedEnd;
+                if (start < oldStart) {
+                    // sites that begin in the new upstream flank (and may end in the searched interval)
+                    scan(start, Math.min(end, oldStart + maxSiteLength - 2), (e, siteStart) -> siteStart < oldStart);
+                }
+                if (oldEnd < end) {
+                    // sites that end in the new downstream flank
+                    scan(Math.max(start, oldEnd - maxSiteLength + 2), end,
+                            (e, siteStart) -> oldStart <= siteStart && oldEnd < siteStart + siteLength[e] - 1);
+                }
+                cuttingPositionLists.forEach(Collections::sort);
             }
+            searchedStart = start;
+            searchedEnd = end;
+            return cuttingPositionLists;
+        }
+
+        /** Filter for the sites found by {@link #scan}. */
+        private interface SiteFilter {
+            boolean accept(int enzymeIndex, int siteStart);
+        }
+
+        /** Search {@code [start,end]} (one-based, closed) and add the cutting positions of the accepted sites. */
+        private void scan(int start, int end, SiteFilter filter) {
+            if (end < start) return;
+            // note the sequence buffer refers to one-based numbering scheme.
+            sequence.findRestrictionSites(matcher, start, end, (enzymeIndex, siteStart, cutPosition) -> {
+                if (filter.accept(enzymeIndex, siteStart)) {
+                    cuttingPositionLists.get(enzymeIndex).add(cutPosition);
+                }
+            });
         }
-        return numOfCuts;
+    }
+
+
+    /** @return  the number of cutting sites upstream of the given position. */
+    public int getNumOfCutsUpstreamPos(int pos) {
+        int i = Arrays.binarySearch(getAllCutsArray(), pos);
+        return i >= 0 ? i : -(i + 1); // number of cuts smaller than pos
     }
 
 
     /** @return the number of cutting sites downstream of the given position. */
     public int getNumOfCutsDownstreamPos(int pos) {
-        int numOfCuts=0;
-        for(Integer cut : getAllCuts()) {
-            if(cut >= pos) {
-                numOfCuts++;
-            }
-        }
-        return numOfCuts;
+        return getAllCutsArray().length - getNumOfCutsUpstreamPos(pos);
     }
 
     public boolean maxDistUpOutOfChromosome() {
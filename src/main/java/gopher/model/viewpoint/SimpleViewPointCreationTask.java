@@ -1,15 +1,13 @@
 package gopher.model.viewpoint;
 
 import gopher.exception.GopherException;
-import gopher.model.Default;
+import gopher.io.SequenceSource;
 import gopher.model.GopherGene;
 import gopher.model.Model;
-import htsjdk.samtools.reference.IndexedFastaSequenceFile;
 import org.apache.log4j.Logger;
 
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 
@@ -23,9 +21,8 @@ public class SimpleViewPointCreationTask extends ViewPointCreationTask {
 
   /**
      * The constructor sets up the Task of creating ViewPoints. It sets the chosen enzymes from the Model
-     * Since we use the same enzymes for all ViewPoints; therefore, ViewPoint .chosenEnzymes and
-     * CuttingPositionMap.restrictionEnzymeMap are static class-wide variables that get set with the corresponding
-     * values for the enzymes.
+     * Since we use the same enzymes for all ViewPoints, they are stored in an immutable {@link DesignContext}
+     * that is passed to the builder of each ViewPoint.
      *  @param model Model of the panel design project
    */
   public SimpleViewPointCreationTask(Model model) {
@@ -37,14 +34,20 @@ public class SimpleViewPointCreationTask extends ViewPointCreationTask {
      * Calculate the data for the current ViewPoint object
      * @param vpvgene A representation of the input gene and target (usually the TSS)
      * @param referenceSequenceID Chromosome/scaffold on which the gene is located
-     * @param fastaReader HTSJDK object to read FASTA file
+     * @param sequence Bases of the chromosome (loaded once for all genes on the chromosome)
+     * @param segmentCache Segments shared by all viewpoints on the chromosome
      * @param chr2alignMap alignability map for the current chromosome
+     * @param chromLen length of the chromosome
+     * @return one viewpoint for each TSS of the gene
      */
-    private void calculateViewPoints(GopherGene vpvgene,
-                                     String referenceSequenceID,
-                                     IndexedFastaSequenceFile fastaReader,
-                                     AlignabilityMap chr2alignMap,
-                                     int chromLen) {
+    @Override
+    protected List<ViewPoint> calculateViewPoints(GopherGene vpvgene,
+                                                  String referenceSequenceID,
+                                                  ChromosomeSequence sequence,
+                                                  SegmentCache segmentCache,
+                                                  AlignabilityMap chr2alignMap,
+                                                  int chromLen) {
+        List<ViewPoint> viewpoints = new ArrayList<>();
         List<Integer> gPosList = vpvgene.getTSSlist();
         int n=0; // we will order the promoters from first (most upstream) to last
         // Note we do this differently according to strand.
@@ -56,7 +59,8 @@ public class SimpleViewPointCreationTask extends ViewPointCreationTask {
                     downstreamLength(model.getSizeDown()).
                     maximumGcContent(model.getMaxGCcontent()).
                     minimumGcContent(model.getMinGCcontent()).
-                    fastaReader(fastaReader).
+                    sequence(sequence).
+                    segmentCache(segmentCache).
                     minimumFragmentSize(model.getMinFragSize()).
                     maximumRepeatContent(model.getMaxRepeatContent()).
                     marginSize(model.getMarginSize()).
@@ -64,13 +68,14 @@ public class SimpleViewPointCreationTask extends ViewPointCreationTask {
                     accessionNr(vpvgene.getRefSeqID()).
                     c2alignabilityMap(chr2alignMap).
                     model(this.model).
+                    designContext(designContext).
                     build();
             vp.setPromoterNumber(++n,gPosList.size());
-            updateProgress(i++, total); /* this will update the progress bar */
-            updateMessage(String.format("[%d/%d] Creating view point for %s", i, total, vpvgene.toString()));
+            updateProgressForNextViewPoint(vpvgene.toString());
             vp.generateViewpointSimple(model);
-            viewpointlist.add(vp);
+            viewpoints.add(vp);
         }
+        return viewpoints;
     }
 
 
@@ -81,58 +86,24 @@ public class SimpleViewPointCreationTask extends ViewPointCreationTask {
      */
     protected Void call() throws GopherException {
         updateTitle("Creating viewpoints using 'simple' approach");
-        if (ViewPoint.chosenEnzymes == null) {
+        if (designContext == null) {
             logger.error("Attempt to start Simple ViewPoint creation thread with null chosenEnzymes");
             return null;
         }
         this.total = getTotalPromoterCount();
-        this.i = 0;
         logger.trace(String.format("extracting GopherGenes & have %d chromosome groups ", chromosomes.size()));
         long milli = System.currentTimeMillis();
 
-        String faipath = this.model.getIndexedGenomeFastaIndexFile();
-        String fastapath = this.model.getGenomeFastaFile();
-        if (faipath == null) {
-            logger.error("Could not retrieve faidx file for " + fastapath);
-            throw new GopherException("Could not retrieve faidx file for " + fastapath);
+        try (SequenceSource source = openSequenceSource()) {
+            double meanLen = getEstimatedMeanRestrictionFragmentLength(source);
+            model.setEstAvgRestFragLen(meanLen);
+            model.setNormalDistributionSimple(meanLen);
+        } catch (IOException e) {
+            throw new GopherException(String.format("Could not read genome fasta file [%s]",e.getMessage()));
         }
-        IndexedFastaSequenceFile fastaReader;
-        try {
-            fastaReader =new IndexedFastaSequenceFile(new File(fastapath));
-        } catch (FileNotFoundException fnfe) {
-            throw new GopherException(String.format("Could not find genome fasta file [%s]",fnfe.getMessage()));
-        }
-        double meanLen = getEstimatedMeanRestrictionFragmentLength(fastaReader);
-        model.setEstAvgRestFragLen(meanLen);
-        model.setNormalDistributionSimple(meanLen);
-        String chromInfoPath=model.getChromInfoPathIncludingFileNameGz();
-        String alignabilitMapPath=model.getAlignabilityMapPathIncludingFileNameGz();
-        int kmerSize=Default.KMER_SIZE;
-        try {
-            AlignabilityMapIterator apiterator = new AlignabilityMapIterator(alignabilitMapPath,chromInfoPath, kmerSize);
-            while (apiterator.hasNext()) {
-                AlignabilityMap apair = apiterator.next();
-                String referenceSequenceID = apair.getChromName();
-                logger.trace("Creating viewpoints for RefID=" + referenceSequenceID);
-                if (!chromosomes.containsKey(referenceSequenceID)) {
-                    continue; // skip if we have no gene on this chromosome
-                }
-                ChromosomeGroup group = chromosomes.get(referenceSequenceID);
-                if (group == null) {
-                    logger.error("group is null while searching for \"" + referenceSequenceID + "\"");
-                    for (ChromosomeGroup g : chromosomes.values()) {
-                        logger.error(g.getReferenceSequenceID());
-                    }
-                } else {
-                    logger.trace("group=" + group.getReferenceSequenceID());
-                }
-                int chromosomeLen = fastaReader.getSequence(referenceSequenceID).length();
-                //for (GopherGene vpvGene : gopherGene.getGenes()) {
-                group.getGenes().stream().forEach(gopherGene -> calculateViewPoints(gopherGene, referenceSequenceID, fastaReader, apair,chromosomeLen));
-            }
-
-        } catch (IOException e){
-            e.printStackTrace();
+        loadCutSiteIndex();
+        if (!createViewPointsForAllChromosomes()) {
+            return null; // cancelled or interrupted, keep the viewpoints of the model
         }
         long end = milli - System.currentTimeMillis();
         logger.trace(String.format("Generation of viewpoints (simple approach) took %.1f sec", end / 1000.0));
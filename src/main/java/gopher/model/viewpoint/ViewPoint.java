@@ -2,11 +2,9 @@ package gopher.model.viewpoint;
 
 import com.google.common.collect.ImmutableList;
 import gopher.model.Model;
-import htsjdk.samtools.reference.IndexedFastaSequenceFile;
 import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.log4j.Logger;
 import gopher.model.Default;
-import gopher.model.RestrictionEnzyme;
 
 import java.io.Serializable;
 import java.text.NumberFormat;
@@ -72,8 +70,6 @@ public class ViewPoint implements Serializable {
     private SegmentFactory segmentFactory;
     /** List of active and inactive restriction {@link gopher.model.viewpoint.Segment} objects that are contained within the viewpoint. */
     private List<Segment> restrictionSegmentList;
-    /** List of restriction enzymes chosen by the User (package scope visibility). */
-    static List<RestrictionEnzyme> chosenEnzymes=null;
     /** The "number" of the promoter for the gene in question. */
     private int promoterNumber;
     /** Total number of promoters associated with this gene. */
@@ -96,7 +92,6 @@ public class ViewPoint implements Serializable {
         return upstreamNucleotideLength;
     }
 
-    static void setChosenEnzymes(List<RestrictionEnzyme> lst) { chosenEnzymes=lst;}
     /** Overall score of this Viewpoint.*/
     private double score;
 
@@ -152,6 +147,17 @@ public class ViewPoint implements Serializable {
         return restrictionSegmentList;
    }
 
+    /**
+     * Calculate the content and baits of all Segments of this viewpoint that have not been calculated yet (see
+     * {@link Segment#evaluate()}). Afterwards, the Segments no longer reference the sequence of the chromosome.
+     */
+    void evaluateSegments() {
+        if (restrictionSegmentList==null) return;
+        for (Segment segment : restrictionSegmentList) {
+            segment.evaluate();
+        }
+    }
+
     /** @return a formated String representing the length of the ViewPoint in kb, e.g., 10;203 kb. */
     public String getTotalAndActiveLengthAsString() {
        double lenInKb=(double)getTotalLengthOfActiveSegments()/1000; // kilobases
@@ -202,13 +208,17 @@ public class ViewPoint implements Serializable {
         this.accession=builder.accessionNr;
         this.maximumRepeatContent=builder.maximumRepeatContent;
         this.model=builder.model;
-        init(builder.fastaReader,builder.c2alignmap, builder.chromosomelen);
+        init(builder.designContext, builder.sequence, builder.segmentCache, builder.c2alignmap, builder.chromosomelen);
     }
 
 
-    private void init(IndexedFastaSequenceFile fastaReader, AlignabilityMap c2align, int chromosomeLength) {
+    private void init(DesignContext designContext, ChromosomeSequence sequence, SegmentCache segmentCache, AlignabilityMap c2align, int chromosomeLength) {
         this.restrictionSegmentList=new ArrayList<>();
         boolean changed;
+        /* The segments are only built once the final range is known. In each iteration, the range only grows, and so
+           the segments (if any) would be built from the cuts of the last iteration anyway. */
+        boolean buildSegments;
+        segmentFactory = null;
         /* Create segmentFactory */
         if(model.getApproach().equals(Model.Approach.SIMPLE)) {
             this.upstreamNucleotideLength=model.getEstAvgRestFragLen().intValue();
@@ -223,34 +233,30 @@ public class ViewPoint implements Serializable {
             do {
                 logger.trace("segmentFactory iteration = " + iteration);
                 changed=false;
-                segmentFactory = new SegmentFactory(this.chromosomeID,
-                        this.genomicPos,
-                        fastaReader,
-                        chromosomeLength,
-                        this.upstreamNucleotideLength,
-                        this.downstreamNucleotideLength,
-                        ViewPoint.chosenEnzymes);
+                if (segmentFactory == null) {
+                    segmentFactory = designContext.createSegmentFactory(this.chromosomeID,
+                            this.genomicPos,
+                            sequence,
+                            chromosomeLength,
+                            this.upstreamNucleotideLength,
+                            this.downstreamNucleotideLength);
+                } else { // only search the flanks that were added to the range
+                    segmentFactory.expand(this.upstreamNucleotideLength, this.downstreamNucleotideLength);
+                }
                 iteration++;
 
-                logger.trace("Number of frags="+restrictionSegmentList.size());
-
                 if(segmentFactory.getNumOfCutsUpstreamPos(genomicPos) < 2
                         && hasMoreSequenceUpstream() ) {
                     this.upstreamNucleotideLength = this.upstreamNucleotideLength + increment;
-                    this.restrictionSegmentList.clear();
                     changed=true;
                 }
                 if(segmentFactory.getNumOfCutsDownstreamPos(genomicPos) < 2
                         && hasMoreSequenceDownstream(chromosomeLength)) {
                     this.downstreamNucleotideLength = this.downstreamNucleotideLength + increment;
-                    this.restrictionSegmentList.clear();
                     changed=true;
                 }
 
-                if((0 < segmentFactory.getNumOfCutsUpstreamPos(genomicPos)) && (0 < segmentFactory.getNumOfCutsDownstreamPos(genomicPos))) {
-                    logger.trace("0<x and 0<y");
-                    initRestrictionFragments(fastaReader, c2align);
-                }
+                buildSegments = (0 < segmentFactory.getNumOfCutsUpstreamPos(genomicPos)) && (0 < segmentFactory.getNumOfCutsDownstreamPos(genomicPos));
                 increment *= 2;
             }
             while (changed && (segmentFactory.getNumOfCutsUpstreamPos(genomicPos) < 2 ||
@@ -272,41 +278,42 @@ public class ViewPoint implements Serializable {
             do {
                 logger.trace("segmentFactory iteration = " + iteration + " (" + this.targetName + ")");
                 changed=false;
-                segmentFactory = new SegmentFactory(this.chromosomeID,
-                        this.genomicPos,
-                        fastaReader,
-                        chromosomeLength,
-                        upstreamLength,
-                        downstreamLength,
-                        ViewPoint.chosenEnzymes);
+                if (segmentFactory == null) {
+                    segmentFactory = designContext.createSegmentFactory(this.chromosomeID,
+                            this.genomicPos,
+                            sequence,
+                            chromosomeLength,
+                            upstreamLength,
+                            downstreamLength);
+                } else { // only search the flanks that were added to the range
+                    segmentFactory.expand(upstreamLength, downstreamLength);
+                }
                 logger.trace("Done with Segment factory");
                 iteration++;
 
-                logger.trace("Number of frags = " + restrictionSegmentList.size());
-
                 if(segmentFactory.getNumOfCutsUpstreamPos(genomicPos-upstreamNucleotideLength) < 2
                         && !(genomicPos-upstreamLength < 0) ) {
                     upstreamLength = upstreamLength + increment;
-                    this.restrictionSegmentList.clear();
                     changed=true;
                 }
                 if(segmentFactory.getNumOfCutsDownstreamPos(genomicPos+downstreamNucleotideLength) < 2
                         && !(chromosomeLength < genomicPos + downstreamLength)) {
                     downstreamLength = downstreamLength + increment;
-                    this.restrictionSegmentList.clear();
                     changed=true;
                 }
 
-                if((0 < segmentFactory.getNumOfCutsUpstreamPos(genomicPos)) && (0 < segmentFactory.getNumOfCutsDownstreamPos(genomicPos))) {
-                    logger.trace("0<x and 0<y");
-                    initRestrictionFragments(fastaReader, c2align);
-                }
+                buildSegments = (0 < segmentFactory.getNumOfCutsUpstreamPos(genomicPos)) && (0 < segmentFactory.getNumOfCutsDownstreamPos(genomicPos));
             }
             while (changed && (segmentFactory.getNumOfCutsUpstreamPos(genomicPos-upstreamNucleotideLength) < 2 ||
                     segmentFactory.getNumOfCutsDownstreamPos(genomicPos+downstreamNucleotideLength) < 2) &&
                     !(genomicPos-upstreamLength < 0) &&//!segmentFactory.maxDistUpOutOfChromosome() &&
                     !(chromosomeLength < genomicPos + downstreamLength));//!segmentFactory.maxDistDownOutOfChromosome());
         }
+        segmentFactory.releaseFinder(); // the range is final, the factory no longer needs the chromosome
+        if (buildSegments) {
+            logger.trace("0<x and 0<y");
+            initRestrictionFragments(sequence, segmentCache, c2align);
+        }
         /* The iterative approach can result in more than one adjacent digest in up- or downstream direction.
            Such digests need to be removed from the list.
          */
@@ -346,24 +353,20 @@ public class ViewPoint implements Serializable {
 
     /**
      * This function uses the information about cutting position sites from the {@link #segmentFactory} to build
-     * a list of {@link Segment} objects in {@link #restrictionSegmentList}.
+     * a list of {@link Segment} objects in {@link #restrictionSegmentList}. If there is a {@link SegmentCache}, Segments
+     * that were already created for another viewpoint on the chromosome are copied from the cache.
      */
-    private void initRestrictionFragments(IndexedFastaSequenceFile fastaReader, AlignabilityMap c2align) {
+    private void initRestrictionFragments(ChromosomeSequence sequence, SegmentCache segmentCache, AlignabilityMap c2align) {
         this.restrictionSegmentList = new ArrayList<>();
-        // if genomicPos occurs on the first digest of the chromosome, add pseudo digest with length 0.
-        if(genomicPos < segmentFactory.getAllCuts().get(0)) {
-            Segment restFrag = new Segment.Builder(chromosomeID,
-                    0,
-                    0).
-                    fastaReader(fastaReader).marginSize(marginSize).build();
-        }
         for (int j = 0; j < segmentFactory.getAllCuts().size() - 1; j++) {
-            Segment restFrag = new Segment.Builder(chromosomeID,
-                    segmentFactory.getUpstreamCut(j),
-                    segmentFactory.getDownstreamCut(j) - 1).
-                    fastaReader(fastaReader).marginSize(marginSize).build();
-            double maxMeanAlignabilityScore = 1.0 * model.getMaxMeanKmerAlignability();
-            restFrag.setUsableBaits(model,c2align,maxMeanAlignabilityScore);
+            int start = segmentFactory.getUpstreamCut(j);
+            int end = segmentFactory.getDownstreamCut(j) - 1;
+            Segment restFrag;
+            if (segmentCache != null) {
+                restFrag = segmentCache.getSegment(start, end, () -> createSegment(start, end, sequence, c2align));
+            } else {
+                restFrag = createSegment(start, end, sequence, c2align);
+            }
             restrictionSegmentList.add(restFrag);
         }
 /*
@@ -374,6 +377,18 @@ public class ViewPoint implements Serializable {
 */
     }
 
+    /**
+     * Create a {@link Segment}. Its content and usable baits are only calculated if they are needed, because most
+     * of the Segments in the (widened) viewpoint are trimmed or are not selected.
+     */
+    private Segment createSegment(int start, int end, ChromosomeSequence sequence, AlignabilityMap c2align) {
+        double maxMeanAlignabilityScore = 1.0 * model.getMaxMeanKmerAlignability();
+        return new Segment.Builder(chromosomeID, start, end).
+                sequence(sequence).marginSize(marginSize).
+                lazyUsableBaits(model,c2align,maxMeanAlignabilityScore).
+                build();
+    }
+
     /** @return a 2-tuple with the number of baits: <up,down>. */
     private List<Integer> getNumberOfBaitsUpDown() {
         ImmutableList.Builder<Integer> builder = new ImmutableList.Builder<>();
@@ -927,7 +942,7 @@ public class ViewPoint implements Serializable {
         private String accessionNr=null;
         private final int genomicPos;
         // other params
-        private IndexedFastaSequenceFile fastaReader;
+        private ChromosomeSequence sequence;
         private String targetName="";
         // Optional parameters - initialized to default values
         /* upstream nucleotide length for digest generation (upstream of genomic pos).*/
@@ -943,6 +958,8 @@ public class ViewPoint implements Serializable {
         private int marginSize=Default.MARGIN_SIZE;
         private Model model;
         private AlignabilityMap c2alignmap;
+        private DesignContext designContext;
+        private SegmentCache segmentCache;
 
         private final int chromosomelen;
 
@@ -959,8 +976,8 @@ public class ViewPoint implements Serializable {
         }
         Builder targetName(String val)
         { targetName = val;  return this; }
-        Builder fastaReader(IndexedFastaSequenceFile val) {
-            this.fastaReader=val; return this;
+        Builder sequence(ChromosomeSequence val) {
+            this.sequence=val; return this;
         }
         Builder maximumGcContent(double maxGC) {
             maxGcContent=maxGC; return this;
@@ -996,6 +1013,14 @@ public class ViewPoint implements Serializable {
         Builder c2alignabilityMap(AlignabilityMap c2am) {
             this.c2alignmap = c2am; return this;
         }
+        /** @param context the restriction enzymes (and other settings) shared by all viewpoints of the design. */
+        Builder designContext(DesignContext context) {
+            this.designContext = context; return this;
+        }
+        /** @param cache Segments shared by the viewpoints on the chromosome (optional). */
+        Builder segmentCache(SegmentCache cache) {
+            this.segmentCache = cache; return this;
+        }
 
         public ViewPoint build() {
             return new ViewPoint(this);
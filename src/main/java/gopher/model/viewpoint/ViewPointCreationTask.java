@@ -1,28 +1,48 @@
 package gopher.model.viewpoint;
 
+import gopher.exception.GopherException;
+import gopher.io.ContigIndex;
+import gopher.io.Platform;
+import gopher.io.SequenceSource;
+import gopher.model.Default;
 import gopher.model.GopherGene;
 import gopher.model.Model;
 import gopher.model.RestrictionEnzyme;
-import htsjdk.samtools.reference.IndexedFastaSequenceFile;
-import htsjdk.samtools.reference.ReferenceSequence;
+import gopher.model.digest.CutSiteIndex;
 import javafx.concurrent.Task;
 import org.apache.log4j.Logger;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
- * Base class for the tasks that create viewpoints.
+ * Base class for the tasks that create viewpoints. The chromosomes are processed concurrently on a
+ * {@link ForkJoinPool} with {@link Model#getThreadCount()} threads; each worker thread uses its own FASTA reader.
+ * The viewpoints are returned in the same order as if the chromosomes had been processed one after the other,
+ * i.e., in the order of the chromosomes in the alignability map and then by position on the chromosome.
  * @author Peter Robinson
  * @version 0.0.3 (2017-09-27)
  */
 public abstract class ViewPointCreationTask extends Task<Void> {
     private static final Logger logger = Logger.getLogger(ViewPointCreationTask.class.getName());
+    /** Name of the file in the Gopher directory in which the average lengths of restriction fragments are cached. */
+    private static final String FRAGMENT_LENGTH_CACHE_FILENAME = "restriction_fragment_lengths.properties";
+    /** Estimated number of bytes needed per base of a chromosome that is being processed (the bases, their cumulative
+     * counts in {@link ChromosomeSequence} and the alignability map). */
+    private static final int BYTES_PER_BASE = 2;
     /**  Key: Name of chromosome; value: Chromosome with {@link GopherGene} objects located on the chromosome. */
     protected Map<String, ChromosomeGroup> chromosomes = null;
     /** The total number of genes for which we are making viewpoints. This number is only used for the progress
@@ -34,8 +54,11 @@ public abstract class ViewPointCreationTask extends Task<Void> {
     protected Model model;
     /** Total number of viewpoints (used for the progress dialog) */
     protected int total;
-    /** Index of current viewpoint (used for the progress dialog) */
-    protected int i;
+    /** Index of current viewpoint (used for the progress dialog), shared by all worker threads. */
+    private final AtomicInteger i = new AtomicInteger();
+
+    /** Restriction enzymes shared by all viewpoints; null if the user has not chosen any enzymes. */
+    DesignContext designContext = null;
 
     /**
      * List of {@link ViewPoint} objects that we will return to the Model when this Task is done.
@@ -44,14 +67,30 @@ public abstract class ViewPointCreationTask extends Task<Void> {
 
     protected abstract Void call() throws Exception;
 
+    /**
+     * Create the viewpoints for all transcription start sites of one gene. This function is called concurrently
+     * for different genes and must therefore not change any shared state.
+     * @param gopherGene A representation of the input gene and target (usually the TSS)
+     * @param referenceSequenceID Chromosome/scaffold on which the gene is located
+     * @param sequence Bases of the chromosome (loaded once for all genes on the chromosome)
+     * @param segmentCache Segments shared by all viewpoints on the chromosome
+     * @param c2aMap alignability map for the current chromosome
+     * @param chromLen length of the chromosome
+     * @return the viewpoints for the gene
+     */
+    protected abstract List<ViewPoint> calculateViewPoints(GopherGene gopherGene,
+                                                           String referenceSequenceID,
+                                                           ChromosomeSequence sequence,
+                                                           SegmentCache segmentCache,
+                                                           AlignabilityMap c2aMap,
+                                                           int chromLen);
+
 
     ViewPointCreationTask(Model model) {
         this.model = model;
         this.viewpointlist = new ArrayList<>();
         assignGopherGenesToChromosomes(model.getGopherGeneList());
         logger.trace(String.format("ViewPointCreationTask -- we got %d total genes",n_totalGenes));
-        ViewPoint.setChosenEnzymes(model.getChosenEnzymelist());
-        SegmentFactory.restrictionEnzymeMap = new HashMap<>();
         List<RestrictionEnzyme> chosen = model.getChosenEnzymelist();
         if (chosen == null) {
             logger.error("Unable to retrieve list of chosen restriction enzymes");
@@ -59,12 +98,196 @@ public abstract class ViewPointCreationTask extends Task<Void> {
         } else {
             logger.trace(String.format("Setting up viewpoint creation for %d enzymes", chosen.size()));
         }
-        for (RestrictionEnzyme re : chosen) {
-            String site = re.getPlainSite();
-            SegmentFactory.restrictionEnzymeMap.put(site, re);
+        this.designContext = new DesignContext(chosen);
+    }
+
+
+    /**
+     * @return the sequences of the genome of the current project (from the indexed genome FASTA file, or from the
+     * corresponding 2bit file if it has been enabled, see {@link SequenceSource#openGenome})
+     * @throws GopherException if the FASTA file or its index cannot be found
+     */
+    SequenceSource openSequenceSource() throws GopherException {
+        String faipath = this.model.getIndexedGenomeFastaIndexFile();
+        String fastapath = this.model.getGenomeFastaFile();
+        if (faipath == null) {
+            logger.error("Could not retrieve faidx file for " + fastapath);
+            throw new GopherException("Could not retrieve faidx file for " + fastapath);
+        }
+        try {
+            return SequenceSource.openGenome(fastapath, model.getUseTwoBitGenome());
+        } catch (IOException e) {
+            throw new GopherException(String.format("Could not open genome fasta file [%s]",e.getMessage()));
+        }
+    }
+
+    /**
+     * Load (or build) the genome-wide index of the restriction sites of the chosen enzymes. The segment factories of
+     * all viewpoints will then look up the cutting positions in the index instead of searching the sequence.
+     * @throws GopherException if the genome FASTA file cannot be read
+     */
+    void loadCutSiteIndex() throws GopherException {
+        updateMessage("Indexing restriction sites...");
+        CutSiteIndex index = CutSiteIndex.loadOrBuild(model.getGenomeFastaFile(), designContext.getChosenEnzymes(),
+                model.getUseTwoBitGenome());
+        this.designContext = designContext.withCutSiteIndex(index);
+    }
+
+    /**
+     * Create the viewpoints for all chromosome groups and store them in {@link #viewpointlist}. The chromosomes are
+     * read from the alignability map (see {@link AlignabilityMapCache}) one at a time and handed to a pool of worker
+     * threads; to limit the amount of memory used, a chromosome is only started if the estimated size of the
+     * chromosomes in memory stays within {@link Default#CHROMOSOME_MEMORY_FRACTION} of the heap (a chromosome that is
+     * larger than this budget is processed on its own).
+     * @return true if the viewpoints were created for all chromosomes, false if the task was cancelled or interrupted
+     * (in which case {@link #viewpointlist} is incomplete and must not be passed to the model)
+     * @throws GopherException if the genome FASTA file or its index or the alignability map cannot be read
+     */
+    boolean createViewPointsForAllChromosomes() throws GopherException {
+        int threadCount = model.getThreadCount();
+        logger.trace(String.format("Creating viewpoints for %d chromosome groups with %d threads", chromosomes.size(), threadCount));
+        // the sequence source is shared by the worker threads if it is thread safe, otherwise each thread opens its own
+        SequenceSource sharedSource = openSequenceSource(); // fail early if the FASTA file cannot be opened
+        ThreadLocal<SequenceSource> workerSequenceSource = new ThreadLocal<>();
+        ConcurrentLinkedQueue<SequenceSource> openedSequenceSources = new ConcurrentLinkedQueue<>();
+        openedSequenceSources.add(sharedSource);
+        // permits are kilobytes of the memory budget for the chromosomes in memory
+        int memoryBudget = getChromosomeMemoryBudget();
+        Semaphore chromosomesInMemory = new Semaphore(memoryBudget);
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        List<ForkJoinTask<List<ViewPoint>>> chromosomeTasks = new ArrayList<>();
+        ContigIndex contigIndex = model.getContigIndex();
+        String chromInfoPath=model.getChromInfoPathIncludingFileNameGz();
+        String alignabilitMapPath=model.getAlignabilityMapPathIncludingFileNameGz();
+        int kmerSize=Default.KMER_SIZE;
+        try {
+            // the bedGraph file is only parsed if the binary cache of the alignability map cannot be written; the
+            // cache only reads the maps of the chromosomes with genes
+            AlignabilityMapCache alignabilityMapCache = AlignabilityMapCache.loadOrBuild(alignabilitMapPath, chromInfoPath);
+            Iterator<AlignabilityMap> apiterator = alignabilityMapCache != null ?
+                    alignabilityMapCache.iterator(kmerSize, chromosomes::containsKey) :
+                    new AlignabilityMapIterator(alignabilitMapPath,chromInfoPath, kmerSize);
+            while (apiterator.hasNext()) {
+                if (isCancelled()) // true if user has cancelled the task
+                    return false;
+                AlignabilityMap apair = apiterator.next();
+                String referenceSequenceID = apair.getChromName();
+                ChromosomeGroup group = chromosomes.get(referenceSequenceID);
+                if (group == null) {
+                    continue; // skip if we have no gene on this chromosome
+                }
+                if (!contigIndex.contains(referenceSequenceID)) {
+                    logger.warn(String.format("Skipping %d genes on %s, which is not in the genome FASTA file",
+                            group.getGenes().size(), referenceSequenceID));
+                    continue;
+                }
+                int chromosomeLen = contigIndex.getLength(referenceSequenceID);
+                int permits = (int) Math.min(memoryBudget, (long) chromosomeLen * BYTES_PER_BASE / 1024 + 1);
+                chromosomesInMemory.acquire(permits);
+                chromosomeTasks.add(pool.submit(() -> {
+                    try {
+                        SequenceSource source = sharedSource.isThreadSafe() ? sharedSource : workerSequenceSource.get();
+                        if (source == null) {
+                            source = openSequenceSource();
+                            workerSequenceSource.set(source);
+                            openedSequenceSources.add(source);
+                        }
+                        return calculateViewPointsForChromosome(group, source, apair, chromosomeLen);
+                    } finally {
+                        chromosomesInMemory.release(permits);
+                    }
+                }));
+            }
+            // collect the results in the order of the chromosomes
+            for (ForkJoinTask<List<ViewPoint>> task : chromosomeTasks) {
+                viewpointlist.addAll(task.join());
+            }
+            // the worker threads skip the remaining genes once the task has been cancelled
+            return !isCancelled();
+        } catch (IOException e) {
+            logger.error("Could not read the alignability map: " + e.getMessage());
+            throw new GopherException(String.format("Could not read the alignability map [%s]", e.getMessage()), e);
+        } catch (UncheckedIOException e) {
+            // read errors of the iterator of the cached alignability map
+            logger.error("Could not read the alignability map: " + e.getCause().getMessage());
+            throw new GopherException(String.format("Could not read the alignability map [%s]",
+                    e.getCause().getMessage()), e.getCause());
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while creating viewpoints");
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            // if we stop early (cancelled, interrupted or failed), the chromosomes that have not been started are
+            // cancelled and the running ones are awaited (they skip their remaining genes once the task is cancelled),
+            // so that no worker thread uses a sequence source after it has been closed
+            for (ForkJoinTask<List<ViewPoint>> task : chromosomeTasks) {
+                task.cancel(false);
+            }
+            pool.shutdown();
+            pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            pool.shutdownNow();
+            for (SequenceSource source : openedSequenceSources) {
+                try {
+                    source.close();
+                } catch (IOException e) {
+                    logger.error("Could not close genome fasta file: " + e.getMessage());
+                }
+            }
         }
     }
 
+    /**
+     * @return the memory (in kilobytes) that may be used by the chromosomes that are held in memory at the same time
+     */
+    private static int getChromosomeMemoryBudget() {
+        long maxMemory = Runtime.getRuntime().maxMemory(); // Long.MAX_VALUE if there is no limit
+        long budget = (long) (maxMemory / 1024 * Default.CHROMOSOME_MEMORY_FRACTION);
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, budget));
+    }
+
+    /**
+     * Create the viewpoints for all genes on one chromosome (this is run on one of the worker threads). The genes
+     * are processed as a parallel stream, which runs in the pool of the calling worker thread, so that idle workers
+     * can help with the chromosomes that have many genes. The order of the genes is preserved. The content and
+     * baits of the Segments of the viewpoints are calculated before this function returns.
+     * @param group the genes on the chromosome
+     * @param source the genome sequences (a FASTA reader of the current worker thread or a shared 2bit source)
+     * @param apair alignability map for the chromosome
+     * @param chromosomeLen length of the chromosome (from the FASTA index)
+     * @return viewpoints for all genes on the chromosome, ordered by position
+     */
+    private List<ViewPoint> calculateViewPointsForChromosome(ChromosomeGroup group,
+                                                             SequenceSource source,
+                                                             AlignabilityMap apair,
+                                                             int chromosomeLen) {
+        String referenceSequenceID = group.getReferenceSequenceID();
+        logger.trace("Creating viewpoints for RefID=" + referenceSequenceID);
+        // read the chromosome once and share it between all viewpoints on this chromosome
+        ChromosomeSequence sequence = ChromosomeSequence.load(source, referenceSequenceID);
+        // restriction fragments are often contained in the viewpoints of several genes or transcripts
+        SegmentCache segmentCache = n_totalGenes >= Default.COMPACT_BAIT_STORE_MIN_GENES ?
+                new SegmentCache(new BaitStore(referenceSequenceID)) :
+                new SegmentCache();
+        List<ViewPoint> viewpoints = group.getGenes().parallelStream().
+                filter(gene -> !isCancelled()). // true if user has cancelled the task
+                map(gene -> calculateViewPoints(gene, referenceSequenceID, sequence, segmentCache, apair, chromosomeLen)).
+                flatMap(List::stream).
+                collect(Collectors.toList());
+        // the Segments that were kept by the viewpoints are evaluated now, while the chromosome is still in memory, so
+        // that they do not keep the chromosome, the model and the alignability map alive after this task
+        viewpoints.parallelStream().forEach(ViewPoint::evaluateSegments);
+        return viewpoints;
+    }
+
+    /**
+     * Update the progress bar and the message of the progress dialog for the next viewpoint.
+     * @param name name of the viewpoint (or the gene) that is being created
+     */
+    void updateProgressForNextViewPoint(String name) {
+        int current = i.getAndIncrement();
+        updateProgress(current, total); /* this will update the progress bar */
+        updateMessage(String.format("[%d/%d] Creating view point for %s", current + 1, total, name));
+    }
 
     /**
      * Here, we assign the {@link GopherGene} objects to the corresponding chromosomes. This allows us to
@@ -92,46 +315,21 @@ public abstract class ViewPointCreationTask extends Task<Void> {
     }
 
     /**
-     * Estimate the average size of restriction fragments for the chosen restriction enyzymes
-     * by looking at at least 100,000 fragments
-     * @param fastaReader HTSJDK object to read the genome FASTA file
+     * Estimate the average size of restriction fragments for the chosen restriction enyzymes. The estimate is
+     * cached in the Gopher directory for each genome build and set of enzymes; if it is not yet cached, it is
+     * estimated from randomly chosen windows with at least 100,000 fragments (see {@link RestrictionFragmentLengthEstimator}).
+     * @param source the sequences of the genome
      * @return Estimate of the average fragment length in the genome for the selected restriction enzyme(s)
      */
-    double getEstimatedMeanRestrictionFragmentLength(IndexedFastaSequenceFile fastaReader) {
-        logger.trace("Estimating the average length of restriction fragments from at least 100,000 fragments...");
-        int THRESHOLD_NUMBER_OF_FRAGMENTS=100_000;
-        // Combine all patterns into one regular expression.
-        String regExCombinedCutPat = model.getChosenEnzymelist().
-                stream().
-                map(RestrictionEnzyme::getPlainSite).
-                collect(Collectors.joining("|"));
-        // count all occurrences of the cutting motifs and divide by sequence length
-        int totalNumOfCuts = 0;
-        long totalLength = 0;
-        ReferenceSequence rf = fastaReader.nextSequence();
-        while(rf != null) {
-            if(rf.getName().contains("_")) {rf = fastaReader.nextSequence(); continue;} // skip random chromosomes
-            if(rf.getName().contains("chrM")) {rf = fastaReader.nextSequence(); continue;} // skip random chromosome M
-            logger.trace("Cutting: " + rf.getName());
-            String sequence = fastaReader.getSequence(rf.getName()).getBaseString();
-            logger.trace("\tPattern: " + regExCombinedCutPat);
-            Pattern pattern = Pattern.compile(regExCombinedCutPat,Pattern.CASE_INSENSITIVE);
-            Matcher matcher = pattern.matcher(sequence);
-            while (matcher.find()) {
-                totalNumOfCuts++;
-            }
-
-            totalLength = totalLength + sequence.length();
-            logger.trace("\tCurrent number of cuts: " + totalNumOfCuts);
-            logger.trace("\tCurrent length: " + totalLength);
-            logger.trace("\tEstimated average length : " + (1.0*totalLength/totalNumOfCuts));
-            rf = fastaReader.nextSequence();
-            if(THRESHOLD_NUMBER_OF_FRAGMENTS<totalNumOfCuts) {break;}
-        }
-
-        double estAvgRestFragLen = (double)totalLength/totalNumOfCuts;
+    double getEstimatedMeanRestrictionFragmentLength(SequenceSource source) {
+        logger.trace("Estimating the average length of restriction fragments...");
+        File gopherDir = Platform.getGopherDir();
+        File cacheFile = gopherDir == null ? null : new File(gopherDir, FRAGMENT_LENGTH_CACHE_FILENAME);
+        RestrictionFragmentLengthEstimator estimator = new RestrictionFragmentLengthEstimator(cacheFile);
+        double estAvgRestFragLen = estimator.getMeanFragmentLength(model.getGenomeBuild(),
+                model.getChosenEnzymelist(),
+                source);
         model.setEstAvgRestFragLen(estAvgRestFragLen);
-        logger.trace("Total number of cuts: " + totalNumOfCuts +"; Total length: " + totalLength);
         logger.trace("Estimated average length : " + estAvgRestFragLen);
         return estAvgRestFragLen;
     }
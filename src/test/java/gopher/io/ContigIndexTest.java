@@ -0,0 +1,55 @@
+package gopher.io;
+
+import gopher.exception.GopherException;
+import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ContigIndexTest {
+
+    private static String testFastaFile;
+
+    private static ContigIndex contigIndex;
+
+    @BeforeClass
+    public static void setup() throws GopherException {
+        ClassLoader classLoader = ContigIndexTest.class.getClassLoader();
+        testFastaFile = classLoader.getResource("testgenome/test_genome.fa").getFile();
+        contigIndex = ContigIndex.fromFaiFile(testFastaFile + ".fai", null);
+    }
+
+    @Test
+    public void testContigNames() {
+        assertEquals(6, contigIndex.size());
+        assertEquals("chr_t1_GATC", contigIndex.getContigNames().get(0));
+        assertTrue(contigIndex.contains("veryshort"));
+        assertFalse(contigIndex.contains("chr1"));
+    }
+
+    /** The lengths from the fai file must be the same as the lengths of the sequences. */
+    @Test
+    public void testLengthsAgreeWithSequences() throws Exception {
+        try (IndexedFastaSequenceFile fastaReader = new IndexedFastaSequenceFile(new File(testFastaFile))) {
+            for (String contig : contigIndex.getContigNames()) {
+                assertEquals(fastaReader.getSequence(contig).length(), contigIndex.getLength(contig));
+            }
+        }
+    }
+
+    @Test
+    public void testCanonical() {
+        assertTrue(contigIndex.isCanonical("veryshort"));
+        assertFalse(contigIndex.isCanonical("chr_t1_GATC"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownContig() {
+        contigIndex.getLength("chr1");
+    }
+}
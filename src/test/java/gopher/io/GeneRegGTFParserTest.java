@@ -1,13 +1,25 @@
 package gopher.io;
 
+import gopher.model.regulatoryexome.RegulatoryElement;
 import org.junit.Assert;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
 
 public class GeneRegGTFParserTest {
 
     private static GeneRegGTFParser parser;
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 
     @BeforeClass
     public static void init() {
@@ -25,5 +37,33 @@ public class GeneRegGTFParserTest {
         Assert.assertEquals(1,1);
     }
 
+    /** A malformed line throws, but the parser still moves on to the next line. */
+    @Test
+    public void testMalformedLineIsSkipped() throws Exception {
+        File gtf = temporaryFolder.newFile("regulatory_build.gff.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gtf))) {
+            out.write(("chr1\tRegulatory_Build\tregulatory_region\t100\n" +
+                    "chr2\tRegulatory_Build\tregulatory_region\t200\t300\t.\t.\t.\t" +
+                    "ID=ENSR00000223835;feature_type=Enhancer\n").getBytes(StandardCharsets.UTF_8));
+        }
+        GeneRegGTFParser gtfParser = new GeneRegGTFParser(gtf.getAbsolutePath());
+        gtfParser.initGzipReader();
+        Assert.assertTrue(gtfParser.hasNext());
+        try {
+            gtfParser.next();
+            Assert.fail("Expected an exception for the line with too few fields");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+        Assert.assertTrue(gtfParser.hasNext());
+        RegulatoryElement elem = gtfParser.next();
+        Assert.assertEquals("chr2", elem.getChrom());
+        Assert.assertEquals(200, elem.getFrom());
+        Assert.assertEquals(300, elem.getTo());
+        Assert.assertEquals("ENSR00000223835", elem.getId());
+        Assert.assertFalse(gtfParser.hasNext());
+        gtfParser.close();
+    }
+
 
 }
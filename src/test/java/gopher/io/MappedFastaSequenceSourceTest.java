@@ -0,0 +1,140 @@
+package gopher.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class MappedFastaSequenceSourceTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Write the sequences to a FASTA file with the given number of bases per line and line terminator, together
+     * with its index.
+     */
+    private File writeFasta(String filename, Map<String, byte[]> sequences, int lineBases, String newline) throws Exception {
+        File fasta = temporaryFolder.newFile(filename);
+        List<String> faiLines = new ArrayList<>();
+        long offset = 0;
+        try (OutputStream out = new FileOutputStream(fasta)) {
+            for (Map.Entry<String, byte[]> e : sequences.entrySet()) {
+                byte[] header = (">" + e.getKey() + " description" + newline).getBytes(StandardCharsets.US_ASCII);
+                out.write(header);
+                offset += header.length;
+                faiLines.add(String.join("\t", e.getKey(), String.valueOf(e.getValue().length), String.valueOf(offset),
+                        String.valueOf(lineBases), String.valueOf(lineBases + newline.length())));
+                byte[] bases = e.getValue();
+                for (int i = 0; i < bases.length; i += lineBases) {
+                    int n = Math.min(lineBases, bases.length - i);
+                    out.write(bases, i, n);
+                    out.write(newline.getBytes(StandardCharsets.US_ASCII));
+                    offset += n + newline.length();
+                }
+            }
+        }
+        try (PrintWriter out = new PrintWriter(new File(fasta.getPath() + ".fai"))) {
+            faiLines.forEach(out::println);
+        }
+        return fasta;
+    }
+
+    private static Map<String, byte[]> randomSequences(Random random) {
+        Map<String, byte[]> sequences = new LinkedHashMap<>();
+        int[] lengths = {10_000, 60, 61, 1};
+        for (int s = 0; s < lengths.length; s++) {
+            byte[] bases = new byte[lengths[s]];
+            for (int i = 0; i < bases.length; i++) {
+                bases[i] = (byte) "ACGTacgtN".charAt(random.nextInt(9));
+            }
+            sequences.put("chr" + (s + 1), bases);
+        }
+        return sequences;
+    }
+
+    private static void assertSameSequences(Map<String, byte[]> expected, SequenceSource source, Random random) {
+        assertEquals(new ArrayList<>(expected.keySet()), source.getSequenceNames());
+        for (Map.Entry<String, byte[]> e : expected.entrySet()) {
+            byte[] bases = e.getValue();
+            assertEquals(bases.length, source.getSequenceLength(e.getKey()));
+            assertArrayEquals(bases, source.getSequence(e.getKey()));
+            for (int k = 0; k < 200; k++) {
+                int start = 1 + random.nextInt(bases.length);
+                int end = start - 1 + random.nextInt(bases.length - start + 2);
+                assertArrayEquals(Arrays.copyOfRange(bases, start - 1, end), source.getSubsequence(e.getKey(), start, end));
+            }
+        }
+    }
+
+    /** The mapped source must return the same bases as the HTSJDK reader. */
+    @Test
+    public void testAgreesWithHtsjdk() throws Exception {
+        String testFastaFile = MappedFastaSequenceSourceTest.class.getClassLoader().getResource("testgenome/test_genome.fa").getFile();
+        Map<String, byte[]> sequences = new LinkedHashMap<>();
+        try (SequenceSource fasta = new IndexedFastaSequenceSource(new File(testFastaFile))) {
+            for (String name : fasta.getSequenceNames()) {
+                sequences.put(name, fasta.getSequence(name));
+            }
+        }
+        try (SequenceSource source = SequenceSource.open(testFastaFile)) {
+            assertTrue(source instanceof MappedFastaSequenceSource);
+            assertSameSequences(sequences, source, new Random(1));
+        }
+    }
+
+    /** Different line lengths and line terminators, and sequences that end exactly at the end of a line. */
+    @Test
+    public void testLineGeometry() throws Exception {
+        Random random = new Random(42);
+        Map<String, byte[]> sequences = randomSequences(random);
+        for (String newline : new String[]{"\n", "\r\n"}) {
+            for (int lineBases : new int[]{60, 1, 7}) {
+                File fasta = writeFasta("test" + lineBases + newline.length() + ".fa", sequences, lineBases, newline);
+                try (SequenceSource source = new MappedFastaSequenceSource(fasta)) {
+                    assertSameSequences(sequences, source, random);
+                }
+            }
+        }
+    }
+
+    /** A source can be used by several threads at the same time. */
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        Map<String, byte[]> sequences = randomSequences(new Random(7));
+        File fasta = writeFasta("concurrent.fa", sequences, 50, "\n");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (SequenceSource source = new MappedFastaSequenceSource(fasta)) {
+            assertTrue(source.isThreadSafe());
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                Random random = new Random(t);
+                futures.add(executor.submit(() -> assertSameSequences(sequences, source, random)));
+            }
+            for (Future<?> future : futures) {
+                future.get(); // rethrows assertion errors of the threads
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIntervalOutsideOfSequence() throws Exception {
+        File fasta = writeFasta("outside.fa", randomSequences(new Random(3)), 60, "\n");
+        try (SequenceSource source = new MappedFastaSequenceSource(fasta)) {
+            source.getSubsequence("chr2", 10, 61);
+        }
+    }
+}
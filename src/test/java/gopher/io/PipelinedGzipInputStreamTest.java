@@ -0,0 +1,131 @@
+package gopher.io;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class PipelinedGzipInputStreamTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /** @return random text of the given size (compressible, like the bedGraph files). */
+    private static byte[] randomText(Random random, int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) "ACGT0123456789\t\n".charAt(random.nextInt(16));
+        }
+        return bytes;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[10_000];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private File gzip(String name, byte[] bytes) throws IOException {
+        File file = temporaryFolder.newFile(name);
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(file))) {
+            out.write(bytes);
+        }
+        return file;
+    }
+
+    private File bgzip(String name, byte[] bytes) throws IOException {
+        File file = temporaryFolder.newFile(name);
+        try (OutputStream out = new BlockCompressedOutputStream(file)) {
+            out.write(bytes);
+        }
+        return file;
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+        Random random = new Random(42);
+        for (int size : new int[]{0, 1, PipelinedGzipInputStream.CHUNK_SIZE, 3 * PipelinedGzipInputStream.CHUNK_SIZE + 17}) {
+            byte[] bytes = randomText(random, size);
+            File file = gzip("test" + size + ".gz", bytes);
+            assertFalse(PipelinedGzipInputStream.isBgzf(file));
+            assertArrayEquals(bytes, readAll(new PipelinedGzipInputStream(file)));
+        }
+    }
+
+    @Test
+    public void testBgzf() throws Exception {
+        Random random = new Random(7);
+        for (int size : new int[]{0, 100, 5 * PipelinedGzipInputStream.CHUNK_SIZE + 3}) {
+            byte[] bytes = randomText(random, size);
+            File file = bgzip("test" + size + ".bgz", bytes);
+            assertTrue(PipelinedGzipInputStream.isBgzf(file));
+            assertArrayEquals(bytes, readAll(new PipelinedGzipInputStream(file)));
+        }
+    }
+
+    /** Single bytes can be read as well. */
+    @Test
+    public void testReadSingleBytes() throws Exception {
+        byte[] bytes = randomText(new Random(1), 1000);
+        try (InputStream in = new PipelinedGzipInputStream(bgzip("single.bgz", bytes))) {
+            for (byte b : bytes) {
+                assertEquals(b & 0xFF, in.read());
+            }
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptBgzf() throws Exception {
+        File file = bgzip("corrupt.bgz", randomText(new Random(3), 200_000));
+        byte[] compressed = Files.readAllBytes(file.toPath());
+        compressed[compressed.length / 2] ^= 0x55;
+        Files.write(file.toPath(), compressed);
+        readAll(new PipelinedGzipInputStream(file));
+    }
+
+    /** A corrupt size of the inflated data of a block must result in an IOException (and not block the reader). */
+    @Test(expected = IOException.class, timeout = 10_000)
+    public void testCorruptBgzfBlockSize() throws Exception {
+        File file = bgzip("corrupt_size.bgz", randomText(new Random(4), 1000));
+        byte[] compressed = Files.readAllBytes(file.toPath());
+        int blockSize = ((compressed[16] & 0xFF) | (compressed[17] & 0xFF) << 8) + 1;
+        for (int i = blockSize - 4; i < blockSize; i++) {
+            compressed[i] = (byte) 0xFF; // ISIZE of the first block is now -1
+        }
+        Files.write(file.toPath(), compressed);
+        readAll(new PipelinedGzipInputStream(file));
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotGzipped() throws Exception {
+        File file = temporaryFolder.newFile("plain.txt");
+        Files.write(file.toPath(), "chr1\t0\t100\t1\n".getBytes());
+        readAll(new PipelinedGzipInputStream(file));
+    }
+
+    /** Closing the stream before the end of the file must stop the threads (and not block). */
+    @Test(timeout = 10_000)
+    public void testCloseEarly() throws Exception {
+        Random random = new Random(5);
+        byte[] bytes = randomText(random, 8 * PipelinedGzipInputStream.CHUNK_SIZE);
+        for (File file : new File[]{gzip("early.gz", bytes), bgzip("early.bgz", bytes)}) {
+            InputStream in = new PipelinedGzipInputStream(file);
+            assertEquals(bytes[0] & 0xFF, in.read());
+            in.close();
+            assertEquals(-1, in.read());
+        }
+    }
+}
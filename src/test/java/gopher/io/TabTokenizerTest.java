@@ -0,0 +1,155 @@
+package gopher.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TabTokenizerTest {
+
+    private static TabTokenizer tokenizer(String text) {
+        return new TabTokenizer(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** @return the fields of all lines. */
+    private static List<List<String>> readAll(String text) throws IOException {
+        List<List<String>> lines = new ArrayList<>();
+        try (TabTokenizer tokens = tokenizer(text)) {
+            while (tokens.nextLine()) {
+                List<String> fields = new ArrayList<>();
+                for (int i = 0; i < tokens.getFieldCount(); i++) {
+                    fields.add(tokens.getString(i));
+                }
+                lines.add(fields);
+            }
+        }
+        return lines;
+    }
+
+    private static List<String> fields(String line) {
+        List<String> fields = new ArrayList<>();
+        for (String field : line.split("\t", -1)) fields.add(field);
+        return fields;
+    }
+
+    @Test
+    public void testLines() throws Exception {
+        List<List<String>> lines = readAll("chr1\t100\t200\t0.25\n\nchr2\t0\t300\t1\r\nlast\t\t");
+        assertEquals(4, lines.size());
+        assertEquals(fields("chr1\t100\t200\t0.25"), lines.get(0));
+        assertEquals(fields(""), lines.get(1));
+        assertEquals(fields("chr2\t0\t300\t1"), lines.get(2)); // without the \r
+        assertEquals(fields("last\t\t"), lines.get(3)); // empty trailing fields are kept
+        assertTrue(readAll("").isEmpty());
+        assertEquals(1, readAll("\n").size());
+    }
+
+    /** Lines that are split between two reads from the stream, and lines that are longer than the buffer. */
+    @Test
+    public void testLongLines() throws Exception {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int k = 0; k < 2000; k++) {
+            StringBuilder line = new StringBuilder();
+            int n = k % 100 == 0 ? 50_000 : 1 + random.nextInt(20);
+            for (int i = 0; i < n; i++) {
+                if (i > 0) line.append('\t');
+                line.append(random.nextInt(1_000_000));
+            }
+            expected.add(line.toString());
+            text.append(line).append('\n');
+        }
+        List<List<String>> lines = readAll(text.toString());
+        assertEquals(expected.size(), lines.size());
+        for (int k = 0; k < expected.size(); k++) {
+            assertEquals(fields(expected.get(k)), lines.get(k));
+        }
+    }
+
+    @Test
+    public void testNumbers() throws Exception {
+        try (TabTokenizer tokens = tokenizer("-17\t+3\t2147483647\t-2147483648\t0.333333\t1\t1e-3\t-0.25\t.5\tNaN\n")) {
+            assertTrue(tokens.nextLine());
+            assertEquals(-17, tokens.getInt(0));
+            assertEquals(3, tokens.getInt(1));
+            assertEquals(Integer.MAX_VALUE, tokens.getInt(2));
+            assertEquals(Integer.MIN_VALUE, tokens.getInt(3));
+            String[] doubles = {"0.333333", "1", "1e-3", "-0.25", ".5", "NaN"};
+            for (int i = 0; i < doubles.length; i++) {
+                assertEquals(Double.parseDouble(doubles[i]), tokens.getDouble(4 + i), 0.0);
+            }
+        }
+    }
+
+    /** The doubles must be exactly the same as those of Double.parseDouble. */
+    @Test
+    public void testDoublesAgreeWithParseDouble() throws Exception {
+        Random random = new Random(7);
+        StringBuilder line = new StringBuilder();
+        List<String> values = new ArrayList<>();
+        for (int k = 0; k < 10_000; k++) {
+            String value;
+            switch (k % 4) {
+                case 0: value = Double.toString(1.0 / (1 + random.nextInt(10_000))); break;
+                case 1: value = String.format(Locale.US, "%.6f", random.nextDouble()); break;
+                case 2: value = Double.toString(random.nextDouble() * 1e6); break;
+                default: value = "0." + Long.toString(Math.abs(random.nextLong())); break; // more than 15 digits
+            }
+            values.add(value);
+            if (k > 0) line.append('\t');
+            line.append(value);
+        }
+        try (TabTokenizer tokens = tokenizer(line.toString())) {
+            assertTrue(tokens.nextLine());
+            for (int k = 0; k < values.size(); k++) {
+                assertEquals(values.get(k), Double.doubleToLongBits(Double.parseDouble(values.get(k))),
+                        Double.doubleToLongBits(tokens.getDouble(k)));
+            }
+        }
+    }
+
+    @Test
+    public void testFieldComparison() throws Exception {
+        try (TabTokenizer tokens = tokenizer("chr1\t+\t100\t100\t1000")) {
+            assertTrue(tokens.nextLine());
+            assertTrue(tokens.fieldEquals(0, "chr1"));
+            assertFalse(tokens.fieldEquals(0, "chr10"));
+            assertTrue(tokens.fieldEquals(1, "+"));
+            assertTrue(tokens.fieldsEqual(2, 3));
+            assertFalse(tokens.fieldsEqual(3, 4));
+            assertFalse(tokens.nextLine());
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testNotAnInteger() throws Exception {
+        try (TabTokenizer tokens = tokenizer("chr1\t12a")) {
+            tokens.nextLine();
+            tokens.getInt(1);
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testIntegerOutOfRange() throws Exception {
+        try (TabTokenizer tokens = tokenizer("2147483648")) {
+            tokens.nextLine();
+            tokens.getInt(0);
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testMissingField() throws Exception {
+        try (TabTokenizer tokens = tokenizer("chr1\t100")) {
+            tokens.nextLine();
+            tokens.getString(2);
+        }
+    }
+}
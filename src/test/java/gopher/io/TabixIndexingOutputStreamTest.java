@@ -0,0 +1,120 @@
+package gopher.io;
+
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.readers.TabixReader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TabixIndexingOutputStreamTest {
+
+    /** Columns of the digest file: chromosome, start and end (one-based, inclusive), after one header line. */
+    private static final TabixFormat DIGEST_FORMAT = new TabixFormat(TabixFormat.GENERIC_FLAGS, 1, 2, 3, '#', 1);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /** @return consecutive fragments (chromosome, one-based start, end) on three chromosomes. */
+    private static List<String[]> fragments(Random random) {
+        List<String[]> fragments = new ArrayList<>();
+        for (String chrom : new String[]{"chr1", "chr2", "chr10"}) {
+            int start = 1;
+            while (start < 2_000_000) {
+                int end = start + random.nextInt(5000);
+                fragments.add(new String[]{chrom, String.valueOf(start), String.valueOf(end)});
+                start = end + 1;
+            }
+        }
+        return fragments;
+    }
+
+    private static String decompress(File file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new PipelinedGzipInputStream(file)) {
+            byte[] buffer = new byte[1 << 16];
+            int n;
+            while ((n = in.read(buffer)) >= 0) out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static List<String> query(File file, String region) throws IOException {
+        List<String> lines = new ArrayList<>();
+        TabixReader reader = new TabixReader(file.getPath());
+        try {
+            TabixReader.Iterator iterator = reader.query(region);
+            String line;
+            while (iterator != null && (line = iterator.next()) != null) lines.add(line);
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    /** Regions are queried with the index, and the file decompresses to the lines that were written. */
+    @Test
+    public void testDigestFormat() throws Exception {
+        List<String[]> fragments = fragments(new Random(42));
+        File file = temporaryFolder.newFile("digest.txt.gz");
+        StringBuilder expected = new StringBuilder("Chromosome\tFragment_Start_Position\tFragment_End_Position\n");
+        try (Writer out = new OutputStreamWriter(new TabixIndexingOutputStream(file, DIGEST_FORMAT), StandardCharsets.UTF_8)) {
+            out.write(expected.toString());
+            for (int k = 0; k < fragments.size(); k++) {
+                String[] f = fragments.get(k);
+                String line = String.format("%s\t%s\t%s\t%d\tDpnII\tDpnII\n", f[0], f[1], f[2], k);
+                expected.append(line);
+                out.write(line);
+            }
+        }
+        assertTrue(new File(file.getPath() + ".tbi").isFile());
+        assertEquals(expected.toString(), decompress(file));
+
+        Random random = new Random(7);
+        for (int q = 0; q < 50; q++) {
+            String chrom = fragments.get(random.nextInt(fragments.size()))[0];
+            int from = 1 + random.nextInt(2_000_000);
+            int to = from + random.nextInt(20_000);
+            List<String> expectedLines = new ArrayList<>();
+            for (int k = 0; k < fragments.size(); k++) {
+                String[] f = fragments.get(k);
+                if (f[0].equals(chrom) && Integer.parseInt(f[1]) <= to && Integer.parseInt(f[2]) >= from) {
+                    expectedLines.add(String.format("%s\t%s\t%s\t%d\tDpnII\tDpnII", f[0], f[1], f[2], k));
+                }
+            }
+            assertEquals(expectedLines, query(file, chrom + ":" + from + "-" + to));
+        }
+    }
+
+    /** The start positions of BED files are zero-based. */
+    @Test
+    public void testBedFormat() throws Exception {
+        File file = temporaryFolder.newFile("targets.bed.gz");
+        try (PrintStream out = new PrintStream(new TabixIndexingOutputStream(file, TabixFormat.BED))) {
+            out.println("chr1\t99\t200\tA");
+            out.println("chr1\t200\t300\tB");
+            out.println("chrX\t0\t50\tC");
+        }
+        assertEquals(1, query(file, "chr1:1-100").size());
+        assertEquals(1, query(file, "chr1:200-200").size());
+        assertEquals(2, query(file, "chr1:200-201").size());
+        assertEquals(0, query(file, "chr1:301-1000").size());
+        assertEquals(1, query(file, "chrX:50-60").size());
+        assertEquals("chr1\t99\t200\tA\nchr1\t200\t300\tB\nchrX\t0\t50\tC\n", decompress(file));
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnsortedLines() throws Exception {
+        File file = temporaryFolder.newFile("unsorted.bed.gz");
+        try (OutputStream out = new TabixIndexingOutputStream(file, TabixFormat.BED)) {
+            out.write("chr1\t500\t600\tA\nchr1\t100\t200\tB\n".getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package gopher.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TwoBitSequenceSourceTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /** @return zero-based starts and sizes of the runs of bases for which the predicate is true. */
+    private static List<int[]> findBlocks(byte[] bases, java.util.function.IntPredicate predicate) {
+        List<int[]> blocks = new ArrayList<>();
+        int i = 0;
+        while (i < bases.length) {
+            if (predicate.test(bases[i])) {
+                int start = i;
+                while (i < bases.length && predicate.test(bases[i])) i++;
+                blocks.add(new int[]{start, i - start});
+            } else {
+                i++;
+            }
+        }
+        return blocks;
+    }
+
+    /** Write the sequences to a 2bit file (version 0) with the given byte order. */
+    private static void writeTwoBit(File file, Map<String, byte[]> sequences, ByteOrder order) throws IOException {
+        List<byte[]> records = new ArrayList<>();
+        for (byte[] bases : sequences.values()) {
+            List<int[]> nBlocks = findBlocks(bases, b -> b == 'N' || b == 'n');
+            List<int[]> maskBlocks = findBlocks(bases, Character::isLowerCase);
+            int size = 4 + 4 + 8 * nBlocks.size() + 4 + 8 * maskBlocks.size() + 4 + (bases.length + 3) / 4;
+            ByteBuffer record = ByteBuffer.allocate(size).order(order);
+            record.putInt(bases.length);
+            record.putInt(nBlocks.size());
+            for (int[] block : nBlocks) record.putInt(block[0]);
+            for (int[] block : nBlocks) record.putInt(block[1]);
+            record.putInt(maskBlocks.size());
+            for (int[] block : maskBlocks) record.putInt(block[0]);
+            for (int[] block : maskBlocks) record.putInt(block[1]);
+            record.putInt(0);
+            byte[] packed = new byte[(bases.length + 3) / 4];
+            for (int i = 0; i < bases.length; i++) {
+                int code = "TCAG".indexOf(Character.toUpperCase((char) bases[i]));
+                if (code < 0) code = 0; // N
+                packed[i / 4] |= code << (6 - 2 * (i % 4));
+            }
+            record.put(packed);
+            records.add(record.array());
+        }
+        int indexSize = 0;
+        for (String name : sequences.keySet()) indexSize += 1 + name.length() + 4;
+        ByteBuffer header = ByteBuffer.allocate(16 + indexSize).order(order);
+        header.putInt(TwoBitSequenceSource.SIGNATURE).putInt(0).putInt(sequences.size()).putInt(0);
+        int offset = 16 + indexSize;
+        int k = 0;
+        for (String name : sequences.keySet()) {
+            header.put((byte) name.length()).put(name.getBytes(StandardCharsets.US_ASCII)).putInt(offset);
+            offset += records.get(k++).length;
+        }
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.write(header.array());
+            for (byte[] record : records) out.write(record);
+        }
+    }
+
+    /** @return a random sequence with runs of Ns and of lower case bases. */
+    private static byte[] randomSequence(Random random, int length) {
+        byte[] bases = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bases[i] = (byte) "ACGT".charAt(random.nextInt(4));
+        }
+        for (int r = 0; r < length / 200; r++) {
+            int start = random.nextInt(length);
+            int end = Math.min(length, start + random.nextInt(100));
+            boolean n = random.nextBoolean();
+            boolean lower = random.nextBoolean();
+            for (int i = start; i < end; i++) {
+                if (n) bases[i] = 'N';
+                if (lower) bases[i] = (byte) Character.toLowerCase(bases[i]);
+            }
+        }
+        return bases;
+    }
+
+    private static void assertSameSequences(Map<String, byte[]> expected, SequenceSource source, Random random) {
+        assertEquals(new ArrayList<>(expected.keySet()), source.getSequenceNames());
+        for (Map.Entry<String, byte[]> e : expected.entrySet()) {
+            byte[] bases = e.getValue();
+            assertEquals(bases.length, source.getSequenceLength(e.getKey()));
+            assertArrayEquals(bases, source.getSequence(e.getKey()));
+            for (int k = 0; k < 200; k++) {
+                int start = 1 + random.nextInt(bases.length);
+                int end = start - 1 + random.nextInt(bases.length - start + 2);
+                assertArrayEquals(Arrays.copyOfRange(bases, start - 1, end), source.getSubsequence(e.getKey(), start, end));
+            }
+        }
+    }
+
+    /** The 2bit source must return the same bases (including Ns and soft-masked bases) as the FASTA file. */
+    @Test
+    public void testAgreesWithFasta() throws Exception {
+        String testFastaFile = TwoBitSequenceSourceTest.class.getClassLoader().getResource("testgenome/test_genome.fa").getFile();
+        Map<String, byte[]> sequences = new LinkedHashMap<>();
+        try (SequenceSource fasta = new IndexedFastaSequenceSource(new File(testFastaFile))) {
+            for (String name : fasta.getSequenceNames()) {
+                sequences.put(name, fasta.getSequence(name));
+            }
+        }
+        File twoBit = temporaryFolder.newFile("test_genome.2bit");
+        writeTwoBit(twoBit, sequences, ByteOrder.LITTLE_ENDIAN);
+        try (SequenceSource source = SequenceSource.open(twoBit.getPath())) {
+            assertTrue(source.isThreadSafe());
+            assertSameSequences(sequences, source, new Random(1));
+        }
+    }
+
+    /** Random sequences with many N and mask blocks, in both byte orders. */
+    @Test
+    public void testRandomSequences() throws Exception {
+        Random random = new Random(42);
+        Map<String, byte[]> sequences = new LinkedHashMap<>();
+        sequences.put("chr1", randomSequence(random, 20_001));
+        sequences.put("chr2", randomSequence(random, 5_003));
+        sequences.put("chrUn_random", randomSequence(random, 7));
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+            File twoBit = temporaryFolder.newFile("random_" + order + ".2bit");
+            writeTwoBit(twoBit, sequences, order);
+            try (SequenceSource source = new TwoBitSequenceSource(twoBit)) {
+                assertSameSequences(sequences, source, random);
+            }
+        }
+    }
+
+    /** Write a FASTA file with one line per sequence and its index (.fai). */
+    private static void writeIndexedFasta(File fasta, Map<String, byte[]> sequences) throws IOException {
+        StringBuilder fai = new StringBuilder();
+        long offset = 0;
+        try (FileOutputStream out = new FileOutputStream(fasta)) {
+            for (Map.Entry<String, byte[]> e : sequences.entrySet()) {
+                byte[] header = (">" + e.getKey() + "\n").getBytes(StandardCharsets.US_ASCII);
+                int length = e.getValue().length;
+                out.write(header);
+                out.write(e.getValue());
+                out.write('\n');
+                offset += header.length;
+                fai.append(String.format("%s\t%d\t%d\t%d\t%d\n", e.getKey(), length, offset, length, length + 1));
+                offset += length + 1;
+            }
+        }
+        try (FileOutputStream out = new FileOutputStream(fasta.getPath() + ".fai")) {
+            out.write(fai.toString().getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    /** A 2bit file next to the FASTA file is only used if this is enabled and if it matches the FASTA index. */
+    @Test
+    public void testOpenGenome() throws Exception {
+        File fasta = temporaryFolder.newFile("genome.fa");
+        File twoBit = SequenceSource.getTwoBitFile(fasta.getPath());
+        assertEquals(new File(temporaryFolder.getRoot(), "genome.2bit"), twoBit);
+        Map<String, byte[]> sequences = new LinkedHashMap<>();
+        sequences.put("chrT", "ACGTnnACgt".getBytes(StandardCharsets.US_ASCII));
+        writeIndexedFasta(fasta, sequences);
+        writeTwoBit(twoBit, sequences, ByteOrder.LITTLE_ENDIAN);
+        try (SequenceSource source = SequenceSource.openGenome(fasta.getPath(), true)) {
+            assertTrue(source instanceof TwoBitSequenceSource);
+            assertEquals("ACGTnnACgt", new String(source.getSequence("chrT"), StandardCharsets.US_ASCII));
+        }
+        try (SequenceSource source = SequenceSource.openGenome(fasta.getPath(), false)) {
+            assertFalse(source instanceof TwoBitSequenceSource);
+        }
+        // a 2bit file that does not belong to the FASTA file is not used
+        sequences.put("chrT", "ACGTnnACgtA".getBytes(StandardCharsets.US_ASCII));
+        writeTwoBit(twoBit, sequences, ByteOrder.LITTLE_ENDIAN);
+        try (SequenceSource source = SequenceSource.openGenome(fasta.getPath(), true)) {
+            assertFalse(source instanceof TwoBitSequenceSource);
+            assertEquals("ACGTnnACgt", new String(source.getSequence("chrT"), StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotATwoBitFile() throws Exception {
+        File file = temporaryFolder.newFile("invalid.2bit");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[32]);
+        }
+        new TwoBitSequenceSource(file);
+    }
+}
@@ -0,0 +1,106 @@
+package gopher.model.digest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class DigestRecordWriterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static String read(File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /** The decimals must be exactly the same as those of String.format("%.3f"). */
+    @Test
+    public void testDecimalsAgreeWithFormat() throws Exception {
+        Random random = new Random(42);
+        List<Double> values = new ArrayList<>();
+        for (int k = 0; k <= 4000; k++) {
+            values.add(k / 2000.0); // ties at the fourth decimal
+            values.add(-k / 2000.0);
+        }
+        for (int len = 1; len <= 300; len++) {
+            for (int count = 0; count <= len; count++) {
+                values.add((double) count / len); // G/C and repeat contents
+            }
+        }
+        for (int k = 0; k < 10_000; k++) {
+            values.add(random.nextDouble());
+            values.add((random.nextDouble() - 0.5) * 1e6);
+            values.add(random.nextGaussian() * 1e-3);
+        }
+        double[] special = {0.0, -0.0, -0.0001, 0.0625, 0.9995, 999.9995, 1e11, 1e20, -1e20,
+                Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (double value : special) values.add(value);
+
+        File file = temporaryFolder.newFile("decimals.txt");
+        StringBuilder expected = new StringBuilder();
+        try (DigestRecordWriter writer = new DigestRecordWriter(file)) {
+            for (double value : values) {
+                for (int decimals : new int[]{0, 3, 6}) {
+                    writer.appendDecimal(value, decimals).newLine();
+                    expected.append(String.format(Locale.US, "%." + decimals + "f", value)).append('\n');
+                }
+            }
+        }
+        String[] expectedLines = expected.toString().split("\n");
+        String[] lines = read(file).split("\n");
+        assertEquals(expectedLines.length, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals("value " + values.get(i / 3), expectedLines[i], lines[i]);
+        }
+    }
+
+    @Test
+    public void testFragmentAgreesWithFormat() throws Exception {
+        String format = "%s\t%d\t%d\t%d\t%s\t%s\t%d\t%.3f\t%.3f\t%.3f\t%.3f\t%s\t%d\t%d\n";
+        File file = temporaryFolder.newFile("digest.txt");
+        StringBuilder expected = new StringBuilder("Chromosome\tFragment_Start_Position\n");
+        Random random = new Random(7);
+        try (DigestRecordWriter writer = new DigestRecordWriter(file)) {
+            writer.writeLine("Chromosome\tFragment_Start_Position");
+            for (int k = 0; k < 100_000; k++) { // more than fits into the buffer
+                int start = random.nextInt(Integer.MAX_VALUE);
+                int length = k % 1000 == 0 ? -1 : random.nextInt(10_000);
+                double gc = length > 0 ? (double) random.nextInt(length + 1) / length : 0;
+                double repeat = length > 0 ? (double) random.nextInt(length + 1) / length : 0;
+                String chromosome = k % 500 == 0 ? "chrÜn_" + k : "chr" + (1 + k % 22);
+                writer.writeFragment(chromosome, start, start + length - 1, k + 1, "DpnII", "None", length,
+                        gc, repeat, repeat, gc / -length, k % 2 == 0, k % 5, Integer.MIN_VALUE + k);
+                expected.append(String.format(Locale.US, format, chromosome, start, start + length - 1, k + 1,
+                        "DpnII", "None", length, gc, repeat, repeat, gc / -length, k % 2 == 0 ? "T" : "F",
+                        k % 5, Integer.MIN_VALUE + k));
+            }
+        }
+        assertEquals(expected.toString(), read(file));
+    }
+
+    /** A file that is appended is inserted at the current position of the output. */
+    @Test
+    public void testAppendFile() throws Exception {
+        File segment = temporaryFolder.newFile("segment.txt");
+        try (DigestRecordWriter writer = new DigestRecordWriter(segment)) {
+            writer.writeLine("chr2\t1");
+        }
+        File file = temporaryFolder.newFile("digest.txt");
+        try (DigestRecordWriter writer = new DigestRecordWriter(file)) {
+            writer.writeLine("header");
+            writer.appendFile(segment);
+            writer.writeLine("chr3\t2");
+        }
+        assertEquals("header\nchr2\t1\nchr3\t2\n", read(file));
+    }
+}
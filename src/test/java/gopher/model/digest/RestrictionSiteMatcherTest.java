@@ -0,0 +1,116 @@
+package gopher.model.digest;
+
+import gopher.model.RestrictionEnzyme;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+public class RestrictionSiteMatcherTest {
+
+    private static final RestrictionEnzyme hindIII = new RestrictionEnzyme("HindIII", "A^AGCTT");
+    private static final RestrictionEnzyme dpnII = new RestrictionEnzyme("DpnII", "^GATC");
+    private static final RestrictionEnzyme hinfI = new RestrictionEnzyme("HinfI", "G^ANTC");
+
+    /** @return the cutting positions (one-based) of all sites of one enzyme found by the matcher. */
+    private static List<Integer> scan(RestrictionSiteMatcher matcher, byte[] bases, int enzymeIndex) {
+        List<Integer> cuts = new ArrayList<>();
+        matcher.scan(bases, 0, bases.length, 1, (e, start, cut) -> {
+            if (e == enzymeIndex) cuts.add(cut);
+        });
+        return cuts;
+    }
+
+    /** @return the cutting positions (one-based) found by a case-insensitive regular expression. */
+    private static List<Integer> regex(String sequence, String regex, int offset) {
+        List<Integer> cuts = new ArrayList<>();
+        Matcher matcher = Pattern.compile(regex, Pattern.CASE_INSENSITIVE).matcher(sequence);
+        while (matcher.find()) {
+            cuts.add(matcher.start() + offset + 1);
+        }
+        return cuts;
+    }
+
+    /** The matcher must find the same sites as the regular expressions that were used before. */
+    @Test
+    public void testAgreesWithRegularExpressions() {
+        Random random = new Random(42);
+        String alphabet = "ACGTacgtN";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        String sequence = sb.toString();
+        byte[] bases = sequence.getBytes(StandardCharsets.US_ASCII);
+        RestrictionSiteMatcher matcher = new RestrictionSiteMatcher(Arrays.asList(hindIII, dpnII, hinfI));
+        assertEquals(regex(sequence, "AAGCTT", 1), scan(matcher, bases, 0));
+        assertEquals(regex(sequence, "GATC", 0), scan(matcher, bases, 1));
+        assertEquals(regex(sequence, "GA[ACGT]TC", 1), scan(matcher, bases, 2));
+    }
+
+    /** A non-palindromic site is also found on the reverse strand, with the cut mirrored within the site. */
+    @Test
+    public void testNonPalindromicSite() {
+        RestrictionEnzyme enzyme = new RestrictionEnzyme("Test", "ACTG^G");
+        RestrictionSiteMatcher matcher = new RestrictionSiteMatcher(Arrays.asList(enzyme));
+        // forward site at position 3, reverse complement (CCAGT) at position 12
+        byte[] bases = "ttACTGGtttaCCAGTaa".getBytes(StandardCharsets.US_ASCII);
+        List<Integer> starts = new ArrayList<>();
+        List<Integer> cuts = new ArrayList<>();
+        matcher.scan(bases, 0, bases.length, 1, (e, start, cut) -> {
+            starts.add(start);
+            cuts.add(cut);
+        });
+        assertEquals(Arrays.asList(3, 12), starts);
+        assertEquals(Arrays.asList(7, 13), cuts);
+    }
+
+    /** Sites that do not lie completely within the searched range are not reported. */
+    @Test
+    public void testRange() {
+        RestrictionSiteMatcher matcher = new RestrictionSiteMatcher(Arrays.asList(dpnII));
+        byte[] bases = "GATCGATCGATC".getBytes(StandardCharsets.US_ASCII);
+        List<Integer> cuts = new ArrayList<>();
+        matcher.scan(bases, 1, 10, 1, (e, start, cut) -> cuts.add(cut));
+        assertEquals(Arrays.asList(5), cuts);
+        assertEquals(3, matcher.countSites(bases));
+    }
+
+    /** Scanning a sequence in chunks of any size must report the same sites as scanning it at once. */
+    @Test
+    public void testChunks() {
+        Random random = new Random(7);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            sb.append("ACGTAGCTTGATC".charAt(random.nextInt(13)));
+        }
+        byte[] bases = sb.toString().getBytes(StandardCharsets.US_ASCII);
+        RestrictionSiteMatcher matcher = new RestrictionSiteMatcher(Arrays.asList(hindIII, dpnII, hinfI));
+        List<String> expected = new ArrayList<>();
+        matcher.scan(bases, 0, bases.length, 1, (e, start, cut) -> expected.add(e + ":" + start + ":" + cut));
+        for (int chunkSize : new int[]{1, 3, 4, 5, 97, 1000}) {
+            RestrictionSiteMatcher.Scanner scanner = matcher.newScanner();
+            List<String> sites = new ArrayList<>();
+            for (int from = 0; from < bases.length; from += chunkSize) {
+                byte[] chunk = Arrays.copyOfRange(bases, from, Math.min(bases.length, from + chunkSize));
+                scanner.scan(chunk, 0, chunk.length, from + 1, (e, start, cut) -> sites.add(e + ":" + start + ":" + cut));
+            }
+            assertEquals("chunk size " + chunkSize, expected, sites);
+        }
+        assertEquals(6, matcher.getMaxSiteLength());
+    }
+
+    @Test
+    public void testReverseComplement() {
+        assertEquals("GANTC", RestrictionSiteMatcher.reverseComplement("GANTC"));
+        assertEquals("CCAGT", RestrictionSiteMatcher.reverseComplement("ACTGG"));
+        assertEquals("YNKB", RestrictionSiteMatcher.reverseComplement("VMNR"));
+    }
+}
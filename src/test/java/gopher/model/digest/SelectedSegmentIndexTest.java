@@ -0,0 +1,99 @@
+package gopher.model.digest;
+
+import gopher.io.SequenceSource;
+import gopher.model.viewpoint.ChromosomeSequence;
+import gopher.model.viewpoint.Segment;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SelectedSegmentIndexTest {
+
+    private static final int LENGTH = 100_100;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ChromosomeSequence chrA;
+    private ChromosomeSequence chrB;
+
+    /** Write a genome with two random chromosomes (and its FASTA index). */
+    @Before
+    public void setup() throws Exception {
+        Random random = new Random(42);
+        StringBuilder fasta = new StringBuilder();
+        StringBuilder fai = new StringBuilder();
+        for (String name : new String[]{"chrA", "chrB"}) {
+            fasta.append('>').append(name).append('\n');
+            fai.append(String.format("%s\t%d\t%d\t%d\t%d\n", name, LENGTH, fasta.length(), LENGTH, LENGTH + 1));
+            for (int i = 0; i < LENGTH; i++) {
+                fasta.append("ACGTacgt".charAt(random.nextInt(8)));
+            }
+            fasta.append('\n');
+        }
+        File genome = temporaryFolder.newFile("genome.fa");
+        Files.write(genome.toPath(), fasta.toString().getBytes(StandardCharsets.US_ASCII));
+        Files.write(new File(genome.getPath() + ".fai").toPath(), fai.toString().getBytes(StandardCharsets.US_ASCII));
+        try (SequenceSource source = SequenceSource.open(genome.getPath())) {
+            chrA = ChromosomeSequence.load(source, "chrA");
+            chrB = ChromosomeSequence.load(source, "chrB");
+        }
+    }
+
+    private static Segment segment(ChromosomeSequence chrom, int start, int end) {
+        return new Segment.Builder(chrom.getReferenceSequenceID(), start, end).sequence(chrom).marginSize(5).build();
+    }
+
+    @Test
+    public void testLookup() {
+        List<Segment> segments = new ArrayList<>(Arrays.asList(
+                segment(chrA, 93, 112),
+                segment(chrA, 21, 44),
+                segment(chrB, 1, 20),
+                segment(chrA, 69, 92),
+                segment(chrA, 21, 40))); // same start as an earlier segment
+        SelectedSegmentIndex index = new SelectedSegmentIndex(segments);
+        assertEquals(4, index.getSegmentCount());
+        SelectedSegmentIndex.Chromosome a = index.getChromosome("chrA");
+        assertEquals(0, a.indexOf(21));
+        assertEquals(1, a.indexOf(69));
+        assertEquals(2, a.indexOf(93));
+        assertEquals(-1, a.indexOf(20));
+        assertEquals(-1, a.indexOf(45));
+        assertEquals(-1, a.indexOf(1000));
+        assertEquals(0, index.getChromosome("chrB").indexOf(1));
+        assertEquals(-1, index.getChromosome("chrB").indexOf(21));
+        assertEquals(-1, index.getChromosome("chrC").indexOf(21));
+        assertEquals(0, a.getBaitNumUp(0)); // no baits were calculated for these segments
+        assertEquals(0, a.getBaitNumDown(0));
+    }
+
+    /** Many segments in the order of their positions (which made the binary tree degenerate). */
+    @Test
+    public void testManySortedSegments() {
+        List<Segment> segments = new ArrayList<>();
+        for (int start = 1; start < 100_000; start += 10) {
+            segments.add(segment(chrA, start, start + 9));
+        }
+        SelectedSegmentIndex index = new SelectedSegmentIndex(segments);
+        assertEquals(10_000, index.getSegmentCount());
+        SelectedSegmentIndex.Chromosome a = index.getChromosome("chrA");
+        for (int k = 0; k < 10_000; k++) {
+            assertEquals(k, a.indexOf(1 + 10 * k));
+            assertEquals(-1, a.indexOf(2 + 10 * k));
+        }
+        assertEquals(0, new SelectedSegmentIndex(Collections.emptyList()).getSegmentCount());
+    }
+}
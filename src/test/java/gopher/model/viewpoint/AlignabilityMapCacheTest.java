@@ -0,0 +1,111 @@
+package gopher.model.viewpoint;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class AlignabilityMapCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /** Copy the test alignability map to the temporary folder, where the cache file can be written. */
+    private String[] copyTestMap() throws Exception {
+        File bedGraph = new File(temporaryFolder.getRoot(), "testAlignabilityMap.bedgraph.gz");
+        File chromInfo = new File(temporaryFolder.getRoot(), "chromInfo.txt.gz");
+        Files.copy(Paths.get("src/test/resources/testAlignabilityMap/testAlignabilityMap.bedgraph.gz"), bedGraph.toPath());
+        Files.copy(Paths.get("src/test/resources/testAlignabilityMap/chromInfo.txt.gz"), chromInfo.toPath());
+        return new String[]{bedGraph.getPath(), chromInfo.getPath()};
+    }
+
+    private static void writeGzipped(File file, String... lines) throws Exception {
+        try (PrintWriter out = new PrintWriter(new GZIPOutputStream(new FileOutputStream(file)))) {
+            for (String line : lines) out.println(line);
+        }
+    }
+
+    private static Map<String, AlignabilityMap> parse(String bedGraphPath, String chromInfoPath) throws Exception {
+        Map<String, AlignabilityMap> maps = new LinkedHashMap<>();
+        AlignabilityMapIterator iterator = new AlignabilityMapIterator(bedGraphPath, chromInfoPath, 50);
+        while (iterator.hasNext()) {
+            AlignabilityMap map = iterator.next();
+            maps.put(map.getChromName(), map);
+        }
+        return maps;
+    }
+
+    private static void assertSameMaps(Map<String, AlignabilityMap> expected, AlignabilityMapCache cache) throws Exception {
+        assertEquals(new ArrayList<>(expected.keySet()), cache.getChromosomeNames());
+        for (AlignabilityMap map : expected.values()) {
+            AlignabilityMap cached = cache.getMap(map.getChromName(), 50);
+            assertEquals(map.getChromName(), cached.getChromName());
+            assertEquals(50, cached.getKmersize());
+            assertEquals(map.getSize(), cached.getSize());
+            for (int i = 0; i < map.getSize(); i++) {
+                assertEquals(map.getRunStart(i), cached.getRunStart(i));
+                assertEquals(map.getRunScore(i), cached.getRunScore(i));
+            }
+            assertEquals(map.getScoreSum(1, 2000), cached.getScoreSum(1, 2000));
+        }
+    }
+
+    /** The cached maps must be the same as the maps parsed from the bedGraph file, also when the cache is reloaded. */
+    @Test
+    public void testAgreesWithBedGraph() throws Exception {
+        String[] paths = copyTestMap();
+        Map<String, AlignabilityMap> expected = parse(paths[0], paths[1]);
+        AlignabilityMapCache cache = AlignabilityMapCache.loadOrBuild(paths[0], paths[1]);
+        assertNotNull(cache);
+        File cacheFile = AlignabilityMapCache.getCacheFile(paths[0]);
+        assertTrue(cacheFile.isFile());
+        assertSameMaps(expected, cache);
+        long lastModified = cacheFile.lastModified();
+        AlignabilityMapCache reloaded = AlignabilityMapCache.loadOrBuild(paths[0], paths[1]);
+        assertEquals(lastModified, cacheFile.lastModified()); // the cache was not rebuilt
+        assertSameMaps(expected, reloaded);
+        List<String> iterated = new ArrayList<>();
+        reloaded.iterator(50, chrom -> true).forEachRemaining(map -> iterated.add(map.getChromName()));
+        assertEquals(new ArrayList<>(expected.keySet()), iterated);
+    }
+
+    /** Only the maps of the requested chromosomes are returned. */
+    @Test
+    public void testChromosomeFilter() throws Exception {
+        String[] paths = copyTestMap();
+        AlignabilityMapCache cache = AlignabilityMapCache.loadOrBuild(paths[0], paths[1]);
+        Set<String> needed = new HashSet<>(Arrays.asList("chr3", "chr1", "chrX"));
+        List<String> iterated = new ArrayList<>();
+        cache.iterator(50, needed::contains).forEachRemaining(map -> iterated.add(map.getChromName()));
+        assertEquals(Arrays.asList("chr1", "chr3"), iterated); // in the order of the bedGraph file
+    }
+
+    /** Scores that do not fit into a byte are stored as ints, and the cache is rebuilt if the bedGraph changes. */
+    @Test
+    public void testLargeScoresAndOutdatedCache() throws Exception {
+        File bedGraph = temporaryFolder.newFile("large.bedgraph.gz");
+        File chromInfo = temporaryFolder.newFile("chromInfo.txt.gz");
+        writeGzipped(chromInfo, "chrA\t1000\tx", "chrB\t500\tx");
+        writeGzipped(bedGraph, "chrA\t10\t100\t0.001", "chrA\t100\t900\t1", "chrB\t0\t500\t0.5");
+        AlignabilityMapCache cache = AlignabilityMapCache.loadOrBuild(bedGraph.getPath(), chromInfo.getPath());
+        assertNotNull(cache);
+        assertSameMaps(parse(bedGraph.getPath(), chromInfo.getPath()), cache);
+        assertEquals(1000, cache.getMap("chrA", 50).getScoreAt(50));
+        assertEquals(-1, cache.getMap("chrA", 50).getScoreAt(950));
+
+        writeGzipped(bedGraph, "chrA\t0\t1000\t0.25");
+        assertTrue(bedGraph.setLastModified(bedGraph.lastModified() + 2000));
+        cache = AlignabilityMapCache.loadOrBuild(bedGraph.getPath(), chromInfo.getPath());
+        assertEquals(Collections.singletonList("chrA"), cache.getChromosomeNames());
+        assertEquals(4, cache.getMap("chrA", 50).getScoreAt(950));
+    }
+}
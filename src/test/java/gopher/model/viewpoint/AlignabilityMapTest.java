@@ -79,6 +79,35 @@ public class AlignabilityMapTest {
         assertEquals(-1, scoreArray.get(1),0.001);
     }
 
+    /** The range queries must agree with the scores of the individual positions. */
+    @Test
+    public void testRangeQueriesAgreeWithScoreFromTo() {
+        for (String chrom : new String[]{"chr1", "chr2", "chr3"}) {
+            AlignabilityMap map = chr2alMap.get(chrom);
+            for (int from = 1; from <= 3100; from += 37) {
+                for (int to = from - 1; to <= from + 700; to += 53) {
+                    long sum = 0;
+                    int noScore = 0;
+                    for (Integer score : map.getScoreFromTo(from, to)) {
+                        sum += score;
+                        if (score == -1) noScore++;
+                    }
+                    assertEquals(sum, map.getScoreSum(from, to));
+                    assertEquals(noScore, map.getNoScoreCount(from, to));
+                    assertEquals(noScore > 0, map.containsNoScore(from, to));
+                    if (from <= to) {
+                        assertEquals((double) sum / (to - from + 1), map.getMeanScore(from, to), 0.000001);
+                    }
+                }
+            }
+        }
+        AlignabilityMap chr1map = chr2alMap.get("chr1");
+        assertTrue(chr1map.containsNoScore(100, 101));
+        assertFalse(chr1map.containsNoScore(101, 200));
+        assertEquals(4 * 100, chr1map.getScoreSum(101, 200));
+        assertEquals(2.0, chr1map.getMeanScore(501, 1000), 0.000001);
+    }
+
     @Ignore("Test is ignored because it is only for manual checking of specified regions in real data.")
     @Test
     public void testGetScoreFromToRealData()  {
@@ -0,0 +1,80 @@
+package gopher.model.viewpoint;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class BaitStoreTest {
+
+    /** @return n baits with different coordinates and properties on chr1. */
+    private static List<Bait> createBaits(int n, int offset) {
+        List<Bait> baits = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            int start = offset + 10 * i;
+            baits.add(new Bait("chr1", start, start + 119, (i % 121) / 120.0, 1.0 + i % 7, (i % 13) / 120.0));
+        }
+        return baits;
+    }
+
+    /** The baits must be identical, i.e., the content is stored without loss of precision. */
+    private static void assertSameBaits(List<Bait> expected, List<Bait> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Bait e = expected.get(i);
+            Bait a = actual.get(i);
+            assertEquals(e.getRefId(), a.getRefId());
+            assertEquals(e.getStartPos(), a.getStartPos());
+            assertEquals(e.getEndPos(), a.getEndPos());
+            assertEquals(e.getGCContent(), a.getGCContent(), 0.0);
+            assertEquals(e.getAlignabilityScore(), a.getAlignabilityScore(), 0.0);
+            assertEquals(e.getRepeatContent(), a.getRepeatContent(), 0.0);
+        }
+    }
+
+    /** The lists returned by the store have the same baits as the original lists (also after the arrays grew). */
+    @Test
+    public void testCompact() {
+        BaitStore store = new BaitStore("chr1");
+        List<Bait> first = createBaits(1000, 1);
+        List<Bait> second = createBaits(2000, 50_000);
+        List<Bait> compactFirst = store.compact(first);
+        List<Bait> compactSecond = store.compact(second);
+        assertEquals(3000, store.size());
+        assertSameBaits(first, compactFirst);
+        assertSameBaits(second, compactSecond);
+    }
+
+    /** Lists that are backed by a store (with unused capacity) can be serialized and deserialized. */
+    @Test
+    public void testSerialization() throws Exception {
+        BaitStore store = new BaitStore("chr1");
+        List<Bait> baits = createBaits(10, 1);
+        List<List<Bait>> lists = new ArrayList<>();
+        lists.add(store.compact(baits.subList(0, 4)));
+        lists.add(store.compact(baits.subList(4, 10)));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(lists);
+        }
+        List<List<Bait>> copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            @SuppressWarnings("unchecked")
+            List<List<Bait>> read = (List<List<Bait>>) in.readObject();
+            copy = read;
+        }
+        assertSameBaits(baits.subList(0, 4), copy.get(0));
+        assertSameBaits(baits.subList(4, 10), copy.get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongChromosome() {
+        new BaitStore("chr2").compact(createBaits(1, 1));
+    }
+}
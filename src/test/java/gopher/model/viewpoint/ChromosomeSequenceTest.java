@@ -0,0 +1,59 @@
+package gopher.model.viewpoint;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ChromosomeSequenceTest {
+
+    private static ChromosomeSequence sequence;
+    private static String bases;
+    /** The sequence is placed at this (one-based) position of the reference sequence. */
+    private static final int START_POS = 101;
+
+    @BeforeClass
+    public static void setup() {
+        Random random = new Random(42);
+        String alphabet = "ACGTNacgtn";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        bases = sb.toString();
+        sequence = new ChromosomeSequence("chrT", bases.getBytes(StandardCharsets.US_ASCII), START_POS);
+    }
+
+    /** Count the bases in the one-based closed interval [start,end] that are among chars. */
+    private int countNaive(String chars, int start, int end) {
+        int n = 0;
+        for (int pos = start; pos <= end; pos++) {
+            if (chars.indexOf(bases.charAt(pos - START_POS)) >= 0) n++;
+        }
+        return n;
+    }
+
+    @Test
+    public void testCountsAgreeWithScan() {
+        Random random = new Random(7);
+        for (int k = 0; k < 500; k++) {
+            int start = START_POS + random.nextInt(bases.length());
+            int end = start + random.nextInt(START_POS + bases.length() - start);
+            assertEquals(countNaive("GCgc", start, end), sequence.countGC(start, end));
+            assertEquals(countNaive("ATat", start, end), sequence.countAT(start, end));
+            assertEquals(countNaive("acgtn", start, end), sequence.countLowerCase(start, end));
+            assertEquals(countNaive("ACGTN", start, end), sequence.countUpperCase(start, end));
+            assertEquals(countNaive("Nn", start, end), sequence.countN(start, end));
+        }
+    }
+
+    @Test
+    public void testWholeSequence() {
+        int end = sequence.getEndPos();
+        assertEquals(bases.length(), sequence.countLowerCase(START_POS, end) + sequence.countUpperCase(START_POS, end));
+        assertEquals(0, sequence.countGC(START_POS + 10, START_POS + 9));
+    }
+}
@@ -0,0 +1,92 @@
+package gopher.model.viewpoint;
+
+import gopher.io.SequenceSource;
+import gopher.model.RestrictionEnzyme;
+import gopher.model.digest.RestrictionSiteMatcher;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RestrictionFragmentLengthEstimatorTest {
+
+    private static final List<RestrictionEnzyme> enzymes = Arrays.asList(new RestrictionEnzyme("DpnII", "^GATC"));
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /** Write a random sequence of the given length to a FASTA file with index (60 bases per line). */
+    private File writeRandomFasta(String name, int length) throws Exception {
+        File fasta = temporaryFolder.newFile(name + ".fa");
+        Random random = new Random(7);
+        String header = ">" + name;
+        try (PrintWriter out = new PrintWriter(fasta)) {
+            out.println(header);
+            for (int i = 0; i < length; i += 60) {
+                StringBuilder line = new StringBuilder();
+                for (int j = i; j < Math.min(i + 60, length); j++) {
+                    line.append("ACGT".charAt(random.nextInt(4)));
+                }
+                out.println(line);
+            }
+        }
+        try (PrintWriter out = new PrintWriter(new File(fasta.getPath() + ".fai"))) {
+            out.println(String.join("\t", name, String.valueOf(length), String.valueOf(header.length() + 1), "60", "61"));
+        }
+        return fasta;
+    }
+
+    /** The 95% confidence interval of the sampled estimate should contain the actual mean fragment length. */
+    @Test
+    public void testSampledEstimate() throws Exception {
+        File fasta = writeRandomFasta("chrR", 2_000_000);
+        RestrictionSiteMatcher matcher = new RestrictionSiteMatcher(enzymes);
+        try (SequenceSource source = SequenceSource.open(fasta.getPath())) {
+            byte[] bases = source.getSequence("chrR");
+            double actualMean = (double) bases.length / matcher.countSites(bases);
+            RestrictionFragmentLengthEstimator estimator = new RestrictionFragmentLengthEstimator(null, 10_000, 2_000, 1_000);
+            RestrictionFragmentLengthEstimator.Estimate estimate = estimator.estimate(source, matcher);
+            assertTrue(estimate.numberOfCuts >= 2_000);
+            assertTrue(estimate.sampledLength < bases.length);
+            assertTrue(estimate.lower < estimate.mean && estimate.mean < estimate.upper);
+            assertTrue(estimate.lower <= actualMean && actualMean <= estimate.upper);
+        }
+    }
+
+    /** Small genomes are scanned completely, and the estimate is then exact. */
+    @Test
+    public void testCompleteScanOfSmallGenome() throws Exception {
+        File fasta = writeRandomFasta("chrS", 50_000);
+        RestrictionSiteMatcher matcher = new RestrictionSiteMatcher(enzymes);
+        try (SequenceSource source = SequenceSource.open(fasta.getPath())) {
+            byte[] bases = source.getSequence("chrS");
+            RestrictionFragmentLengthEstimator.Estimate estimate = new RestrictionFragmentLengthEstimator(null).estimate(source, matcher);
+            assertEquals((double) bases.length / matcher.countSites(bases), estimate.mean, 1e-9);
+            assertEquals(estimate.mean, estimate.lower, 1e-9);
+            assertEquals(estimate.mean, estimate.upper, 1e-9);
+        }
+    }
+
+    /** The estimate is stored in the cache file and is not recalculated for the same genome build and enzymes. */
+    @Test
+    public void testCache() throws Exception {
+        File fasta = writeRandomFasta("chrC", 20_000);
+        File cacheFile = new File(temporaryFolder.getRoot(), "cache.properties");
+        double mean;
+        try (SequenceSource source = SequenceSource.open(fasta.getPath())) {
+            mean = new RestrictionFragmentLengthEstimator(cacheFile).getMeanFragmentLength("test", enzymes, source);
+        }
+        assertTrue(cacheFile.exists());
+        // the FASTA file is not needed if the value is in the cache
+        assertEquals(mean, new RestrictionFragmentLengthEstimator(cacheFile).getMeanFragmentLength("test", enzymes, null), 1e-9);
+        assertEquals("test:^GATC", RestrictionFragmentLengthEstimator.getCacheKey("test", enzymes));
+    }
+}
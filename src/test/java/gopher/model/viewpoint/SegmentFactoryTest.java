@@ -4,11 +4,15 @@ import htsjdk.samtools.reference.IndexedFastaSequenceFile;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import gopher.model.RestrictionEnzyme;
+import gopher.model.digest.CutSiteIndex;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.*;
 
 
@@ -49,15 +53,14 @@ public class SegmentFactoryTest {
 
     private static List<Integer> gatcsites;
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 
     @BeforeClass
     public static void setup() throws Exception {
         RestrictionEnzyme re1 = new RestrictionEnzyme("HindIII", "A^AGCTT");
         RestrictionEnzyme re2 = new RestrictionEnzyme("DpnII", "^GATC");
-        Map<String,RestrictionEnzyme> remap = new HashMap<>();
-        remap.put("AAGCTT", re1);
-        remap.put("GATC", re2);
-        SegmentFactory.setRestrictionEnzymeMap(remap);
         chosenEnzymeList = new ArrayList<>();
         chosenEnzymeList.add(re1);
         chosenEnzymeList.add(re2);
@@ -116,9 +119,6 @@ public class SegmentFactoryTest {
     public void testVeryShortSegmentFactory (){
         List<Integer> adjustedGatcSitesOffsetZero=new ArrayList<>();
         RestrictionEnzyme re = new RestrictionEnzyme("DpnII", "^GATC");
-        Map<String,RestrictionEnzyme> remap = new HashMap<>();
-        remap.put(re.getPlainSite(), re);
-        SegmentFactory.setRestrictionEnzymeMap(remap);
         chosenEnzymeList = new ArrayList<>();
         chosenEnzymeList.add(re);
         ClassLoader classLoader = SegmentFactoryTest.class.getClassLoader();
@@ -159,8 +159,75 @@ public class SegmentFactoryTest {
         Assert.assertEquals(adjustedGatcSitesOffsetZero,cpm.getAllCuts());
     }
 
+    /**
+     * The cutting positions looked up in the {@link CutSiteIndex} must be the same as the ones found by searching
+     * the sequence, and the index must be the same after it was written to and read from disk.
+     */
+    @Test
+    public void testSegmentFactoryWithCutSiteIndex() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        File fasta = new File(dir, "test_genome.fa");
+        Files.copy(new File(testFastaFile).toPath(), fasta.toPath());
+        Files.copy(new File(testFastaFile + ".fai").toPath(), new File(dir, "test_genome.fa.fai").toPath());
+        CutSiteIndex builtIndex = CutSiteIndex.loadOrBuild(fasta.getAbsolutePath(), chosenEnzymeList, false);
+        CutSiteIndex readIndex = CutSiteIndex.loadOrBuild(fasta.getAbsolutePath(), chosenEnzymeList, false);
+        for (String refID : new String[]{refSeqID1, "chr_t1_GATC", "chr_t2_AAGCTT", "chr_t3_GATC_AAGCTT", "veryshort"}) {
+            ChromosomeSequence sequence = ChromosomeSequence.load(testFastaReader, refID);
+            int len = sequence.length();
+            for (int genomicPos = 1; genomicPos <= len; genomicPos += 7) {
+                for (int maxDist : new int[]{5, 20, 115}) {
+                    SegmentFactory expected = new SegmentFactory(refID, genomicPos, sequence, len, maxDist, maxDist, chosenEnzymeList);
+                    for (CutSiteIndex index : new CutSiteIndex[]{builtIndex, readIndex}) {
+                        SegmentFactory actual = new SegmentFactory(refID, genomicPos, index, len, maxDist, maxDist, chosenEnzymeList);
+                        Assert.assertEquals(refID+":"+genomicPos+":"+maxDist, expected.getCuttingPositionHashMap(), actual.getCuttingPositionHashMap());
+                        Assert.assertEquals(expected.getNumOfCutsUpstreamPos(genomicPos), actual.getNumOfCutsUpstreamPos(genomicPos));
+                        Assert.assertEquals(expected.getNumOfCutsDownstreamPos(genomicPos), actual.getNumOfCutsDownstreamPos(genomicPos));
+                    }
+                }
+            }
+        }
+    }
 
+    @Test
+    public void testNumberOfCutsUpAndDownstream() {
+        List<Integer> cuts = segmentFactory.getAllCuts();
+        for (int pos = 0; pos <= 320; pos++) {
+            int up = 0, down = 0;
+            for (Integer cut : cuts) {
+                if (cut < pos) up++;
+                else down++;
+            }
+            Assert.assertEquals(up, segmentFactory.getNumOfCutsUpstreamPos(pos));
+            Assert.assertEquals(down, segmentFactory.getNumOfCutsDownstreamPos(pos));
+        }
+    }
 
-
-
+    /** Expanding a factory must give the same cutting positions as creating a new factory for the larger range. */
+    @Test
+    public void testExpandAgreesWithNewFactory() {
+        Random random = new Random(13);
+        byte[] bases = new byte[20_000];
+        for (int i = 0; i < bases.length; i++) {
+            bases[i] = (byte) "ACGTacgt".charAt(random.nextInt(8));
+        }
+        ChromosomeSequence sequence = new ChromosomeSequence("chrR", bases, 1);
+        List<RestrictionEnzyme> enzymes = Arrays.asList(new RestrictionEnzyme("DpnII", "^GATC"),
+                new RestrictionEnzyme("HinfI", "G^ANTC"),
+                new RestrictionEnzyme("Test", "ACTG^G"));
+        for (int genomicPos : new int[]{100, 5_000, 10_000, 19_900}) {
+            int up = 50;
+            int down = 70;
+            SegmentFactory expanded = new SegmentFactory("chrR", genomicPos, sequence, bases.length, up, down, enzymes);
+            for (int k = 0; k < 6; k++) {
+                up += 100 * k;
+                down += 150 * k;
+                expanded.expand(up, down);
+                SegmentFactory created = new SegmentFactory("chrR", genomicPos, sequence, bases.length, up, down, enzymes);
+                Assert.assertEquals(created.getCuttingPositionHashMap(), expanded.getCuttingPositionHashMap());
+                Assert.assertEquals(created.getMaxDistToGenomicPosUp(), expanded.getMaxDistToGenomicPosUp());
+                Assert.assertEquals(created.getMaxDistToGenomicPosDown(), expanded.getMaxDistToGenomicPosDown());
+                Assert.assertEquals(created.getNumOfCutsUpstreamPos(genomicPos), expanded.getNumOfCutsUpstreamPos(genomicPos));
+            }
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package gopher.model.viewpoint;
 
 import gopher.model.IntPair;
+import gopher.model.Model;
 import htsjdk.samtools.reference.IndexedFastaSequenceFile;
 import org.apache.log4j.Logger;
 import org.junit.*;
@@ -365,4 +366,96 @@ public class SegmentTest {
         }
 
     }
+
+    /**
+     * The sliding window used to place baits must yield the same values as a {@link Bait} that is created from scratch,
+     * no matter if the window moves to the right or to the left.
+     */
+    @Test
+    public void testBaitWindowScannerAgreesWithBait() throws IOException {
+        File fasta = new File("src/test/resources/testAlignabilityMap/testAlignabilityMap.fa");
+        ChromosomeSequence sequence = ChromosomeSequence.load(new IndexedFastaSequenceFile(fasta), "chr1");
+        String alignabilityPath="src/test/resources/testAlignabilityMap/testAlignabilityMap.bedgraph.gz";
+        String chromInfoPath="src/test/resources/testAlignabilityMap/chromInfo.txt.gz";
+        AlignabilityMapIterator apiterator = new AlignabilityMapIterator(alignabilityPath,chromInfoPath,50);
+        AlignabilityMap amp = apiterator.next();
+        assertEquals("chr1", amp.getChromName());
+        int baitSize = 120;
+        BaitWindowScanner scanner = new BaitWindowScanner("chr1", sequence, amp, baitSize);
+        int last = sequence.length() - baitSize + 1;
+        for (int i = 1; i <= last; i++) {
+            scanner.moveTo(i);
+            assertSameBait(new Bait("chr1", i, i + baitSize - 1, sequence, amp), scanner.toBait());
+        }
+        for (int i = last; i >= 1; i -= (i % 7 == 0 ? 3 : 1)) {
+            scanner.moveTo(i);
+            assertSameBait(new Bait("chr1", i, i + baitSize - 1, sequence, amp), scanner.toBait());
+        }
+    }
+
+    private void assertSameBait(Bait expected, Bait actual) {
+        assertEquals(expected.getStartPos(), actual.getStartPos());
+        assertEquals(expected.getEndPos(), actual.getEndPos());
+        assertEquals(expected.getGCContent(), actual.getGCContent(), 0.000001);
+        assertEquals(expected.getRepeatContent(), actual.getRepeatContent(), 0.000001);
+        assertEquals(expected.getAlignabilityScore(), actual.getAlignabilityScore(), 0.000001);
+    }
+
+    /** Segments from the cache have the same content as the prototype but their own selection state. */
+    @Test
+    public void testSegmentCache() {
+        SegmentCache cache = new SegmentCache();
+        Segment first = cache.getSegment(21, 44, () -> buildSegmentA(FastaReader));
+        Segment second = cache.getSegment(21, 44, () -> { throw new AssertionError("Segment should be cached"); });
+        assertEquals(1, cache.size());
+        assertNotSame(first, second);
+        assertEquals(first, second);
+        assertEquals(segmentA.getGCcontent(), second.getGCcontent(), 0.000001);
+        assertEquals(segmentA.getRepeatContentMarginUp(), second.getRepeatContentMarginUp(), 0.000001);
+        assertEquals(segmentA.getRepeatContentMarginDown(), second.getRepeatContentMarginDown(), 0.000001);
+        first.setSelected(true, true);
+        assertTrue(first.isSelected());
+        assertFalse(second.isSelected());
+        assertFalse(second.wasOriginallySelected());
+        cache.getSegment(69, 92, () -> buildSegmentB(FastaReader));
+        assertEquals(2, cache.size());
+    }
+
+    /** Lazily evaluated Segments (also copies from the cache) must have the same content and baits as eager ones. */
+    @Test
+    public void testLazyEvaluation() throws IOException {
+        File fasta = new File("src/test/resources/testAlignabilityMap/testAlignabilityMap.fa");
+        ChromosomeSequence sequence = ChromosomeSequence.load(new IndexedFastaSequenceFile(fasta), "chr1");
+        String alignabilityPath="src/test/resources/testAlignabilityMap/testAlignabilityMap.bedgraph.gz";
+        String chromInfoPath="src/test/resources/testAlignabilityMap/chromInfo.txt.gz";
+        AlignabilityMap amp = new AlignabilityMapIterator(alignabilityPath,chromInfoPath,50).next();
+        Model model = new Model();
+        model.setMinBaitCount(2);
+        model.setProbeLength(120);
+        model.setMinGCcontent(0.25);
+        model.setMaxGCcontent(0.65);
+        Segment eager = new Segment.Builder("chr1",900,2002).sequence(sequence).marginSize(250).build();
+        eager.setUsableBaits(model, amp, 10.0);
+        assertTrue(eager.getBaitNumTotal() > 0);
+        SegmentCache cache = new SegmentCache(new BaitStore("chr1"));
+        Segment first = cache.getSegment(900, 2002, () -> new Segment.Builder("chr1",900,2002).
+                sequence(sequence).marginSize(250).lazyUsableBaits(model, amp, 10.0).build());
+        Segment second = cache.getSegment(900, 2002, () -> { throw new AssertionError("Segment should be cached"); });
+        for (Segment lazy : new Segment[]{second, first}) {
+            assertEquals(eager.getGCcontent(), lazy.getGCcontent(), 0.000001);
+            assertEquals(eager.getRepeatContent(), lazy.getRepeatContent(), 0.000001);
+            assertEquals(eager.getGcContentMarginUp(), lazy.getGcContentMarginUp(), 0.000001);
+            assertEquals(eager.getRepeatContentMarginDown(), lazy.getRepeatContentMarginDown(), 0.000001);
+            assertEquals(eager.isBalanced(), lazy.isBalanced());
+            assertEquals(eager.isUnselectable(), lazy.isUnselectable());
+            assertEquals(eager.getBaitNumUp(), lazy.getBaitNumUp());
+            assertEquals(eager.getBaitNumDown(), lazy.getBaitNumDown());
+            for (int i = 0; i < eager.getBaitNumUp(); i++) {
+                assertSameBait(eager.getBaitsForUpstreamMargin().get(i), lazy.getBaitsForUpstreamMargin().get(i));
+            }
+            for (int i = 0; i < eager.getBaitNumDown(); i++) {
+                assertSameBait(eager.getBaitsForDownstreamMargin().get(i), lazy.getBaitsForDownstreamMargin().get(i));
+            }
+        }
+    }
 }